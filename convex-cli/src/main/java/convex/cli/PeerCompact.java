@@ -0,0 +1,66 @@
+package convex.cli;
+
+import java.io.File;
+
+import etch.EtchStore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.ParentCommand;
+
+/**
+ *
+ * Convex peer sub commands
+ *
+ *		convex.peer.compact
+ *
+ *
+ */
+@Command(name="compact",
+	aliases={"co"},
+	mixinStandardHelpOptions=true,
+	description="Compacts the etch database of a stopped peer, removing data not reachable from the stored peer state.")
+public class PeerCompact implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(PeerCompact.class);
+
+	@ParentCommand
+	protected Peer peerParent;
+
+	@Override
+	public void run() {
+		Main mainParent = peerParent.mainParent;
+
+		String etchStoreFilename = mainParent.getEtchStoreFilename();
+		if (etchStoreFilename == null || etchStoreFilename.isEmpty()) {
+			log.warn("You need to provide an etch database file to compact");
+			return;
+		}
+		File etchFile = new File(etchStoreFilename);
+		if (!etchFile.exists()) {
+			log.warn("Cannot find etch database file {}", etchStoreFilename);
+			return;
+		}
+
+		EtchStore store = null;
+		try {
+			long oldLength = etchFile.length();
+			store = EtchStore.create(etchFile);
+			long count = store.compact();
+			store.close();
+			store = null;
+
+			mainParent.output.setField("Etch File", etchStoreFilename);
+			mainParent.output.setField("Live Cells", String.format("%d", count));
+			mainParent.output.setField("Old Size", String.format("%d", oldLength));
+			mainParent.output.setField("New Size", String.format("%d", etchFile.length()));
+			mainParent.output.addRow();
+		} catch (Throwable t) {
+			mainParent.showError(t);
+		} finally {
+			if (store != null) store.close();
+		}
+	}
+
+}
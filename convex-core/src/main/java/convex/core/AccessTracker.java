@@ -0,0 +1,132 @@
+package convex.core;
+
+import java.util.Arrays;
+
+/**
+ * Records which parts of a State are read by a transaction, for optimistic parallel
+ * execution with {@link ParallelExecutor}.
+ *
+ * Tracking is per thread, and only enabled while a tracker is started on the current
+ * thread. State accessors call the static record methods, which cost a single volatile
+ * read when no tracking is active anywhere.
+ *
+ * Recording is conservative: accessors that expose a whole structure (e.g. the accounts
+ * vector, or the State itself) record a read of everything in it.
+ */
+public final class AccessTracker {
+
+	private static final ThreadLocal<AccessTracker> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * Number of threads currently tracking. Avoids a ThreadLocal lookup in the common case.
+	 */
+	private static volatile int active = 0;
+
+	long[] accounts = new long[8];
+	int accountCount = 0;
+	boolean countRead = false;
+	boolean allAccountsRead = false;
+	boolean peersRead = false;
+	boolean scheduleRead = false;
+	int globalsRead = 0;
+	boolean allRead = false;
+
+	private AccessTracker() {
+	}
+
+	/**
+	 * Starts tracking reads on the current thread
+	 * @return New AccessTracker, which must be stopped on the same thread
+	 */
+	static AccessTracker start() {
+		AccessTracker t = new AccessTracker();
+		CURRENT.set(t);
+		synchronized (AccessTracker.class) {
+			active++;
+		}
+		return t;
+	}
+
+	/**
+	 * Stops tracking reads on the current thread
+	 */
+	void stop() {
+		CURRENT.remove();
+		synchronized (AccessTracker.class) {
+			active--;
+		}
+	}
+
+	private static AccessTracker current() {
+		if (active == 0) return null;
+		return CURRENT.get();
+	}
+
+	/**
+	 * Records a read of an Account
+	 * @param ix Account index
+	 */
+	public static void recordAccount(long ix) {
+		AccessTracker t = current();
+		if (t == null) return;
+		if (t.accountCount == t.accounts.length) t.accounts = Arrays.copyOf(t.accounts, t.accountCount * 2);
+		t.accounts[t.accountCount++] = ix;
+	}
+
+	/**
+	 * Records a read of the number of Accounts, e.g. to allocate a new Address
+	 */
+	public static void recordAccountCount() {
+		AccessTracker t = current();
+		if (t != null) t.countRead = true;
+	}
+
+	/**
+	 * Records a read of all Accounts
+	 */
+	public static void recordAllAccounts() {
+		AccessTracker t = current();
+		if (t != null) t.allAccountsRead = true;
+	}
+
+	/**
+	 * Records a read of the Peers map
+	 */
+	public static void recordPeers() {
+		AccessTracker t = current();
+		if (t != null) t.peersRead = true;
+	}
+
+	/**
+	 * Records a read of the Schedule
+	 */
+	public static void recordSchedule() {
+		AccessTracker t = current();
+		if (t != null) t.scheduleRead = true;
+	}
+
+	/**
+	 * Records a read of a global value
+	 * @param ix Index of global in globals vector
+	 */
+	public static void recordGlobal(int ix) {
+		AccessTracker t = current();
+		if (t != null) t.globalsRead |= (1 << ix);
+	}
+
+	/**
+	 * Records a read of all global values
+	 */
+	public static void recordGlobals() {
+		AccessTracker t = current();
+		if (t != null) t.globalsRead = -1;
+	}
+
+	/**
+	 * Records a read of the entire State, e.g. where the State is exposed to user code
+	 */
+	public static void recordAll() {
+		AccessTracker t = current();
+		if (t != null) t.allRead = true;
+	}
+}
@@ -7,7 +7,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.function.Function;
 
 import convex.core.crypto.AKeyPair;
 import convex.core.data.ABlob;
@@ -23,7 +22,6 @@ import convex.core.data.Hash;
 import convex.core.data.Keyword;
 import convex.core.data.Keywords;
 import convex.core.data.MapEntry;
-import convex.core.data.PeerStatus;
 import convex.core.data.SignedData;
 import convex.core.data.Tag;
 import convex.core.data.prim.CVMLong;
@@ -253,47 +251,57 @@ public class Belief extends ARecord {
 		// this is needed for peer weights: we only trust peers who have stake in the
 		// current consensus!
 		State votingState = mc.getConsensusState();
+		MergeCache cache = mc.getCache();
+
+		// Current Consensus Point
+		long consensusPoint = myOrder.getConsensusPoint();
 
 		// filter chains for compatibility with current chain for inclusion in Initial Voting Set
+		// as per Order.checkConsistent, using cached prefix lengths for unchanged Orders
 		// TODO: figure out what to do with new blocks filtered out?
-		final BlobMap<AccountKey, SignedData<Order>> filteredOrders = accOrders.filterValues(signedOrder -> {
-			try {
-				Order otherOrder = signedOrder.getValue();
-				return myOrder.checkConsistent(otherOrder);
-			} catch (Exception e) {
-				throw Utils.sneakyThrow(e);
+		AVector<Block> myBlocks = myOrder.getBlocks();
+		BlobMap<AccountKey, SignedData<Order>> filteredOrders = accOrders;
+		long n = accOrders.count();
+		for (long i = 0; i < n; i++) {
+			MapEntry<AccountKey, SignedData<Order>> me = accOrders.entryAt(i);
+			Order otherOrder = me.getValue().getValue();
+			if (cache.getConsistencyPrefix(myBlocks, otherOrder) < consensusPoint) {
+				ACell key = me.getKey(); // may be a plain Blob if decoded
+				filteredOrders = filteredOrders.dissoc((ABlob) key);
 			}
-		});
-
-		// Current Consensus Point
-		long consensusPoint = myOrder.getConsensusPoint();
+		}
 
-		// Compute stake for all peers in consensus state
-		AMap<AccountKey, PeerStatus> peers = votingState.getPeers();
-		HashMap<AccountKey, Double> weightedStakes = votingState.computeStakes();
-		assert (weightedStakes.containsKey(myAddress));
-		double totalStake = weightedStakes.get(null);
+		// Get stake for all peers in consensus state
+		StakeTable weightedStakes = cache.getStakeTable(votingState);
+		assert (weightedStakes.indexOf(myAddress) >= 0);
+		double totalStake = weightedStakes.getTotalStake();
 
 		// Extract unique proposed chains from provided map, computing vote for each.
-		// compute the total weighted vote at the same time in accumulator
 		// Peers with no stake should be ignored (might be old peers etc.)
-		HashMap<Order, Double> stakedOrders = new HashMap<>(peers.size());
-		double consideredStake = prepareStakedOrders(filteredOrders, weightedStakes, stakedOrders);
+		StakedOrders stakedOrders = prepareStakedOrders(filteredOrders, weightedStakes);
+		if (stakedOrders.size() == 0) return null; // if no voting stake on any chain
 
 		// Get the winning chain for this peer, including new blocks encountered
-		AVector<Block> winningBlocks = computeWinningOrder(stakedOrders, consensusPoint, consideredStake);
+		AVector<Block> winningBlocks = computeWinningOrder(stakedOrders.toMap(), consensusPoint, stakedOrders.getTotalStake());
 		if (winningBlocks == null) return null; // if no voting stake on any chain
 
 		// winning chain should have same consensus as my initial chain
 		Order winningOrder = myOrder.updateBlocks(winningBlocks);
 
+		// agreement of each Order with the winning Blocks, shared by proposal and consensus updates
+		int numOrders = stakedOrders.size();
+		long[] agreement = new long[numOrders];
+		for (int i = 0; i < numOrders; i++) {
+			agreement[i] = cache.getAgreementPrefix(winningBlocks, stakedOrders.getOrder(i));
+		}
+
 		final double P_THRESHOLD = totalStake * Constants.PROPOSAL_THRESHOLD;
-		final Order proposedOrder = updateProposal(winningOrder, stakedOrders, P_THRESHOLD);
+		final Order proposedOrder = updateProposal(winningOrder, stakedOrders, agreement, P_THRESHOLD);
 
 		assert (proposedOrder != null);
 
 		final double C_THRESHOLD = totalStake * Constants.CONSENSUS_THRESHOLD;
-		final Order consensusOrder = updateConsensus(proposedOrder, stakedOrders, C_THRESHOLD);
+		final Order consensusOrder = updateConsensus(proposedOrder, stakedOrders, agreement, C_THRESHOLD);
 
 		BlobMap<AccountKey, SignedData<Order>> resultOrders = filteredOrders;
 		if (!consensusOrder.equals(myOrder)) {
@@ -305,45 +313,37 @@ public class Belief extends ARecord {
 	}
 
 	/**
-	 * Updates the consensus point for the winning Order, given an overall map of
-	 * staked orders and consensus threshold.
+	 * Updates the consensus point for the winning Order, given the staked Orders,
+	 * their agreement with the proposed Blocks and the consensus threshold.
 	 */
-	private Order updateConsensus(Order proposedOrder, HashMap<Order, Double> stakedOrders, double THRESHOLD) {
-		AVector<Block> proposedBlocks = proposedOrder.getBlocks();
-		ArrayList<Order> agreedChains = Utils.sortListBy(new Function<Order, Long>() {
-			@Override
-			public Long apply(Order c) {
-				// scoring function scores by level of proposed agreement with proposed chain
-				// in order to sort by length of matched proposals
-				long blockMatch = proposedBlocks.commonPrefixLength(c.getBlocks());
-
-				long minProposal = Math.min(proposedOrder.getProposalPoint(), c.getProposalPoint());
-
-				long match = Math.min(blockMatch, minProposal);
-				if (match <= proposedOrder.getConsensusPoint()) return null; // skip if no progress vs existing
-																				// consensus
-				return -match;
-			}
-		}, stakedOrders.keySet());
-		int numAgreed = agreedChains.size();
-		// assert(proposedChain.equals(agreedChains.get(0)));
+	private Order updateConsensus(Order proposedOrder, StakedOrders stakedOrders, long[] agreement, double THRESHOLD) {
+		// score by level of proposed agreement with proposed chain
+		// in order to sort by length of matched proposals
+		int n = stakedOrders.size();
+		long[] scores = new long[n];
+		int[] agreedChains = new int[n];
+		int numAgreed = 0;
+		for (int j = 0; j < n; j++) {
+			long minProposal = Math.min(proposedOrder.getProposalPoint(), stakedOrders.getOrder(j).getProposalPoint());
+			long match = Math.min(agreement[j], minProposal);
+			if (match <= proposedOrder.getConsensusPoint()) continue; // skip if no progress vs existing consensus
+			scores[j] = match;
+			agreedChains[numAgreed++] = j;
+		}
+		sortByScore(agreedChains, numAgreed, scores);
+
 		double accumulatedStake = 0.0;
 		int i = 0;
 		for (; i < numAgreed; i++) {
-			Order c = agreedChains.get(i);
-			Double chainStake = stakedOrders.get(c);
-			accumulatedStake += chainStake;
+			accumulatedStake += stakedOrders.getStake(agreedChains[i]);
 			if (accumulatedStake > THRESHOLD) break;
 		}
 
 		if (i < numAgreed) {
 			// we have a consensus!
-			Order lastAgreed = agreedChains.get(i);
-			long prefixMatch = proposedOrder.getBlocks().commonPrefixLength(lastAgreed.getBlocks());
-			long proposalMatch = Math.min(proposedOrder.getProposalPoint(), lastAgreed.getProposalPoint());
-			long newConsensusPoint = Math.min(prefixMatch, proposalMatch);
+			long newConsensusPoint = scores[agreedChains[i]];
 			if (newConsensusPoint < proposedOrder.getConsensusPoint()) {
-				throw new Error("Consensus going backwards! prefix=" + prefixMatch + " propsalmatch=" + proposalMatch);
+				throw new Error("Consensus going backwards! new consensus point=" + newConsensusPoint);
 			}
 			return proposedOrder.withConsenusPoint(newConsensusPoint);
 		} else {
@@ -352,32 +352,30 @@ public class Belief extends ARecord {
 	}
 
 	/**
-	 * Updates the proposal point for the winning Order, given an overall map of
-	 * staked Orders and consensus threshold.
+	 * Updates the proposal point for the winning Order, given the staked Orders,
+	 * their agreement with the winning Blocks and the proposal threshold.
 	 */
-	private Order updateProposal(Order winningOrder, HashMap<Order, Double> stakedOrders, double THRESHOLD) {
-		AVector<Block> winningBlocks = winningOrder.getBlocks();
-
+	private Order updateProposal(Order winningOrder, StakedOrders stakedOrders, long[] agreement, double THRESHOLD) {
 		// sort all chains according to extent of agreement with winning chain
-		ArrayList<Order> agreedOrders = sortByAgreement(stakedOrders, winningBlocks);
-		int numAgreed = agreedOrders.size();
+		int numAgreed = stakedOrders.size();
+		int[] agreedOrders = new int[numAgreed];
+		for (int j = 0; j < numAgreed; j++) {
+			agreedOrders[j] = j;
+		}
+		sortByScore(agreedOrders, numAgreed, agreement);
 
 		// accumulate stake to see how many agreed chains are required to meet proposal
 		// threshold
 		double accumulatedStake = 0.0;
 		int i = 0;
 		for (; i < numAgreed; i++) {
-			Order c = agreedOrders.get(i);
-			double orderStake = stakedOrders.get(c);
-			accumulatedStake += orderStake;
+			accumulatedStake += stakedOrders.getStake(agreedOrders[i]);
 			if (accumulatedStake > THRESHOLD) break;
 		}
 
 		if (i < numAgreed) {
 			// we have a proposed consensus
-			Order lastAgreed = agreedOrders.get(i);
-			AVector<Block> lastBlocks = lastAgreed.getBlocks();
-			long newProposalPoint = winningBlocks.commonPrefixLength(lastBlocks);
+			long newProposalPoint = agreement[agreedOrders[i]];
 			return winningOrder.withProposalPoint(newProposalPoint);
 		} else {
 			return winningOrder;
@@ -385,21 +383,25 @@ public class Belief extends ARecord {
 	}
 
 	/**
-	 * Sorts a set of Orders according to level of agreement with a given vector of
-	 * Blocks. Orders with longest common prefix length are placed first.
+	 * Sorts Order indexes by descending score, so that Orders with the longest agreement
+	 * are placed first. Insertion sort, since there are few distinct Orders and it is
+	 * stable and allocation free.
 	 * 
-	 * @param stakedOrders  Map with Orders as keys
-	 * @param winningBlocks Vector of blocks to seek agreement with
-	 * @return List of Orders in agreement order
+	 * @param ixs Indexes of Orders to sort
+	 * @param n Number of indexes to sort
+	 * @param scores Scores for each Order index
 	 */
-	private ArrayList<Order> sortByAgreement(HashMap<Order, ?> stakedOrders, AVector<Block> winningBlocks) {
-		return Utils.sortListBy(new Function<Order, Long>() {
-			@Override
-			public Long apply(Order c) {
-				long match = winningBlocks.commonPrefixLength(c.getBlocks());
-				return -match; // sort highest matches first
+	private static void sortByScore(int[] ixs, int n, long[] scores) {
+		for (int i = 1; i < n; i++) {
+			int ix = ixs[i];
+			long score = scores[ix];
+			int j = i - 1;
+			while ((j >= 0) && (scores[ixs[j]] < score)) {
+				ixs[j + 1] = ixs[j];
+				j--;
 			}
-		}, stakedOrders.keySet());
+			ixs[j + 1] = ix;
+		}
 	}
 
 	/**
@@ -572,34 +574,22 @@ public class Belief extends ARecord {
 	}
 
 	/**
-	 * Compute the total stake for every distinct Order seen. Stores results in
-	 * a map of Orders to staked value.
+	 * Compute the total stake for every distinct Order seen.
 	 * 
 	 * @param peerOrders A map of peer addresses to signed proposed Orders
-	 * @param peerStakes A map of peers addresses to weighted stakes for each peer
-	 * @param dest       Destination hashmap to store the stakes for each Order
-	 * @return The total stake of all chains among peers under consideration 
+	 * @param peerStakes Table of weighted stakes for each peer
+	 * @return Distinct Orders with stake, including total stake of all chains among peers under consideration 
 	 */
-	public static double prepareStakedOrders(AMap<AccountKey, SignedData<Order>> peerOrders,
-			HashMap<AccountKey, Double> peerStakes, HashMap<Order, Double> dest) {
-		return peerOrders.reduceValues((acc, signedOrder) -> {
-			try {
-				// Get the Order for this peer
-				Order order = signedOrder.getValue();
-				AccountKey cAddress = signedOrder.getAccountKey();
-				Double cStake = peerStakes.get(cAddress);
-				if ((cStake == null) || (cStake == 0.0)) return acc;
-				Double stake = dest.get(order);
-				if (stake == null) {
-					dest.put(order, cStake); // new Order to consider
-				} else {
-					dest.put(order, stake + cStake); // add stake to existing Order
-				}
-				return acc + cStake;
-			} catch (Exception e) {
-				throw Utils.sneakyThrow(e);
-			}
-		}, 0.0);
+	static StakedOrders prepareStakedOrders(BlobMap<AccountKey, SignedData<Order>> peerOrders, StakeTable peerStakes) {
+		long n = peerOrders.count();
+		StakedOrders result = new StakedOrders((int) n);
+		for (long i = 0; i < n; i++) {
+			SignedData<Order> signedOrder = peerOrders.entryAt(i).getValue();
+			double cStake = peerStakes.getStake(signedOrder.getAccountKey());
+			if (cStake == 0.0) continue;
+			result.add(signedOrder.getValue(), cStake);
+		}
+		return result;
 	}
 
 	/**
@@ -196,7 +196,7 @@ public final class Block extends ARecord {
 	public AVector<SignedData<ATransaction>> getTransactions() {
 		return transactions;
 	}
-
+	
 	@Override
 	public boolean isCanonical() {
 		if (!transactions.isCanonical()) return false;
@@ -0,0 +1,247 @@
+package convex.core;
+
+import java.util.HashSet;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.data.AVector;
+import convex.core.data.AccountStatus;
+import convex.core.data.Address;
+import convex.core.data.SignedData;
+import convex.core.data.prim.CVMLong;
+import convex.core.init.Init;
+import convex.core.lang.Context;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+import convex.core.transactions.ATransaction;
+import convex.core.transactions.AccessSet;
+import convex.core.util.Counters;
+
+/**
+ * Deterministic parallel execution of the transactions in a Block, scheduled using the
+ * access sets of transactions determined before execution.
+ *
+ * Transactions are grouped into waves of consecutive transactions with disjoint access
+ * sets, so that each transaction in a wave has its own lane. Lanes are applied in parallel
+ * against the State at the start of the wave, without access tracking. They are then merged
+ * in Block order by copying the Accounts in each lane's access set into the latest State,
+ * and completing the transaction. Since no transaction in a wave can see the effects of
+ * another, there are no conflicts to check and nothing is re-executed. Transactions that
+ * may access anything (e.g. any that run CVM code) are applied sequentially between waves.
+ *
+ * Access sets are computed against the State at the start of each wave, since they may
+ * depend on the effects of earlier transactions.
+ */
+final class BlockScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(BlockScheduler.class.getName());
+
+	/**
+	 * Outcome of applying a single transaction in its own lane
+	 */
+	private static final class Lane {
+		/**
+		 * Accounts the transaction may access
+		 */
+		AccessSet access;
+
+		/**
+		 * Context after failed checks or preparation, with no State change. Null otherwise.
+		 */
+		Context<?> failed;
+
+		/**
+		 * Context after applying the transaction, before completion
+		 */
+		Context<?> applied;
+
+		/**
+		 * Juice reserved by preparation
+		 */
+		long totalJuice;
+
+		/**
+		 * True if the lane failed unexpectedly, and the transaction must be applied sequentially
+		 */
+		boolean serial = false;
+	}
+
+	private BlockScheduler() {
+	}
+
+	/**
+	 * Applies the transactions in a Block to a prepared State, producing the same
+	 * BlockResult as {@link State#applyTransactions(Block)}
+	 *
+	 * @param state State prepared for the Block
+	 * @param block Block to apply
+	 * @return BlockResult from applying the Block's transactions
+	 */
+	static BlockResult applyTransactions(State state, Block block) {
+		int n = block.length();
+
+		AVector<SignedData<ATransaction>> transactions = block.getTransactions();
+		Result[] results = new Result[n];
+		int i = 0;
+		while (i < n) {
+			int end = nextWave(state, transactions, i);
+			if (end - i > 1) {
+				state = applyWave(state, transactions, i, end, results);
+			} else {
+				state = ParallelExecutor.applyTransaction(state, transactions.get(i), i, results, null);
+			}
+			i = end;
+		}
+		return BlockResult.create(state, results);
+	}
+
+	/**
+	 * Applies a wave of independent transactions, each in its own lane against the State at
+	 * the start of the wave, then merges the lanes in order.
+	 *
+	 * @param state State at the start of the wave
+	 * @param transactions Transactions in the Block
+	 * @param start Index of first transaction in the wave
+	 * @param end Index after the last transaction in the wave
+	 * @param results Array of Results for the Block, updated for this wave
+	 * @return State after applying the wave
+	 */
+	static State applyWave(State state, AVector<SignedData<ATransaction>> transactions, int start, int end, Result[] results) {
+		Lane[] lanes = new Lane[end - start];
+		final State initialState = state;
+		AStore store = Stores.current();
+		IntStream range = IntStream.range(start, end);
+		if (lanes.length >= ParallelExecutor.MIN_PARALLEL_SIZE) range = range.parallel();
+		range.forEach(i -> {
+			AStore saved = Stores.current();
+			Stores.setCurrent(store);
+			try {
+				lanes[i - start] = runLane(initialState, transactions.get(i));
+			} finally {
+				Stores.setCurrent(saved);
+			}
+		});
+
+		for (int i = start; i < end; i++) {
+			SignedData<ATransaction> signed = transactions.get(i);
+			Lane lane = lanes[i - start];
+			CVMLong id = CVMLong.create(i);
+			if (!lane.serial) {
+				if (lane.failed != null) {
+					// checks and preparation only use Accounts in this lane, so fail the same way
+					results[i] = Result.fromContext(id, lane.failed);
+					Counters.parallelCommit++;
+					continue;
+				}
+				Context<?> ctx = merge(state, initialState, signed.getValue(), lane);
+				if (ctx != null) {
+					results[i] = Result.fromContext(id, ctx);
+					state = ctx.getState();
+					Counters.parallelCommit++;
+					continue;
+				}
+				log.warn("Unable to merge lane for transaction {}, executing sequentially", i);
+			}
+			state = ParallelExecutor.applyTransaction(state, signed, i, results, null);
+		}
+		return state;
+	}
+
+	/**
+	 * Applies a transaction against the State at the start of its wave, up to but not
+	 * including completion
+	 */
+	private static Lane runLane(State state, SignedData<ATransaction> signed) {
+		Lane lane = new Lane();
+		ATransaction t = signed.getValue();
+		lane.access = t.getAccessSet(state);
+		try {
+			Context<?> ctx = state.checkTransaction(signed);
+			if (ctx != null) {
+				lane.failed = ctx;
+				return lane;
+			}
+
+			ctx = state.prepareTransaction(t.getAddress(), t);
+			if (ctx.isExceptional()) {
+				lane.failed = ctx;
+				return lane;
+			}
+			lane.totalJuice = ctx.getJuice();
+			lane.applied = t.apply(ctx);
+		} catch (Throwable e) {
+			// leave it to sequential execution to handle
+			lane.serial = true;
+		}
+		return lane;
+	}
+
+	/**
+	 * Merges a lane into the latest State, by copying the Accounts in its access set and
+	 * then completing the transaction.
+	 *
+	 * @return Context after completion, or null if the lane changed parts of the State other
+	 *         than existing Accounts, or can't be prepared on the latest State, in which case
+	 *         it can't be merged
+	 */
+	private static Context<?> merge(State state, State initialState, ATransaction t, Lane lane) {
+		State applied = lane.applied.getState();
+		AVector<AccountStatus> ia = initialState.getAccounts();
+		AVector<AccountStatus> aa = applied.getAccounts();
+		if (aa.count() != ia.count()) return null;
+		if (applied.getPeers() != initialState.getPeers()) return null;
+		if (applied.getSchedule() != initialState.getSchedule()) return null;
+		if (applied.getGlobals() != initialState.getGlobals()) return null;
+
+		// preparation is cheap, and completion needs the exact prepared State
+		Context<?> prepared = state.prepareTransaction(t.getAddress(), t);
+		if (prepared.isExceptional()) return null;
+
+		State s = state;
+		AccessSet access = lane.access;
+		int k = access.count();
+		for (int j = 0; j < k; j++) {
+			Address a = access.get(j);
+			long ix = a.longValue();
+			if (ix >= aa.count()) continue;
+			AccountStatus as = aa.get(ix);
+			if (as != ia.get(ix)) s = s.putAccount(a, as);
+		}
+
+		Context<?> ctx = lane.applied.withState(s);
+		return ctx.completeTransaction(prepared.getState(), lane.totalJuice);
+	}
+
+	/**
+	 * Finds the end of the wave of independent transactions starting at a given position.
+	 * A wave ends before the first transaction that may access all of the State or shares
+	 * an Account with an earlier transaction in the wave.
+	 *
+	 * @param state State at the start of the wave
+	 * @param transactions Transactions in the Block
+	 * @param start Index of first transaction in the wave
+	 * @return Index after the last transaction in the wave, always greater than start
+	 */
+	static int nextWave(State state, AVector<SignedData<ATransaction>> transactions, int start) {
+		int n = (int) transactions.count();
+		HashSet<Address> used = new HashSet<>();
+		int i = start;
+		outer: for (; i < n; i++) {
+			AccessSet as = transactions.get(i).getValue().getAccessSet(state);
+
+			// the memory exchange may be updated by any transaction on completion
+			if (as.isAll() || as.contains(Init.MEMORY_EXCHANGE_ADDRESS)) break;
+
+			int k = as.count();
+			for (int j = 0; j < k; j++) {
+				if (used.contains(as.get(j))) break outer;
+			}
+			for (int j = 0; j < k; j++) {
+				used.add(as.get(j));
+			}
+		}
+		return Math.max(i, start + 1);
+	}
+}
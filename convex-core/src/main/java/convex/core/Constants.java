@@ -59,6 +59,23 @@ public class Constants {
 	 */
 	public static final boolean ETCH_DELETE_TEMP_ON_EXIT = true;
 	
+	/**
+	 * Default size in bytes of the cache of decoded cells in front of an Etch store. 
+	 */
+	public static final long ETCH_CACHE_SIZE = 64*1024*1024;
+	
+	/**
+	 * Time in milliseconds after an Etch compaction during which the store checks itself for cells
+	 * instead of trusting the status of Refs held in memory. Covers data persisted before the swap
+	 * that was still in transit to a compaction root.
+	 */
+	public static final long ETCH_COMPACTION_GRACE_PERIOD = 60000;
+	
+	/**
+	 * Maximum number of valid signatures remembered in the global signature cache
+	 */
+	public static final int SIGNATURE_CACHE_SIZE = 100000;
+	
 	/**
 	 * Sequence number used for any new account
 	 */
@@ -138,9 +155,25 @@ public class Constants {
 	public static final long MINIMUM_EFFECTIVE_STAKE = Coin.GOLD*1;
 
 	/**
-	 * Default size for client receive buffers.
+	 * Maximum number of hashes in a single batched missing data request. Together with the
+	 * byte budget, this fits in a single Vector leaf so requests are sent as one message.
+	 */
+	public static final int MAX_DATA_REQUEST_HASHES = 15;
+
+	/**
+	 * Maximum byte budget honoured for additional cells in a batched missing data request
+	 */
+	public static final long MAX_DATA_REQUEST_BUDGET = 8*Format.LIMIT_ENCODING_LENGTH;
+
+	/**
+	 * Size of pooled receive buffers. Must be big enough for one max sized message plus header.
 	 */
-	public static final int RECEIVE_BUFFER_SIZE = Format.LIMIT_ENCODING_LENGTH*10+20;
+	public static final int RECEIVE_BUFFER_SIZE = Format.LIMIT_ENCODING_LENGTH+20;
+
+	/**
+	 * Maximum number of idle receive buffers retained in the shared pool
+	 */
+	public static final int RECEIVE_BUFFER_POOL_SIZE = 256;
 	
 	/**
 	 * Default size for client receive buffers.
@@ -148,6 +181,21 @@ public class Constants {
 	public static final int SEND_BUFFER_SIZE = Format.LIMIT_ENCODING_LENGTH*10+20;
 
 
+	/**
+	 * Minimum message content length for compression to be attempted on connections with compression enabled
+	 */
+	public static final int COMPRESSION_THRESHOLD = 256;
+
+	/**
+	 * Default number of selector threads handling connections accepted by a peer server
+	 */
+	public static final int SERVER_SELECTOR_THREADS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() / 2));
+
+	/**
+	 * Default number of selector threads shared by all outgoing client connections
+	 */
+	public static final int CLIENT_SELECTOR_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 4));
+
 	/**
 	 * Size of default server socket receive buffer
 	 */
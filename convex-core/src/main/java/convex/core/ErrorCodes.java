@@ -186,5 +186,10 @@ public class ErrorCodes {
 	 */
 	public static final Keyword FATAL = Keyword.create("FATAL");
 
+	/**
+	 * ErrorCode indicating that a Peer is too heavily loaded to handle a request. The request may be retried later.
+	 */
+	public static final Keyword LOAD = Keyword.create("LOAD");
+
 
 }
@@ -0,0 +1,131 @@
+package convex.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import convex.core.data.AVector;
+import convex.core.data.AccountKey;
+import convex.core.data.BlobMap;
+import convex.core.data.PeerStatus;
+
+/**
+ * Cache of vote state carried between Belief merges by a Peer.
+ *
+ * Successive merges usually see the same Orders from most peers, and this peer's own
+ * Blocks only grow. The cache memoises the expensive parts of each merge so that they are
+ * only recomputed for Orders that changed:
+ * <ul>
+ * <li>Weighted stakes, reused while the peers in the consensus State are unchanged</li>
+ * <li>Common prefix lengths of each Order against this peer's Blocks, used for the
+ * consistency filter</li>
+ * <li>Common prefix lengths of each Order against the winning Blocks, used to rank
+ * agreement for the proposal and consensus points</li>
+ * </ul>
+ *
+ * All cached values are pure functions of their inputs, so it is safe to share a
+ * cache between successive versions of a Peer. Methods are synchronized in case
+ * merges happen on different threads.
+ */
+public class MergeCache {
+
+	private BlobMap<AccountKey, PeerStatus> stakePeers = null;
+	private StakeTable stakes = null;
+
+	private final PrefixCache consistency = new PrefixCache();
+	private final PrefixCache agreement = new PrefixCache();
+
+	private MergeCache() {
+	}
+
+	/**
+	 * Creates a new, empty MergeCache
+	 * @return New MergeCache instance
+	 */
+	public static MergeCache create() {
+		return new MergeCache();
+	}
+
+	/**
+	 * Gets the weighted stakes for peers in a consensus State. Reuses the previous table
+	 * if the peers are unchanged, which is usually the case for successive States.
+	 *
+	 * @param state Consensus State
+	 * @return StakeTable for peers in the State
+	 */
+	public synchronized StakeTable getStakeTable(State state) {
+		BlobMap<AccountKey, PeerStatus> peers = state.getPeers();
+		if ((stakes == null) || !peers.equals(stakePeers)) {
+			stakes = state.getStakeTable();
+			stakePeers = peers;
+		}
+		return stakes;
+	}
+
+	/**
+	 * Gets the common prefix length of an Order's Blocks with this peer's Blocks
+	 * @param myBlocks Blocks of this peer's Order
+	 * @param order Order to compare
+	 * @return Common prefix length
+	 */
+	public synchronized long getConsistencyPrefix(AVector<Block> myBlocks, Order order) {
+		return consistency.get(myBlocks, order);
+	}
+
+	/**
+	 * Gets the common prefix length of an Order's Blocks with the winning Blocks in a merge
+	 * @param winningBlocks Winning Blocks
+	 * @param order Order to compare
+	 * @return Common prefix length
+	 */
+	public synchronized long getAgreementPrefix(AVector<Block> winningBlocks, Order order) {
+		return agreement.get(winningBlocks, order);
+	}
+
+	/**
+	 * Memoised common prefix lengths of Orders against a base vector of Blocks.
+	 *
+	 * When the base changes, cached lengths are kept for Orders that diverged from (or ended
+	 * within) the part of the old base shared with the new one, since these can't change.
+	 * Entries not used since the previous change of base are dropped.
+	 */
+	private static final class PrefixCache {
+		private AVector<Block> base = null;
+		private HashMap<Order, Entry> entries = new HashMap<>();
+		private long generation = 0;
+
+		private static final class Entry {
+			long prefix;
+			long generation;
+		}
+
+		long get(AVector<Block> newBase, Order order) {
+			if (newBase != base) setBase(newBase);
+			Entry e = entries.get(order);
+			if (e == null) {
+				e = new Entry();
+				e.prefix = base.commonPrefixLength(order.getBlocks());
+				entries.put(order, e);
+			}
+			e.generation = generation;
+			return e.prefix;
+		}
+
+		private void setBase(AVector<Block> newBase) {
+			if ((base != null) && base.equals(newBase)) {
+				base = newBase;
+				return;
+			}
+			long baseMatch = (base == null) ? -1 : base.commonPrefixLength(newBase);
+			Iterator<HashMap.Entry<Order, Entry>> it = entries.entrySet().iterator();
+			while (it.hasNext()) {
+				HashMap.Entry<Order, Entry> me = it.next();
+				Entry e = me.getValue();
+				long p = e.prefix;
+				boolean stillValid = (p < baseMatch) || ((p == baseMatch) && (p == me.getKey().getBlocks().count()));
+				if (!stillValid || (e.generation < generation)) it.remove();
+			}
+			base = newBase;
+			generation++;
+		}
+	}
+}
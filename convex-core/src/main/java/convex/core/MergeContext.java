@@ -21,12 +21,14 @@ public class MergeContext {
 	private final State state;
 	private final AKeyPair keyPair;
 	private final long timestamp;
+	private final MergeCache cache;
 
-	private MergeContext(AKeyPair peerKeyPair, long mergeTimestamp, State consensusState) {
+	private MergeContext(AKeyPair peerKeyPair, long mergeTimestamp, State consensusState, MergeCache cache) {
 		this.state = consensusState;
 		this.publicKey = peerKeyPair.getAccountKey();
 		this.keyPair = peerKeyPair;
 		this.timestamp = mergeTimestamp;
+		this.cache = cache;
 	}
 
 	/**
@@ -37,7 +39,19 @@ public class MergeContext {
 	 * @return New MergeContext instance
 	 */
 	public static MergeContext create(AKeyPair kp, long timestamp, State s) {
-		return new MergeContext(kp, timestamp, s);
+		return new MergeContext(kp, timestamp, s, MergeCache.create());
+	}
+
+	/**
+	 * Create a MergeContext using a cache of vote state from previous merges
+	 * @param kp Keypair
+	 * @param timestamp Timestamp
+	 * @param s Consensus State
+	 * @param cache MergeCache retained between merges by the same Peer
+	 * @return New MergeContext instance
+	 */
+	public static MergeContext create(AKeyPair kp, long timestamp, State s, MergeCache cache) {
+		return new MergeContext(kp, timestamp, s, cache);
 	}
 
 	/**
@@ -73,7 +87,7 @@ public class MergeContext {
 	 * @return Updated MergeContext
 	 */
 	public MergeContext withTimestamp(long newTimestamp) {
-		return new MergeContext(keyPair, newTimestamp, state);
+		return new MergeContext(keyPair, newTimestamp, state, cache);
 	}
 
 	/**
@@ -84,4 +98,12 @@ public class MergeContext {
 		return state;
 	}
 
+	/**
+	 * Gets the cache of vote state for this merge
+	 * @return MergeCache instance
+	 */
+	public MergeCache getCache() {
+		return cache;
+	}
+
 }
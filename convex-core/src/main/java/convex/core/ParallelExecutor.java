@@ -0,0 +1,336 @@
+package convex.core;
+
+import java.util.HashSet;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.AccountStatus;
+import convex.core.data.Address;
+import convex.core.data.SignedData;
+import convex.core.data.Strings;
+import convex.core.data.prim.CVMLong;
+import convex.core.init.Init;
+import convex.core.lang.Context;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+import convex.core.transactions.ATransaction;
+import convex.core.util.Counters;
+
+/**
+ * Optimistic parallel execution of the transactions in a Block.
+ *
+ * Every transaction is first executed speculatively against the State at the start of the
+ * Block, in parallel, with an {@link AccessTracker} recording which parts of the State it
+ * reads or updates. Results are then committed in Block order. A speculative result is only
+ * used if nothing it accessed was written by an earlier transaction in the Block, in which
+ * case it is exactly what sequential execution would have produced. Other transactions are
+ * re-executed sequentially against the latest State.
+ *
+ * Transaction completion (juice refund, memory accounting and fees) depends on the whole
+ * State, so it is always performed sequentially against the committed State.
+ */
+final class ParallelExecutor {
+
+	private static final Logger log = LoggerFactory.getLogger(ParallelExecutor.class.getName());
+
+	/**
+	 * Blocks with fewer transactions than this are executed sequentially
+	 */
+	static final int MIN_PARALLEL_SIZE = 8;
+
+	/**
+	 * Outcome of speculative execution of a single transaction
+	 */
+	private static final class Speculation {
+		/**
+		 * Reads and updates made by the transaction
+		 */
+		AccessTracker access;
+
+		/**
+		 * Context after failed checks or preparation, with no State change. Null otherwise.
+		 */
+		Context<?> failed;
+
+		/**
+		 * Context after applying the transaction, before completion
+		 */
+		Context<?> applied;
+
+		/**
+		 * Juice reserved by preparation
+		 */
+		long totalJuice;
+
+		/**
+		 * True if the transaction must be executed sequentially
+		 */
+		boolean serial = false;
+	}
+
+	/**
+	 * Locations in the State written by transactions already committed in this Block
+	 */
+	static final class WriteSet {
+		final HashSet<Long> accounts = new HashSet<>();
+		boolean count = false;
+		boolean peers = false;
+		boolean schedule = false;
+		int globals = 0;
+		boolean all = false;
+
+		boolean conflicts(AccessTracker t) {
+			if (all || t.allRead || t.allAccountsRead) return true;
+			if (t.countRead && count) return true;
+			if (t.peersRead && peers) return true;
+			if (t.scheduleRead && schedule) return true;
+			if ((t.globalsRead & globals) != 0) return true;
+			for (int i = 0; i < t.accountCount; i++) {
+				if (accounts.contains(t.accounts[i])) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Adds locations changed between two States. Accounts are only compared at the
+		 * indices recorded by the tracker, which include every account updated with
+		 * State.putAccount.
+		 */
+		void addChanges(State before, State after, AccessTracker t) {
+			if (before == after) return;
+			AVector<AccountStatus> ba = before.getAccounts();
+			AVector<AccountStatus> aa = after.getAccounts();
+			if (ba != aa) {
+				// accounts vector may have been updated without putAccount
+				if (t.allAccountsRead) all = true;
+
+				long n = ba.count();
+				if (aa.count() != n) count = true;
+				for (int i = 0; i < t.accountCount; i++) {
+					addAccount(ba, aa, t.accounts[i]);
+				}
+				// memory purchases during completion may update the exchange pool
+				addAccount(ba, aa, Init.MEMORY_EXCHANGE_ADDRESS.longValue());
+			}
+
+			if (before.getPeers() != after.getPeers()) peers = true;
+			if (before.getSchedule() != after.getSchedule()) schedule = true;
+
+			AVector<ACell> bg = before.getGlobals();
+			AVector<ACell> ag = after.getGlobals();
+			if (bg != ag) {
+				int n = (int) Math.min(bg.count(), ag.count());
+				for (int i = 0; i < n; i++) {
+					if (bg.get(i) != ag.get(i)) globals |= (1 << i);
+				}
+			}
+		}
+
+		private void addAccount(AVector<AccountStatus> ba, AVector<AccountStatus> aa, long ix) {
+			if ((ix < 0) || (ix >= ba.count()) || (ix >= aa.count())) return;
+			if (ba.get(ix) != aa.get(ix)) accounts.add(ix);
+		}
+	}
+
+	private ParallelExecutor() {
+	}
+
+	/**
+	 * Applies the transactions in a Block to a prepared State, producing the same
+	 * BlockResult as {@link State#applyTransactions(Block)}
+	 *
+	 * @param state State prepared for the Block
+	 * @param block Block to apply
+	 * @return BlockResult from applying the Block's transactions
+	 */
+	static BlockResult applyTransactions(State state, Block block) {
+		int n = block.length();
+		if (n < MIN_PARALLEL_SIZE) return state.applyTransactions(block);
+
+		Result[] results = new Result[n];
+		state = applyRange(state, block.getTransactions(), 0, n, results);
+		return BlockResult.create(state, results);
+	}
+
+	/**
+	 * Applies a range of transactions from a Block, executing them speculatively in parallel
+	 * then committing in order.
+	 *
+	 * @param state State before the first transaction in the range
+	 * @param transactions Transactions in the Block
+	 * @param start Index of first transaction to apply
+	 * @param end Index after last transaction to apply
+	 * @param results Array of Results for the Block, updated for this range
+	 * @return State after applying the range of transactions
+	 */
+	static State applyRange(State state, AVector<SignedData<ATransaction>> transactions, int start, int end, Result[] results) {
+		Speculation[] specs = new Speculation[end - start];
+		final State initialState = state;
+		AStore store = Stores.current();
+		IntStream range = IntStream.range(start, end);
+		if (specs.length >= MIN_PARALLEL_SIZE) range = range.parallel();
+		range.forEach(i -> {
+			AStore saved = Stores.current();
+			Stores.setCurrent(store);
+			try {
+				specs[i - start] = speculate(initialState, transactions.get(i));
+			} finally {
+				Stores.setCurrent(saved);
+			}
+		});
+
+		WriteSet written = new WriteSet();
+		for (int i = start; i < end; i++) {
+			SignedData<ATransaction> signed = transactions.get(i);
+			Speculation spec = specs[i - start];
+			CVMLong id = CVMLong.create(i);
+
+			if (!spec.serial && !written.conflicts(spec.access)) {
+				if (spec.failed != null) {
+					// checks or preparation failed with the same inputs, so no State change
+					results[i] = Result.fromContext(id, spec.failed);
+					Counters.parallelCommit++;
+					continue;
+				}
+				try {
+					Context<?> ctx = commit(state, initialState, signed.getValue(), spec);
+					results[i] = Result.fromContext(id, ctx);
+					State newState = ctx.getState();
+					written.addChanges(state, newState, spec.access);
+					state = newState;
+					Counters.parallelCommit++;
+					continue;
+				} catch (Throwable t) {
+					log.warn("Unable to commit speculative transaction, executing sequentially", t);
+				}
+			}
+
+			Counters.parallelRetry++;
+			state = applyTransaction(state, transactions.get(i), i, results, written);
+		}
+		return state;
+	}
+
+	/**
+	 * Applies a single transaction from a Block sequentially, as per State.applyTransactions
+	 *
+	 * @param state State before the transaction
+	 * @param signed Signed transaction
+	 * @param i Index of transaction in Block
+	 * @param results Array of Results for the Block, updated with the Result of this transaction
+	 * @param written Set of writes in the Block to update, or null if not needed
+	 * @return State after applying the transaction
+	 */
+	static State applyTransaction(State state, SignedData<ATransaction> signed, int i, Result[] results, WriteSet written) {
+		CVMLong id = CVMLong.create(i);
+		// SECURITY: catch-all exception handler.
+		try {
+			Context<?> ctx;
+			AccessTracker access = (written == null) ? null : AccessTracker.start();
+			try {
+				ctx = state.applyTransaction(signed);
+			} finally {
+				if (access != null) access.stop();
+			}
+			results[i] = Result.fromContext(id, ctx);
+			State newState = ctx.getState();
+			if (written != null) written.addChanges(state, newState, access);
+			return newState;
+		} catch (Throwable t) {
+			String msg = "Unexpected fatal exception applying transaction: " + t.toString();
+			results[i] = Result.create(id, Strings.create(msg), ErrorCodes.UNEXPECTED);
+			t.printStackTrace();
+			log.error(msg);
+			return state;
+		}
+	}
+
+	/**
+	 * Executes a transaction against the initial State, up to but not including completion
+	 */
+	private static Speculation speculate(State state, SignedData<ATransaction> signed) {
+		Speculation spec = new Speculation();
+		AccessTracker access = AccessTracker.start();
+		spec.access = access;
+		try {
+			Context<?> ctx = state.checkTransaction(signed);
+			if (ctx != null) {
+				spec.failed = ctx;
+				return spec;
+			}
+
+			ATransaction t = signed.getValue();
+			ctx = state.prepareTransaction(t.getAddress(), t);
+			if (ctx.isExceptional()) {
+				spec.failed = ctx;
+				return spec;
+			}
+			spec.totalJuice = ctx.getJuice();
+			spec.applied = t.apply(ctx);
+		} catch (Throwable e) {
+			// leave it to sequential execution to handle
+			spec.serial = true;
+		} finally {
+			access.stop();
+		}
+		return spec;
+	}
+
+	/**
+	 * Commits a speculatively executed transaction to the latest State, by copying its
+	 * updates to the initial State and then completing the transaction.
+	 */
+	private static Context<?> commit(State state, State initialState, ATransaction t, Speculation spec) {
+		AccessTracker access = spec.access;
+		State applied = spec.applied.getState();
+
+		// preparation is cheap, and completion needs the exact prepared State
+		Context<?> prepared = state.prepareTransaction(t.getAddress(), t);
+		if (prepared.isExceptional()) throw new IllegalStateException("Preparation failed after successful speculation");
+
+		State s = state;
+		AVector<AccountStatus> ia = initialState.getAccounts();
+		AVector<AccountStatus> aa = applied.getAccounts();
+		if (ia != aa) {
+			long n = ia.count();
+			for (int i = 0; i < access.accountCount; i++) {
+				long ix = access.accounts[i];
+				if (ix >= n) continue;
+				AccountStatus as = aa.get(ix);
+				if (as != ia.get(ix)) s = s.putAccount(Address.create(ix), as);
+			}
+			// new accounts, count is unchanged so they go in the same place
+			long an = aa.count();
+			for (long ix = n; ix < an; ix++) {
+				s = s.putAccount(Address.create(ix), aa.get(ix));
+			}
+		}
+
+		// only copy structures the transaction accessed, others may have changed since
+		if (access.peersRead && (applied.getPeers() != initialState.getPeers())) {
+			s = s.withPeers(applied.getPeers());
+		}
+		if (access.scheduleRead && (applied.getSchedule() != initialState.getSchedule())) {
+			s = s.withSchedule(applied.getSchedule());
+		}
+		AVector<ACell> ig = initialState.getGlobals();
+		AVector<ACell> ag = applied.getGlobals();
+		if ((access.globalsRead != 0) && (ig != ag)) {
+			AVector<ACell> sg = s.getGlobals();
+			int n = (int) ag.count();
+			for (int i = 0; i < n; i++) {
+				if (((access.globalsRead >> i) & 1) == 0) continue;
+				ACell v = ag.get(i);
+				if (v != ig.get(i)) sg = sg.assoc(i, v);
+			}
+			s = s.withGlobals(sg);
+		}
+
+		Context<ACell> ctx = spec.applied.withState(s);
+		return ctx.completeTransaction(prepared.getState(), spec.totalJuice);
+	}
+}
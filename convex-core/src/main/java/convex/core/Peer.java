@@ -80,9 +80,22 @@ public class Peer {
 	 */
 	private final AVector<BlockResult> blockResults;
 
+	/**
+	 * Cache of vote state for Belief merges, shared by successive versions of this Peer
+	 */
+	private transient final MergeCache mergeCache;
+
+	/**
+	 * If true, consensus Blocks are not executed during Belief merges, and results must be
+	 * added with appendBlockResult
+	 */
+	private transient final boolean deferExecution;
+
 	private Peer(AKeyPair kp, SignedData<Belief> belief, AVector<State> states, AVector<BlockResult> results,
-			long timeStamp) {
+			long timeStamp, MergeCache mergeCache, boolean deferExecution) {
 		this.keyPair = kp;
+		this.mergeCache = mergeCache;
+		this.deferExecution = deferExecution;
 		this.peerKey = kp.getAccountKey();
 		this.belief = belief;
 		this.states = states;
@@ -102,7 +115,7 @@ public class Peer {
 		AVector<BlockResult> results=(AVector<BlockResult>) peerData.get(Keywords.RESULTS);
 		AVector<State> states=(AVector<State>) peerData.get(Keywords.STATES);
 		long timestamp=belief.getValue().getTimestamp();
-		return new Peer(keyPair,belief,states,results,timestamp);
+		return new Peer(keyPair,belief,states,results,timestamp,MergeCache.create(),false);
 	}
 
 	/**
@@ -138,7 +151,7 @@ public class Peer {
 			throw new Error("Belief not correctly persisted! "+sb.getHash());
 		}
 
-		return new Peer(peerKP, sb, states, Vectors.empty(), initialState.getTimeStamp().longValue());
+		return new Peer(peerKP, sb, states, Vectors.empty(), initialState.getTimeStamp().longValue(), MergeCache.create(), false);
 	}
 	
 	/**
@@ -220,7 +233,7 @@ public class Peer {
 	 * @return MergeContext
 	 */
 	public MergeContext getMergeContext() {
-		return MergeContext.create(keyPair, timestamp, getConsensusState());
+		return MergeContext.create(keyPair, timestamp, getConsensusState(), mergeCache);
 	}
 
 	/**
@@ -231,7 +244,29 @@ public class Peer {
 	 */
 	public Peer updateTimestamp(long newTimestamp) {
 		if (newTimestamp < timestamp) return this;
-		return new Peer(keyPair, belief, states, blockResults, timestamp);
+		return new Peer(keyPair, belief, states, blockResults, timestamp, mergeCache, deferExecution);
+	}
+
+	/**
+	 * Sets whether execution of consensus Blocks is deferred. If deferred, Belief merges only
+	 * update the consensus point, and the consensus State lags behind until results are added
+	 * with {@link #appendBlockResult(BlockResult)}. If not deferred, any Blocks awaiting
+	 * execution are executed at the next Belief update.
+	 *
+	 * @param defer true to defer execution of consensus Blocks
+	 * @return Updated Peer
+	 */
+	public Peer withDeferredExecution(boolean defer) {
+		if (defer == deferExecution) return this;
+		return new Peer(keyPair, belief, states, blockResults, timestamp, mergeCache, defer);
+	}
+
+	/**
+	 * Checks if execution of consensus Blocks is deferred for this Peer
+	 * @return true if deferred
+	 */
+	public boolean isExecutionDeferred() {
+		return deferExecution;
 	}
 
 	/**
@@ -364,7 +399,8 @@ public class Peer {
 	}
 
 	/**
-	 * Gets the current consensus state for this chain
+	 * Gets the current consensus state for this chain. If execution is deferred, this is the
+	 * State after the last executed Block, which may be behind the consensus point.
 	 *
 	 * @return Consensus state for this chain (initial state if no block consensus)
 	 */
@@ -384,7 +420,7 @@ public class Peer {
 	 */
 	public Peer mergeBeliefs(Belief... beliefs) throws BadSignatureException, InvalidDataException {
 		Belief belief = getBelief();
-		MergeContext mc = MergeContext.create(keyPair, timestamp, getConsensusState());
+		MergeContext mc = MergeContext.create(keyPair, timestamp, getConsensusState(), mergeCache);
 		Belief newBelief = belief.merge(mc, beliefs);
 
 		long ocp=getConsensusPoint();
@@ -414,10 +450,10 @@ public class Peer {
 		long stateIndex = states.count() - 1; // index of last state
 		AVector<Block> blocks = myOrder.getBlocks();
 
-		// need to advance states
+		// need to advance states, unless left for a separate execution stage
 		AVector<State> newStates = this.states;
 		AVector<BlockResult> newResults = this.blockResults;
-		while (stateIndex < consensusPoint) { // add states until last state is at consensus point
+		while ((!deferExecution) && (stateIndex < consensusPoint)) { // add states until last state is at consensus point
 			State s = newStates.get(stateIndex);
 			Block block = blocks.get(stateIndex);
 			BlockResult br = s.applyBlock(block);
@@ -426,7 +462,32 @@ public class Peer {
 			stateIndex++;
 		}
 		SignedData<Belief> sb = keyPair.signData(newBelief);
-		return new Peer(keyPair, sb, newStates, newResults, timestamp);
+		return new Peer(keyPair, sb, newStates, newResults, timestamp, mergeCache, deferExecution);
+	}
+
+	/**
+	 * Adds the result of executing the next consensus Block, when execution is deferred.
+	 * The BlockResult must be from applying the Block at the executed point to the current
+	 * consensus State.
+	 *
+	 * @param br Result of executing the next consensus Block
+	 * @return Updated Peer with new consensus State
+	 */
+	public Peer appendBlockResult(BlockResult br) {
+		if (getExecutedPoint() >= getConsensusPoint()) {
+			throw new IllegalStateException("No consensus Block awaiting execution");
+		}
+		return new Peer(keyPair, belief, states.append(br.getState()), blockResults.append(br), timestamp, mergeCache, deferExecution);
+	}
+
+	/**
+	 * Gets the number of consensus Blocks executed to produce the consensus State. Equal to
+	 * the consensus point unless execution is deferred.
+	 *
+	 * @return Number of Blocks executed
+	 */
+	public long getExecutedPoint() {
+		return states.count() - 1;
 	}
 
 	/**
@@ -439,15 +500,13 @@ public class Peer {
 		SignedData<Belief> sb=this.belief;
 		sb=ACell.createAnnounced(sb, noveltyHandler).getValue();
 
-		// Persist states
-		AVector<State> newStates = this.states;
-		newStates=ACell.createPersisted(newStates).getValue();
-
-		// Persist results
-		AVector<BlockResult> newResults = this.blockResults;
-		newResults=ACell.createPersisted(newResults).getValue();
+		// Persist states and results as bulk writes, since these are large trees where
+		// most cells are already stored
+		AStore store=Stores.current();
+		AVector<State> newStates = store.storeTree(Ref.get(this.states), Ref.PERSISTED, null).getValue();
+		AVector<BlockResult> newResults = store.storeTree(Ref.get(this.blockResults), Ref.PERSISTED, null).getValue();
 
-		return new Peer(this.keyPair, sb, newStates, newResults, this.timestamp);
+		return new Peer(this.keyPair, sb, newStates, newResults, this.timestamp, mergeCache, deferExecution);
 	}
 
 	/**
@@ -0,0 +1,127 @@
+package convex.core;
+
+import java.util.HashMap;
+
+import convex.core.data.AccountKey;
+import convex.core.data.BlobMap;
+import convex.core.data.MapEntry;
+import convex.core.data.PeerStatus;
+import convex.core.lang.RT;
+
+/**
+ * Table of weighted stakes for the peers in a consensus State, stored in primitive arrays
+ * indexed by peer.
+ *
+ * Peers are held in the key order of the State's peers map, so lookup by key is a binary
+ * search with no hashing or boxing. Instances are immutable, and cached by the State.
+ */
+public class StakeTable {
+
+	private final AccountKey[] keys;
+	private final double[] stakes;
+	private final double totalStake;
+
+	private StakeTable(AccountKey[] keys, double[] stakes, double totalStake) {
+		this.keys = keys;
+		this.stakes = stakes;
+		this.totalStake = totalStake;
+	}
+
+	/**
+	 * Creates a StakeTable for a map of peers
+	 * @param peers Peers map from a State
+	 * @return New StakeTable instance
+	 */
+	public static StakeTable create(BlobMap<AccountKey, PeerStatus> peers) {
+		int n = (int) peers.count();
+		AccountKey[] keys = new AccountKey[n];
+		double[] stakes = new double[n];
+		double total = 0.0;
+		for (int i = 0; i < n; i++) {
+			MapEntry<AccountKey, PeerStatus> me = peers.entryAt(i);
+			keys[i] = RT.ensureAccountKey(me.getKey());
+			stakes[i] = (double) me.getValue().getTotalStake();
+			total += stakes[i];
+		}
+		return new StakeTable(keys, stakes, total);
+	}
+
+	/**
+	 * Gets the number of peers in this table
+	 * @return Number of peers
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Gets the key of the peer at a given index
+	 * @param i Index of peer
+	 * @return Peer key
+	 */
+	public AccountKey getKey(int i) {
+		return keys[i];
+	}
+
+	/**
+	 * Gets the stake of the peer at a given index
+	 * @param i Index of peer
+	 * @return Weighted stake
+	 */
+	public double getStake(int i) {
+		return stakes[i];
+	}
+
+	/**
+	 * Gets the index of a peer in this table
+	 * @param key Peer key
+	 * @return Index of peer, or -1 if not present
+	 */
+	public int indexOf(AccountKey key) {
+		int lo = 0;
+		int hi = keys.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = keys[mid].compareTo(key);
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the stake of a peer
+	 * @param key Peer key
+	 * @return Weighted stake, or zero if the peer is not present
+	 */
+	public double getStake(AccountKey key) {
+		int i = indexOf(key);
+		return (i < 0) ? 0.0 : stakes[i];
+	}
+
+	/**
+	 * Gets the total stake of all peers
+	 * @return Total weighted stake
+	 */
+	public double getTotalStake() {
+		return totalStake;
+	}
+
+	/**
+	 * Converts this table to a map of stakes, as per State.computeStakes()
+	 * @return Map of peer keys to stake, with total stake under the null key
+	 */
+	public HashMap<AccountKey, Double> toMap() {
+		HashMap<AccountKey, Double> hm = new HashMap<>(keys.length + 1);
+		for (int i = 0; i < keys.length; i++) {
+			hm.put(keys[i], stakes[i]);
+		}
+		hm.put(null, totalStake);
+		return hm;
+	}
+}
@@ -0,0 +1,79 @@
+package convex.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The distinct Orders under consideration in a Belief merge, with the total stake of
+ * the peers voting for each, stored in arrays indexed by Order.
+ */
+final class StakedOrders {
+
+	private final HashMap<Order, Integer> index;
+	private Order[] orders;
+	private double[] stakes;
+	private int count = 0;
+	private double totalStake = 0.0;
+
+	StakedOrders(int capacity) {
+		capacity = Math.max(1, capacity);
+		index = new HashMap<>(capacity);
+		orders = new Order[capacity];
+		stakes = new double[capacity];
+	}
+
+	/**
+	 * Adds stake to an Order, adding the Order if not already present
+	 * @param order Order voted for
+	 * @param stake Stake of voting peer
+	 */
+	void add(Order order, double stake) {
+		Integer ix = index.get(order);
+		if (ix == null) {
+			if (count == orders.length) {
+				int n = count * 2;
+				orders = Arrays.copyOf(orders, n);
+				stakes = Arrays.copyOf(stakes, n);
+			}
+			index.put(order, count);
+			orders[count] = order;
+			stakes[count] = stake;
+			count++;
+		} else {
+			stakes[ix] += stake;
+		}
+		totalStake += stake;
+	}
+
+	int size() {
+		return count;
+	}
+
+	Order getOrder(int i) {
+		return orders[i];
+	}
+
+	double getStake(int i) {
+		return stakes[i];
+	}
+
+	/**
+	 * Gets the total stake on all Orders
+	 * @return Total stake
+	 */
+	double getTotalStake() {
+		return totalStake;
+	}
+
+	/**
+	 * Converts to a map of Orders to stake, for use with Belief.computeWinningOrder
+	 * @return Map of Orders to stake
+	 */
+	HashMap<Order, Double> toMap() {
+		HashMap<Order, Double> hm = new HashMap<>(count);
+		for (int i = 0; i < count; i++) {
+			hm.put(orders[i], stakes[i]);
+		}
+		return hm;
+	}
+}
@@ -38,7 +38,6 @@ import convex.core.exceptions.BadSignatureException;
 import convex.core.exceptions.InvalidDataException;
 import convex.core.lang.AOp;
 import convex.core.lang.Context;
-import convex.core.lang.RT;
 import convex.core.lang.Symbols;
 import convex.core.lang.impl.RecordFormat;
 import convex.core.transactions.ATransaction;
@@ -90,6 +89,11 @@ public class State extends ARecord {
 	private final AVector<ACell> globals;
 	private final BlobMap<ABlob, AVector<ACell>> schedule;
 
+	/**
+	 * Cached table of peer stakes, computed on demand. Not part of the State value.
+	 */
+	private transient StakeTable stakeTable = null;
+
 	private State(AVector<AccountStatus> accounts, BlobMap<AccountKey, PeerStatus> peers,
 			AVector<ACell> globals, BlobMap<ABlob, AVector<ACell>> schedule) {
 		super(FORMAT);
@@ -101,6 +105,7 @@ public class State extends ARecord {
 
 	@Override
 	public ACell get(ACell k) {
+		AccessTracker.recordAll();
 		if (Keywords.ACCOUNTS.equals(k)) return accounts;
 		if (Keywords.PEERS.equals(k)) return peers;
 		if (Keywords.GLOBALS.equals(k)) return globals;
@@ -118,6 +123,7 @@ public class State extends ARecord {
 	}
 
 	public <R extends ACell> Ref<R> getRef(int i) {
+		AccessTracker.recordAll();
 		if (i<0) throw new IndexOutOfBoundsException(i);
 
 		{
@@ -233,6 +239,7 @@ public class State extends ARecord {
 	 * @return Vector of Accounts
 	 */
 	public AVector<AccountStatus> getAccounts() {
+		AccessTracker.recordAllAccounts();
 		return accounts;
 	}
 
@@ -242,6 +249,7 @@ public class State extends ARecord {
 	 * @return A map of addresses to PeerStatus records
 	 */
 	public BlobMap<AccountKey, PeerStatus> getPeers() {
+		AccessTracker.recordPeers();
 		return peers;
 	}
 
@@ -280,6 +288,41 @@ public class State extends ARecord {
 		return state.applyTransactions(block);
 	}
 
+	/**
+	 * Block level state transition function, with optimistic parallel execution of
+	 * transactions.
+	 *
+	 * Produces exactly the same BlockResult as {@link #applyBlock(Block)}. Transactions are
+	 * first executed speculatively in parallel against the State at the start of the Block,
+	 * then committed in Block order. Transactions that read anything written by an earlier
+	 * transaction in the Block are re-executed sequentially.
+	 *
+	 * @param block Block to Apply
+	 * @return The BlockResult from applying the given Block to this State
+	 */
+	public BlockResult applyBlockParallel(Block block) {
+		Counters.applyBlock++;
+		State state = prepareBlock(block);
+		return ParallelExecutor.applyTransactions(state, block);
+	}
+
+	/**
+	 * Block level state transition function, with deterministic parallel execution of
+	 * independent transactions.
+	 *
+	 * Produces exactly the same BlockResult as {@link #applyBlock(Block)}. Consecutive
+	 * transactions with disjoint access sets (see {@link ATransaction#getAccessSet(State)})
+	 * are applied in parallel, others sequentially.
+	 *
+	 * @param block Block to Apply
+	 * @return The BlockResult from applying the given Block to this State
+	 */
+	public BlockResult applyBlockScheduled(Block block) {
+		Counters.applyBlock++;
+		State state = prepareBlock(block);
+		return BlockScheduler.applyTransactions(state, block);
+	}
+
 	/**
 	 * Apply state updates consistent with time advancing to a given timestamp
 	 * @param b
@@ -366,17 +409,17 @@ public class State extends ARecord {
 		return state;
 	}
 
-	private State withSchedule(BlobMap<ABlob, AVector<ACell>> newSchedule) {
+	State withSchedule(BlobMap<ABlob, AVector<ACell>> newSchedule) {
 		if (schedule == newSchedule) return this;
 		return new State(accounts, peers, globals, newSchedule);
 	}
 
-	private State withGlobals(AVector<ACell> newGlobals) {
+	State withGlobals(AVector<ACell> newGlobals) {
 		if (newGlobals == globals) return this;
 		return new State(accounts, peers, newGlobals, schedule);
 	}
 
-	private BlockResult applyTransactions(Block block) {
+	BlockResult applyTransactions(Block block) {
 		State state = this;
 		int blockLength = block.length();
 		Result[] results = new Result[blockLength];
@@ -414,7 +457,20 @@ public class State extends ARecord {
 	 *
 	 * @return Context containing the updated chain State (may be exceptional)
 	 */
-	private <T extends ACell> Context<T> applyTransaction(SignedData<? extends ATransaction> signedTransaction) throws BadSignatureException {
+	<T extends ACell> Context<T> applyTransaction(SignedData<? extends ATransaction> signedTransaction) throws BadSignatureException {
+		Context<T> ctx=checkTransaction(signedTransaction);
+		if (ctx!=null) return ctx;
+
+		ctx=applyTransaction(signedTransaction.getValue());
+		return ctx;
+	}
+
+	/**
+	 * Checks the origin Account and signature of a signed transaction.
+	 *
+	 * @return Context with error if the transaction is not valid for this State, or null if OK
+	 */
+	<T extends ACell> Context<T> checkTransaction(SignedData<? extends ATransaction> signedTransaction) throws BadSignatureException {
 		// Extract transaction, performs signature check
 		ATransaction t=signedTransaction.getValue();
 		Address addr=t.getAddress();
@@ -428,9 +484,7 @@ public class State extends ARecord {
 				return Context.createFake(this).withError(ErrorCodes.SIGNATURE,"Signature not valid for Account: "+addr+" expected public key: "+key);
 			}
 		}
-
-		Context<T> ctx=applyTransaction(t);
-		return ctx;
+		return null;
 	}
 
 	/**
@@ -487,7 +541,7 @@ public class State extends ARecord {
 	}
 
 	@SuppressWarnings("unchecked")
-	private <T extends ACell> Context<T> prepareTransaction(Address origin,ATransaction t) {
+	<T extends ACell> Context<T> prepareTransaction(Address origin,ATransaction t) {
 		// Pre-transaction state updates (persisted even if transaction fails)
 		AccountStatus account = getAccount(origin);
 		if (account == null) {
@@ -521,16 +575,22 @@ public class State extends ARecord {
 	 * @return Map of Stakes
 	 */
 	public HashMap<AccountKey, Double> computeStakes() {
-		HashMap<AccountKey, Double> hm = new HashMap<>(peers.size());
-		Double totalStake = peers.reduceEntries((acc, e) -> {
-			double stake = (double) (e.getValue().getTotalStake());
-			
-			// TODO: potential performance bottleneck from hashing?
-			hm.put(RT.ensureAccountKey(e.getKey()), stake);
-			return stake + acc;
-		}, 0.0);
-		hm.put(null, totalStake);
-		return hm;
+		return getStakeTable().toMap();
+	}
+
+	/**
+	 * Gets the table of weighted stakes for peers in this State. The table is computed
+	 * once and cached, so this is cheap to call repeatedly.
+	 *
+	 * @return StakeTable for this State
+	 */
+	public StakeTable getStakeTable() {
+		StakeTable st = stakeTable;
+		if (st == null) {
+			st = StakeTable.create(peers);
+			stakeTable = st;
+		}
+		return st;
 	}
 
 	/**
@@ -553,6 +613,11 @@ public class State extends ARecord {
 	public State putAccount(Address address, AccountStatus accountStatus) {
 		long ix=address.longValue();
 		long n=accounts.count();
+		if (ix==n) {
+			AccessTracker.recordAccountCount();
+		} else {
+			AccessTracker.recordAccount(ix);
+		}
 		if (ix>n) {
 			throw new IndexOutOfBoundsException("Trying to add an account beyond accounts array at position: "+ix);
 		}
@@ -576,7 +641,11 @@ public class State extends ARecord {
 	 */
 	public AccountStatus getAccount(Address target) {
 		long ix=target.longValue();
-		if ((ix<0)||(ix>=accounts.count())) return null;
+		if ((ix<0)||(ix>=accounts.count())) {
+			AccessTracker.recordAccountCount();
+			return null;
+		}
+		AccessTracker.recordAccount(ix);
 		return accounts.get(ix);
 	}
 
@@ -598,6 +667,7 @@ public class State extends ARecord {
 	 * @return Updated State
 	 */
 	public State withPeers(BlobMap<AccountKey, PeerStatus> newPeers) {
+		AccessTracker.recordPeers();
 		if (peers == newPeers) return this;
 		return create(accounts, newPeers, globals, schedule);
 	}
@@ -615,6 +685,7 @@ public class State extends ARecord {
 	 * @return The updated state with the Actor deployed.
 	 */
 	public State tryAddActor() {
+		AccessTracker.recordAccountCount();
 		AccountStatus as = AccountStatus.createActor();
 		AVector<AccountStatus> newAccounts = accounts.conj(as);
 		return withAccounts(newAccounts);
@@ -628,6 +699,7 @@ public class State extends ARecord {
 	 * @return The total value of all funds
 	 */
 	public long computeTotalFunds() {
+		AccessTracker.recordAll();
 		long total = accounts.reduce((Long acc,AccountStatus as) -> acc + as.getBalance(), (Long)0L);
 		total += peers.reduceValues((Long acc, PeerStatus ps) -> acc + ps.getTotalStake(), 0L);
 		total += getGlobalFees().longValue();
@@ -653,6 +725,7 @@ public class State extends ARecord {
 	 * @return The timestamp from this state.
 	 */
 	public CVMLong getTimeStamp() {
+		AccessTracker.recordGlobal(GLOBAL_TIMESTAMP);
 		return (CVMLong) globals.get(GLOBAL_TIMESTAMP);
 	}
 
@@ -662,6 +735,7 @@ public class State extends ARecord {
 	 * @return Juice Price
 	 */
 	public CVMLong getJuicePrice() {
+		AccessTracker.recordGlobal(GLOBAL_JUICE_PRICE);
 		return (CVMLong) globals.get(GLOBAL_JUICE_PRICE);
 	}
 
@@ -675,6 +749,7 @@ public class State extends ARecord {
 	 * @return The updated State
 	 */
 	public State scheduleOp(long time, Address address, AOp<?> op) {
+		AccessTracker.recordSchedule();
 		AVector<ACell> v = Vectors.of(address, op);
 
 		LongBlob key = LongBlob.create(time);
@@ -695,6 +770,7 @@ public class State extends ARecord {
 	 * @return The schedule data structure.
 	 */
 	public BlobMap<ABlob, AVector<ACell>> getSchedule() {
+		AccessTracker.recordSchedule();
 		return schedule;
 	}
 
@@ -703,6 +779,7 @@ public class State extends ARecord {
 	 * @return Global Fees
 	 */
 	public CVMLong getGlobalFees() {
+		AccessTracker.recordGlobal(GLOBAL_FEES);
 		return (CVMLong) globals.get(GLOBAL_FEES);
 	}
 
@@ -712,6 +789,7 @@ public class State extends ARecord {
 	 * @return Updated State
 	 */
 	public State withGlobalFees(CVMLong newFees) {
+		AccessTracker.recordGlobal(GLOBAL_FEES);
 		return withGlobals(globals.assoc(GLOBAL_FEES,newFees));
 	}
 
@@ -735,6 +813,7 @@ public class State extends ARecord {
 	 * @return Updated state
 	 */
 	public State withPeer(AccountKey peerKey, PeerStatus updatedPeer) {
+		AccessTracker.recordPeers();
 		return withPeers(peers.assoc(peerKey, updatedPeer));
 	}
 
@@ -745,6 +824,7 @@ public class State extends ARecord {
 	 * @return Next address available
 	 */
 	public Address nextAddress() {
+		AccessTracker.recordAccountCount();
 		return Address.create(accounts.count());
 	}
 
@@ -764,6 +844,7 @@ public class State extends ARecord {
 	 * @return Vector of global values
 	 */
 	public AVector<ACell> getGlobals() {
+		AccessTracker.recordGlobals();
 		return globals;
 	}
 
@@ -773,6 +854,7 @@ public class State extends ARecord {
 	 * @return Updated State
 	 */
 	public State withTimestamp(long timestamp) {
+		AccessTracker.recordGlobal(GLOBAL_TIMESTAMP);
 		return withGlobals(globals.assoc(GLOBAL_TIMESTAMP, CVMLong.create(timestamp)));
 	}
 	
@@ -23,6 +23,20 @@ public abstract class ASignature extends ACell {
 	 */
 	public abstract boolean verify(ABlob message, AccountKey publicKey);
 	
+	/**
+	 * Verifies a batch of signatures. Each signature i is checked against message i and public key i.
+	 * 
+	 * Uses Ed25519
+	 * 
+	 * @param messages Messages that were signed
+	 * @param publicKeys Public keys of signers
+	 * @param signatures Signatures to verify
+	 * @return Array of results, true where the corresponding signature is valid
+	 */
+	public static boolean[] verifyBatch(ABlob[] messages, AccountKey[] publicKeys, ASignature[] signatures) {
+		return Ed25519Signature.verifyBatch(messages, publicKeys, signatures);
+	}
+	
 	/**
 	 * Reads a Signature from the given ByteBuffer. Assumes tag byte already read.
 	 * 
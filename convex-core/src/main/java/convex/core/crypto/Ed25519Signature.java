@@ -97,6 +97,28 @@ public class Ed25519Signature extends ASignature {
 	    return verified;
 	}
 	
+	/**
+	 * Verifies a batch of signatures. 
+	 * 
+	 * Sodium does not provide a batch verification primitive, so signatures are verified 
+	 * individually on the calling thread. Parallel verification of incoming messages is 
+	 * the job of the Peer's verification stage.
+	 * 
+	 * @param messages Messages that were signed
+	 * @param publicKeys Public keys of signers
+	 * @param signatures Signatures to verify
+	 * @return Array of results, true where the corresponding signature is valid
+	 */
+	public static boolean[] verifyBatch(ABlob[] messages, AccountKey[] publicKeys, ASignature[] signatures) {
+		int n=messages.length;
+		if ((publicKeys.length!=n)||(signatures.length!=n)) throw new IllegalArgumentException("Batch verification requires equal numbers of messages, keys and signatures");
+		boolean[] results=new boolean[n];
+		for (int i=0; i<n; i++) {
+			results[i]=signatures[i].verify(messages[i], publicKeys[i]);
+		}
+		return results;
+	}
+	
 //	private boolean verify(Hash hash, PublicKey publicKey) {
 //		try {
 //			Signature verifier = Signature.getInstance("Ed25519");
@@ -0,0 +1,90 @@
+package convex.core.crypto;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import convex.core.data.Hash;
+
+/**
+ * Bounded, concurrent cache of signatures known to be valid, keyed by the Hash of the
+ * SignedData encoding. Since the encoding includes the signer's public key, the signature
+ * and the signed value, the Hash identifies exactly which signature was verified.
+ *
+ * Only valid signatures are cached, so a hit is always safe to treat as verified.
+ *
+ * Uses two generations of entries: new entries go into the current generation, and when it
+ * is full the previous generation is discarded. Entries found in the previous generation are
+ * promoted, so frequently seen signatures survive. Total size is bounded by the given capacity.
+ */
+public class SignatureCache {
+
+	private final int generationSize;
+
+	private volatile ConcurrentHashMap<Hash,Boolean> current;
+	private volatile ConcurrentHashMap<Hash,Boolean> previous;
+
+	private SignatureCache(int capacity) {
+		this.generationSize=Math.max(1, capacity/2);
+		this.current=new ConcurrentHashMap<>();
+		this.previous=new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Creates a SignatureCache with the given capacity
+	 * @param capacity Maximum number of cached signatures
+	 * @return New SignatureCache instance
+	 */
+	public static SignatureCache create(int capacity) {
+		if (capacity<=0) throw new IllegalArgumentException("Cache capacity must be positive");
+		return new SignatureCache(capacity);
+	}
+
+	/**
+	 * Checks if a signature is known to be valid
+	 * @param hash Hash of SignedData
+	 * @return true if the signature has been recorded as valid, false if unknown
+	 */
+	public boolean isVerified(Hash hash) {
+		if (current.containsKey(hash)) return true;
+		if (previous.containsKey(hash)) {
+			add(hash);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records a signature as valid.
+	 *
+	 * SECURITY: must only be called after the signature has actually been verified
+	 *
+	 * @param hash Hash of SignedData
+	 */
+	public void add(Hash hash) {
+		ConcurrentHashMap<Hash,Boolean> gen=current;
+		gen.put(hash, Boolean.TRUE);
+		if (gen.size()>=generationSize) {
+			synchronized (this) {
+				if (current==gen) {
+					previous=gen;
+					current=new ConcurrentHashMap<>();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the approximate number of signatures cached
+	 * @return Number of cached signatures
+	 */
+	public int size() {
+		return current.size()+previous.size();
+	}
+
+	/**
+	 * Removes all cached signatures
+	 */
+	public synchronized void clear() {
+		current=new ConcurrentHashMap<>();
+		previous=new ConcurrentHashMap<>();
+	}
+}
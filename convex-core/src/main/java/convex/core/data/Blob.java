@@ -160,11 +160,8 @@ public class Blob extends AArrayBlob {
 
 	@Override
 	public ByteBuffer getByteBuffer() {
-		if (offset == 0) {
-			return ByteBuffer.wrap(store, offset, length).asReadOnlyBuffer();
-		} else {
-			return ByteBuffer.wrap(this.getBytes()).asReadOnlyBuffer();
-		}
+		// slice so that the buffer starts at position zero without copying
+		return ByteBuffer.wrap(store, offset, length).slice().asReadOnlyBuffer();
 	}
 
 	/**
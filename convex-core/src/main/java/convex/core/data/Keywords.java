@@ -85,6 +85,16 @@ public class Keywords {
 	public static final Keyword OUTGOING_CONNECTIONS = Keyword.create("outgoing-connections");
 	public static final Keyword AUTO_MANAGE = Keyword.create("auto-manage");
 	public static final Keyword TIMEOUT = Keyword.create("timeout");
+	public static final Keyword COMPACT_INTERVAL = Keyword.create("compact-interval");
+	public static final Keyword QUERY_THREADS = Keyword.create("query-threads");
+	public static final Keyword DATA_THREADS = Keyword.create("data-threads");
+	public static final Keyword VERIFY_THREADS = Keyword.create("verify-threads");
+	public static final Keyword SELECTOR_THREADS = Keyword.create("selector-threads");
+	public static final Keyword COMPRESSION = Keyword.create("compression");
+	public static final Keyword PIPELINE_EXECUTION = Keyword.create("pipeline-execution");
+	public static final Keyword PARALLEL_EXECUTION = Keyword.create("parallel-execution");
+	public static final Keyword SPECULATIVE = Keyword.create("speculative");
+	public static final Keyword SCHEDULED = Keyword.create("scheduled");
 
 
 
@@ -458,7 +458,7 @@ public abstract class Ref<T extends ACell> extends AObject implements Comparable
 	/**
 	 * Accumulates the set of all unique Refs in the given object.
 	 * 
-	 * Might stack overflow if nesting is too deep - not for use in on-chain code.
+	 * Not for use in on-chain code, since the whole structure is traversed.
 	 * 
 	 * @param a Ref or Cell
 	 * @return Set containing all unique refs (accoumulated recursively) within the
@@ -470,18 +470,28 @@ public abstract class Ref<T extends ACell> extends AObject implements Comparable
 		return hs;
 	}
 
+	@SuppressWarnings("unchecked")
 	private static void accumulateRefSet(Object a, HashSet<Ref<?>> hs) {
 		if (a instanceof Ref) {
-			Ref<?> ref = (Ref<?>) a;
-			if (hs.contains(ref)) return;
-			hs.add(ref);
-			accumulateRefSet(ref.getValue(), hs);
+			RefTreeWalker walker=new RefTreeWalker() {
+				@Override
+				protected Ref<ACell> visit(Ref<ACell> ref, boolean isRoot) {
+					// stop at Refs already seen
+					return hs.add(ref)?null:ref;
+				}
+
+				@Override
+				protected Ref<ACell> complete(Ref<ACell> ref, ACell cell, boolean isRoot) {
+					return ref;
+				}
+			};
+			walker.walk((Ref<ACell>)a);
 		} else if (a instanceof ACell) {
 			ACell rc = (ACell) a;
-			rc.updateRefs(r -> {
-				accumulateRefSet(r, hs);
-				return r;
-			});
+			int n=rc.getRefCount();
+			for (int i=0; i<n; i++) {
+				accumulateRefSet(rc.getRef(i), hs);
+			}
 		}
 	}
 
@@ -680,22 +690,26 @@ public abstract class Ref<T extends ACell> extends AObject implements Comparable
 	 * Finds all instances of missing data in this Ref, and adds them to the missing set
 	 * @param missingSet Set to add missing instances to
 	 */
+	@SuppressWarnings("unchecked")
 	public void findMissing(HashSet<Hash> missingSet) {
-		if (getStatus()>=Ref.PERSISTED) return;
-		if (isMissing()) {
-			missingSet.add(getHash());
-		} else {
-			// Should be OK to get value, since non-missing!
-			T val=getValue();
-			
-			// TODO: maybe needs to be non-stack-consuming?
-			// recursively scan for missing children
-			int n=val.getRefCount();
-			for (int i=0; i<n; i++) {
-				Ref<?> r=val.getRef(i);
-				r.findMissing(missingSet);
+		RefTreeWalker walker=new RefTreeWalker() {
+			@Override
+			protected Ref<ACell> visit(Ref<ACell> ref, boolean isRoot) {
+				if (ref.getStatus()>=Ref.PERSISTED) return ref;
+				if (ref.isMissing()) {
+					missingSet.add(ref.getHash());
+					return ref;
+				}
+				// Should be OK to get value and scan children, since non-missing!
+				return null;
 			}
-		}
+
+			@Override
+			protected Ref<ACell> complete(Ref<ACell> ref, ACell cell, boolean isRoot) {
+				return ref;
+			}
+		};
+		walker.walk((Ref<ACell>)this);
 	}
 
 	/**
@@ -0,0 +1,182 @@
+package convex.core.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Iterative depth first traversal of a tree of cells, using an explicit stack rather than
+ * recursion so that arbitrarily deep structures can be processed safely.
+ *
+ * Subclasses implement visit(...) to decide whether traversal can stop at a Ref (e.g. because
+ * it is already persisted), and complete(...) to produce a result for each Ref once all of its
+ * children have been completed. Child results are substituted into the parent cell before the
+ * parent is completed, so a walker can be used to transform a tree as well as scan it.
+ *
+ * Each Ref instance is processed at most once per walk, so shared subtrees are not re-visited.
+ *
+ * A walker instance is not thread safe, and should be used for a single walk only.
+ */
+public abstract class RefTreeWalker {
+
+	/**
+	 * Results for Refs already processed, by identity
+	 */
+	private final IdentityHashMap<Ref<ACell>,Ref<ACell>> done=new IdentityHashMap<>();
+
+	private LongConsumer progressHandler=null;
+	private long progressInterval=0;
+	private long count=0;
+
+	/**
+	 * Called when a Ref is first reached.
+	 *
+	 * @param ref Ref reached
+	 * @param isRoot True if this is the root Ref of the walk
+	 * @return A result for this Ref if traversal should stop here, or null to continue with child Refs
+	 */
+	protected abstract Ref<ACell> visit(Ref<ACell> ref, boolean isRoot);
+
+	/**
+	 * Called when a Ref has been visited to determine whether child Refs should be walked.
+	 * Defaults to true.
+	 *
+	 * @param ref Ref visited
+	 * @param cell Value of Ref, non-null
+	 * @return True if children should be walked before this Ref is completed
+	 */
+	protected boolean shouldExpand(Ref<ACell> ref, ACell cell) {
+		return true;
+	}
+
+	/**
+	 * Called once all children of a Ref have been completed.
+	 *
+	 * @param ref Ref to complete. Value will have child Refs replaced with their results.
+	 * @param cell Value of Ref, may be null
+	 * @param isRoot True if this is the root Ref of the walk
+	 * @return Result for this Ref
+	 */
+	protected abstract Ref<ACell> complete(Ref<ACell> ref, ACell cell, boolean isRoot);
+
+	/**
+	 * Sets a handler to be called with the number of Refs processed so far, each time
+	 * the given number of additional Refs has been processed.
+	 *
+	 * @param handler Progress handler
+	 * @param interval Number of Refs between progress reports
+	 * @return This walker
+	 */
+	public RefTreeWalker withProgress(LongConsumer handler, long interval) {
+		if (interval<=0) throw new IllegalArgumentException("Progress interval must be positive");
+		this.progressHandler=handler;
+		this.progressInterval=interval;
+		return this;
+	}
+
+	/**
+	 * Gets the number of Refs processed so far, including those where traversal stopped
+	 * @return Number of Refs processed
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the result for a Ref already processed by this walker
+	 * @param ref Ref instance
+	 * @return Result, or null if the Ref has not been processed
+	 */
+	public Ref<ACell> getResult(Ref<ACell> ref) {
+		return done.get(ref);
+	}
+
+	/**
+	 * Walks the tree of cells from the given root Ref.
+	 *
+	 * @param <T> Type of root value
+	 * @param root Root Ref
+	 * @return Result for the root Ref
+	 * @throws MissingDataException If a cell that needs to be walked is missing
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends ACell> Ref<T> walk(Ref<T> root) {
+		Ref<ACell> rootRef=(Ref<ACell>) root;
+		ArrayList<Ref<ACell>> stack=new ArrayList<>();
+
+		// marks stack positions for which child Refs have already been pushed
+		BitSet expanded=new BitSet();
+
+		stack.add(rootRef);
+		while (!stack.isEmpty()) {
+			int top=stack.size()-1;
+			Ref<ACell> ref=stack.get(top);
+			if (done.containsKey(ref)) {
+				stack.remove(top);
+				continue;
+			}
+			boolean isRoot=(top==0);
+
+			ACell cell;
+			if (!expanded.get(top)) {
+				Ref<ACell> result=visit(ref,isRoot);
+				if (result!=null) {
+					finish(ref,result);
+					stack.remove(top);
+					continue;
+				}
+
+				cell=ref.getValue();
+				int n=(cell==null)?0:cell.getRefCount();
+				if ((n>0)&&shouldExpand(ref,cell)) {
+					expanded.set(top);
+					for (int i=0; i<n; i++) {
+						Ref<ACell> child=cell.getRef(i);
+						if (!done.containsKey(child)) {
+							expanded.clear(stack.size());
+							stack.add(child);
+						}
+					}
+					if (stack.size()>top+1) continue;
+				}
+			} else {
+				cell=ref.getValue();
+			}
+
+			// all children now complete, so update cell with child results where changed
+			if (expanded.get(top)) {
+				expanded.clear(top);
+				if (childrenChanged(cell)) {
+					cell=cell.updateRefs(c -> {
+						Ref<ACell> result=done.get(c);
+						return (result==null)?c:result;
+					});
+					ref=ref.withValue(cell);
+				}
+			}
+
+			finish(stack.get(top),complete(ref,cell,isRoot));
+			stack.remove(top);
+		}
+		return (Ref<T>) done.get(rootRef);
+	}
+
+	private boolean childrenChanged(ACell cell) {
+		int n=cell.getRefCount();
+		for (int i=0; i<n; i++) {
+			Ref<ACell> child=cell.getRef(i);
+			Ref<ACell> result=done.get(child);
+			if ((result!=null)&&(result!=child)) return true;
+		}
+		return false;
+	}
+
+	private void finish(Ref<ACell> ref, Ref<ACell> result) {
+		done.put(ref, result);
+		count++;
+		if ((progressHandler!=null)&&(count%progressInterval==0)) {
+			progressHandler.accept(count);
+		}
+	}
+}
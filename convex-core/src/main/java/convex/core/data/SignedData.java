@@ -1,14 +1,19 @@
 package convex.core.data;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 
+import convex.core.Constants;
 import convex.core.crypto.AKeyPair;
 import convex.core.crypto.ASignature;
 import convex.core.crypto.Ed25519Signature;
+import convex.core.crypto.SignatureCache;
 import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.BadSignatureException;
 import convex.core.exceptions.InvalidDataException;
 import convex.core.transactions.ATransaction;
+import convex.core.util.Counters;
 
 /**
  * Node representing a signed data object.
@@ -43,6 +48,11 @@ import convex.core.transactions.ATransaction;
  * @param <T> The type of the signed object
  */
 public class SignedData<T extends ACell> extends ACell {
+	/**
+	 * Cache of valid signatures, shared by all SignedData instances
+	 */
+	private static final SignatureCache verifiedCache=SignatureCache.create(Constants.SIGNATURE_CACHE_SIZE);
+	
 	// Encoded fields
 	private final AccountKey publicKey;
 	private final ASignature signature;
@@ -71,13 +81,16 @@ public class SignedData<T extends ACell> extends ACell {
 	}
 
 	/**
-	 * Mark this SignedData as already verified as good - cache in Ref
+	 * Mark this SignedData as already verified as good - cache in Ref, and in the
+	 * global signature cache so that other instances with the same encoding are not
+	 * verified again
 	 */
 	private void markValidated() {
 		Ref<ACell> ref=getRef();
 		int flags=ref.getFlags();
 		if ((flags&Ref.VERIFIED_MASK)!=0) return; // already done
 		cachedRef=ref.withFlags(flags|Ref.VERIFIED_MASK);
+		verifiedCache.add(getHash());
 	}
 	
 	/**
@@ -194,9 +207,16 @@ public class SignedData<T extends ACell> extends ACell {
 		int flags=sigRef.getFlags();
 		if ((flags&Ref.BAD_MASK)!=0) return false;
 		if ((flags&Ref.VERIFIED_MASK)!=0) return true;
+		
+		if (verifiedCache.isVerified(getHash())) {
+			Counters.signatureCacheHit++;
+			markValidated();
+			return true;
+		}
 
 		Hash hash=valueRef.getHash();
 		boolean check = signature.verify(hash, publicKey);
+		Counters.signatureVerify++;
 
 		if (check) {
 			markValidated();
@@ -219,6 +239,56 @@ public class SignedData<T extends ACell> extends ACell {
 		return (flags&(Ref.BAD_MASK|Ref.VERIFIED_MASK))!=0;
 	}
 
+	/**
+	 * Validates the signatures in a collection of SignedData instances as a single batch. 
+	 * Caches results in each instance, so subsequent calls to checkSignature() are cheap.
+	 * 
+	 * @param items SignedData instances to check. Null elements are ignored.
+	 * @return true if all signatures are valid, false otherwise
+	 */
+	public static boolean checkSignatures(Collection<? extends SignedData<?>> items) {
+		ArrayList<SignedData<?>> unchecked=new ArrayList<>();
+		boolean allValid=true;
+		for (SignedData<?> sd: items) {
+			if (sd==null) continue;
+			int flags=sd.getRef().getFlags();
+			if ((flags&Ref.BAD_MASK)!=0) allValid=false;
+			if ((flags&(Ref.BAD_MASK|Ref.VERIFIED_MASK))!=0) continue;
+			
+			if (verifiedCache.isVerified(sd.getHash())) {
+				Counters.signatureCacheHit++;
+				sd.markValidated();
+			} else {
+				unchecked.add(sd);
+			}
+		}
+		
+		int n=unchecked.size();
+		if (n==0) return allValid;
+		ABlob[] messages=new ABlob[n];
+		AccountKey[] keys=new AccountKey[n];
+		ASignature[] sigs=new ASignature[n];
+		for (int i=0; i<n; i++) {
+			SignedData<?> sd=unchecked.get(i);
+			messages[i]=sd.valueRef.getHash();
+			keys[i]=sd.publicKey;
+			sigs[i]=sd.signature;
+		}
+		
+		boolean[] results=ASignature.verifyBatch(messages, keys, sigs);
+		Counters.signatureVerify+=n;
+		for (int i=0; i<n; i++) {
+			SignedData<?> sd=unchecked.get(i);
+			if (results[i]) {
+				sd.markValidated();
+			} else {
+				sd.markBadSignature();
+				allValid=false;
+			}
+		}
+		return allValid;
+	}
+
 	public void validateSignature() throws BadSignatureException {
 		if (!checkSignature()) throw new BadSignatureException("Signature not valid!", this);
 	}
@@ -1441,11 +1441,11 @@ public class Context<T extends ACell> extends AObject {
 		if (amount<0) return withError(ErrorCodes.ARGUMENT,"Can't transfer a negative amount");
 		if (amount>Constants.MAX_SUPPLY) return withError(ErrorCodes.ARGUMENT,"Can't transfer an amount beyond maximum limit");
 
-		AVector<AccountStatus> accounts=getState().getAccounts();
+		// access individual accounts via the State, so only these are recorded as read
+		State state=getState();
 
 		Address source=getAddress();
-		long sourceIndex=source.longValue();
-		AccountStatus sourceAccount=accounts.get(sourceIndex);
+		AccountStatus sourceAccount=state.getAccount(source);
 
 		long currentBalance=sourceAccount.getBalance();
 		if (currentBalance<amount) {
@@ -1454,14 +1454,13 @@ public class Context<T extends ACell> extends AObject {
 
 		long newSourceBalance=currentBalance-amount;
 		AccountStatus newSourceAccount=sourceAccount.withBalance(newSourceBalance);
-		accounts=accounts.assoc(sourceIndex, newSourceAccount);
+		state=state.putAccount(source, newSourceAccount);
 
-		// new target account (note: could be source account, so we get from latest accounts)
-		long targetIndex=target.longValue();
-		if (targetIndex>=accounts.count()) {
+		// new target account (note: could be source account, so we get from latest state)
+		AccountStatus targetAccount=state.getAccount(target);
+		if (targetAccount==null) {
 			return this.withError(ErrorCodes.NOBODY,"Target account for transfer "+target+" does not exist");
 		}
-		AccountStatus targetAccount=accounts.get(targetIndex);
 
 		if (targetAccount.isActor()) {
 			// (call target amount (receive-coin source amount nil))
@@ -1478,10 +1477,10 @@ public class Context<T extends ACell> extends AObject {
 			long oldTargetBalance=targetAccount.getBalance();
 			long newTargetBalance=oldTargetBalance+amount;
 			AccountStatus newTargetAccount=targetAccount.withBalance(newTargetBalance);
-			accounts=accounts.assoc(targetIndex, newTargetAccount);
+			state=state.putAccount(target, newTargetAccount);
 
 			// SECURITY: new context with updated accounts
-			Context<CVMLong> result=withChainState(chainState.withAccounts(accounts)).withResult(CVMLong.create(amount));
+			Context<CVMLong> result=withState(state).withResult(CVMLong.create(amount));
 
 			return result;
 		}
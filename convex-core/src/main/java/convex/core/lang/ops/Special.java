@@ -2,6 +2,7 @@ package convex.core.lang.ops;
 
 import java.util.HashMap;
 
+import convex.core.AccessTracker;
 import convex.core.data.ACell;
 import convex.core.data.IRefFunction;
 import convex.core.data.Symbol;
@@ -96,7 +97,7 @@ public class Special<T extends ACell> extends AOp<T> {
 		case S_TIMESTAMP: ctx= ctx.withResult(ctx.getState().getTimeStamp()); break;
 		case S_DEPTH: ctx= ctx.withResult(CVMLong.create(ctx.getDepth()-1)); break; // Depth before executing this Op
 		case S_OFFER: ctx= ctx.withResult(CVMLong.create(ctx.getOffer())); break;
-		case S_STATE: ctx= ctx.withResult(ctx.getState()); break;
+		case S_STATE: AccessTracker.recordAll(); ctx= ctx.withResult(ctx.getState()); break;
 		case S_HOLDINGS: ctx= ctx.withResult(ctx.getHoldings()); break;
 		case S_SEQUENCE: ctx= ctx.withResult(CVMLong.create(ctx.getAccountStatus().getSequence())); break;
 		case S_KEY: ctx= ctx.withResult(ctx.getAccountStatus().getAccountKey()); break;
@@ -53,6 +53,25 @@ public abstract class AStore {
 	 */
 	public abstract <T extends ACell> Ref<T> storeTopRef(Ref<T> ref, int status,Consumer<Ref<ACell>> noveltyHandler);
 
+	/**
+	 * Stores a complete tree of cells from a root @Ref in a single bulk operation. 
+	 * 
+	 * Has the same effect as storeTopRef(...), but the tree is traversed iteratively rather than
+	 * recursively, cells with duplicate hashes are only visited once, and all novelty is
+	 * written together where the store implementation supports batched writes. Subtrees 
+	 * already stored at the required status are skipped.
+	 * 
+	 * The noveltyHandler is called for each newly stored Ref in depth first order, i.e.
+	 * child Refs before their parents.
+	 * 
+	 * @param root A Ref to the root of the tree. Should be either Direct or STORED at
+	 *            minimum to present risk of MissingDataException.
+	 * @param status Status to store at
+	 * @param noveltyHandler Novelty Handler function for Novelty detected. May be null.
+	 * @return The persisted Ref, of status STORED at minimum
+	 */
+	public abstract <T extends ACell> Ref<T> storeTree(Ref<T> root, int status,Consumer<Ref<ACell>> noveltyHandler);
+	
 	
 	/**
 	 * Gets the stored Ref for a given hash value, or null if not found.
@@ -1,7 +1,7 @@
 package convex.core.store;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -11,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import convex.core.data.ACell;
 import convex.core.data.Hash;
 import convex.core.data.Ref;
+import convex.core.data.RefTreeWalker;
 import convex.core.util.Utils;
 
 /**
@@ -24,9 +25,9 @@ public class MemoryStore extends AStore {
 	private static final Logger log = LoggerFactory.getLogger(MemoryStore.class.getName());
 
 	/**
-	 * Storage of persisted Refs for each hash value
+	 * Storage of persisted Refs for each hash value. Concurrent, since stores may be shared by server threads
 	 */
-	private final HashMap<Hash, Ref<ACell>> hashRefs = new HashMap<Hash, Ref<ACell>>();
+	private final ConcurrentHashMap<Hash, Ref<ACell>> hashRefs = new ConcurrentHashMap<Hash, Ref<ACell>>();
 
 	private Hash rootHash;
 
@@ -47,47 +48,59 @@ public class MemoryStore extends AStore {
 		return persistRef(ref,noveltyHandler,status,true); 
 	}
 	
+	@Override
+	public <T extends ACell> Ref<T> storeTree(Ref<T> root, int requiredStatus, Consumer<Ref<ACell>> noveltyHandler) {
+		return persistRef(root,noveltyHandler,requiredStatus,true); 
+	}
+	
+	/**
+	 * Persists a Ref and all child Refs not already persisted. The cell tree is traversed 
+	 * iteratively with a RefTreeWalker, so deeply nested structures are safe.
+	 * 
+	 * Child Refs are persisted at PERSISTED status or the required status if higher.
+	 * 
+	 * @param <T> Type of Ref value
+	 * @param ref Ref to persist
+	 * @param noveltyHandler Novelty Handler function for Novelty detected. May be null.
+	 * @param requiredStatus Status required for the top level Ref
+	 * @param topLevel If true, store the top level Ref even if embedded
+	 * @return The persisted Ref
+	 */
 	@SuppressWarnings("unchecked")
 	public <T extends ACell> Ref<T> persistRef(Ref<T> ref, Consumer<Ref<ACell>> noveltyHandler, int requiredStatus, boolean topLevel) {
-		// Convert to direct Ref. Don't want to store a soft ref!
-		ref = ref.toDirect();
-
-		final T o=ref.getValue();
-		if (o==null) return (Ref<T>) Ref.NULL_VALUE;
-		
-		ACell cell = (ACell) o;
-		boolean embedded=cell.isEmbedded();
-		
-		Hash hash=null;
-		if (!embedded) {
-			// check store for existing ref first. Return this is we have it
-			hash = ref.getHash();
-			Ref<T> existing = refForHash(hash);
-			if ((existing != null)) {
-				if (existing.getStatus()>=requiredStatus) return existing;
-				ref=existing;
+		int childStatus=Math.max(requiredStatus, Ref.PERSISTED);
+		RefTreeWalker walker=new RefTreeWalker() {
+			@Override
+			protected Ref<ACell> visit(Ref<ACell> r, boolean isRoot) {
+				if ((!isRoot)&&(r.getStatus()>=childStatus)) return r;
+				
+				ACell cell=r.getValue();
+				if (cell==null) return (Ref<ACell>) Ref.NULL_VALUE;
+				
+				if (!cell.isEmbedded()) {
+					// check store for existing ref first. Use this if we have it
+					Ref<ACell> existing = refForHash(r.getHash());
+					if ((existing != null)&&(existing.getStatus()>=(isRoot?requiredStatus:childStatus))) return existing;
+				}
+				return null;
 			}
-		}
-		
-		// need to do recursive persistence
-		cell  = cell.updateRefs(r -> {
-			return r.persist(noveltyHandler);
-		});
-		
-		ref=ref.withValue((T)cell);
-		final ACell oTemp=cell;
 
-		if (topLevel||!embedded) {
-			// Persist at top level
-			final Hash fHash = (hash!=null)?hash:ref.getHash();
-			if (log.isTraceEnabled()) {
-				log.trace("Persisting ref 0x"+fHash.toHexString()+" of class "+Utils.getClassName(oTemp)+" with store "+this);
+			@Override
+			protected Ref<ACell> complete(Ref<ACell> r, ACell cell, boolean isRoot) {
+				// Convert to direct Ref. Don't want to store a soft ref!
+				Ref<ACell> result=r.toDirect().withMinimumStatus(isRoot?requiredStatus:childStatus);
+				if ((topLevel&&isRoot)||!cell.isEmbedded()) {
+					Hash hash=result.getHash();
+					if (log.isTraceEnabled()) {
+						log.trace("Persisting ref 0x"+hash.toHexString()+" of class "+Utils.getClassName(cell)+" with store "+MemoryStore.this);
+					}
+					hashRefs.put(hash, result);
+					if (noveltyHandler != null) noveltyHandler.accept(result);
+				}
+				return result;
 			}
-			
-			hashRefs.put(fHash, (Ref<ACell>) ref);
-			if (noveltyHandler != null) noveltyHandler.accept((Ref<ACell>) ref);
-		}
-		return ref.withMinimumStatus(requiredStatus);
+		};
+		return walker.walk(ref);
 	}
 
 	@Override
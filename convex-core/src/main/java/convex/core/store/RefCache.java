@@ -0,0 +1,367 @@
+package convex.core.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import convex.core.Constants;
+import convex.core.data.ACell;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+
+/**
+ * Size-bounded cache of decoded cells, keyed by Hash. Intended to sit in front of a persistent
+ * store so that frequently used cells are not repeatedly read and decoded.
+ *
+ * Holds a strong reference to each cached cell, so cached soft Refs will not be cleared by
+ * the garbage collector while they remain in the cache.
+ *
+ * Eviction uses a W-TinyLFU policy: new entries go into a small LRU admission window, and
+ * entries leaving the window only displace entries from the main segmented LRU if they have been
+ * accessed more often according to an approximate frequency sketch. This keeps hot cells
+ * resident even when large scans pass through the cache.
+ *
+ * Lookups are lock free. Policy updates take a lock, but access reordering on a hit is skipped
+ * if the lock is contended.
+ */
+public class RefCache {
+	private static final int WINDOW=0;
+	private static final int PROBATION=1;
+	private static final int PROTECTED=2;
+
+	private final ConcurrentHashMap<Hash,Node> map=new ConcurrentHashMap<>();
+	private final ReentrantLock lock=new ReentrantLock();
+	private final FrequencySketch sketch;
+
+	private final long maxWeight;
+	private final long windowMax;
+	private final long protectedMax;
+
+	// LRU lists, head is most recently used. Guarded by lock
+	private final Node[] heads=new Node[3];
+	private final Node[] tails=new Node[3];
+	private final long[] weights=new long[3];
+
+	private static final class Node {
+		final Hash hash;
+		final long weight;
+		volatile Ref<ACell> ref;
+
+		// strong reference to cell, prevents soft Ref being cleared
+		ACell cell;
+		int queue;
+		Node prev;
+		Node next;
+		boolean removed=false;
+
+		Node(Hash hash, Ref<ACell> ref, ACell cell, long weight) {
+			this.hash=hash;
+			this.ref=ref;
+			this.cell=cell;
+			this.weight=weight;
+		}
+	}
+
+	private RefCache(long maxWeight) {
+		this.maxWeight=maxWeight;
+		this.windowMax=Math.max(1, maxWeight/100);
+		this.protectedMax=(maxWeight-windowMax)*4/5;
+
+		// size sketch for the expected number of cells, assuming small cells on average
+		long expectedCount=Math.max(16, maxWeight/(Constants.MEMORY_OVERHEAD*2));
+		this.sketch=new FrequencySketch((int)Math.min(1<<22, expectedCount));
+	}
+
+	/**
+	 * Creates a RefCache with the given maximum size
+	 * @param maxWeight Maximum total weight of cached cells in bytes
+	 * @return New RefCache instance
+	 */
+	public static RefCache create(long maxWeight) {
+		if (maxWeight<=0) throw new IllegalArgumentException("Cache size must be positive");
+		return new RefCache(maxWeight);
+	}
+
+	/**
+	 * Gets the weight of a cell in the cache. This is the cell's own contribution to memory
+	 * size (encoding length plus storage overhead), since the memory size of a cell includes
+	 * all children which may be cached separately.
+	 *
+	 * @param cell Cell to weigh
+	 * @return Weight of the cell in bytes
+	 */
+	public static long weigh(ACell cell) {
+		return cell.getEncodingLength()+Constants.MEMORY_OVERHEAD;
+	}
+
+	/**
+	 * Gets a cached Ref for the given hash, or null if not cached.
+	 * @param <T> Type of cell value
+	 * @param hash Hash of cell
+	 * @return Cached Ref, or null if not present
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends ACell> Ref<T> get(Hash hash) {
+		Node node=map.get(hash);
+		if (node==null) return null;
+
+		// Record access, but don't wait for the lock on a hit
+		if (lock.tryLock()) {
+			try {
+				sketch.increment(hash.firstInt());
+				if (!node.removed) onAccess(node);
+			} finally {
+				lock.unlock();
+			}
+		}
+		return (Ref<T>) node.ref;
+	}
+
+	/**
+	 * Adds a Ref to the cache. May immediately evict the Ref (or others) if the cache is full.
+	 * Replaces the cached Ref if the hash is already present, e.g. with updated status flags.
+	 *
+	 * @param ref Ref to cache. Must have a value available.
+	 */
+	public void put(Ref<ACell> ref) {
+		ACell cell=ref.getValue();
+		if (cell==null) return;
+		long weight=weigh(cell);
+		if (weight>windowMax) return; // too big to be worth caching
+		Hash hash=ref.getHash();
+
+		lock.lock();
+		try {
+			sketch.increment(hash.firstInt());
+			Node existing=map.get(hash);
+			if (existing!=null) {
+				existing.ref=ref;
+				onAccess(existing);
+				return;
+			}
+
+			Node node=new Node(hash,ref,cell,weight);
+			map.put(hash, node);
+			addFirst(WINDOW,node);
+
+			// move excess from window into probation, then evict if over capacity
+			Node candidate=null;
+			while (weights[WINDOW]>windowMax) {
+				candidate=tails[WINDOW];
+				unlink(candidate);
+				addFirst(PROBATION,candidate);
+			}
+			evict(candidate);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Updates the Ref for a hash if it is already cached. Used to keep status flags
+	 * in sync with the underlying store.
+	 * @param ref Updated Ref
+	 */
+	public void update(Ref<ACell> ref) {
+		Node node=map.get(ref.getHash());
+		if (node!=null) node.ref=ref;
+	}
+
+	/**
+	 * Removes all entries from the cache
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			for (Node n: map.values()) n.removed=true;
+			map.clear();
+			for (int i=0; i<3; i++) {
+				heads[i]=null;
+				tails[i]=null;
+				weights[i]=0;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of cells currently cached
+	 * @return Number of cached cells
+	 */
+	public int count() {
+		return map.size();
+	}
+
+	/**
+	 * Gets the total weight of cells currently cached
+	 * @return Total weight in bytes
+	 */
+	public long getWeight() {
+		lock.lock();
+		try {
+			return weights[WINDOW]+weights[PROBATION]+weights[PROTECTED];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the maximum weight of this cache
+	 * @return Maximum weight in bytes
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	private void evict(Node candidate) {
+		while (weights[WINDOW]+weights[PROBATION]+weights[PROTECTED]>maxWeight) {
+			// Always need a candidate from the window to compete with the victim
+			if ((candidate==null)&&(tails[WINDOW]!=null)) {
+				candidate=tails[WINDOW];
+				unlink(candidate);
+				addFirst(PROBATION,candidate);
+			}
+			
+			// victim is least recently used main entry, other than the candidate itself
+			Node victim=tails[PROBATION];
+			if ((victim==null)||(victim==candidate)) victim=tails[PROTECTED];
+			if (victim==null) victim=tails[WINDOW];
+			if (victim==null) victim=candidate;
+
+			// Admission: candidate from window only displaces victim if more frequently used
+			if ((candidate!=null)&&(candidate!=victim)&&(!candidate.removed)) {
+				int candidateFreq=sketch.frequency(candidate.hash.firstInt());
+				int victimFreq=sketch.frequency(victim.hash.firstInt());
+				if (candidateFreq<=victimFreq) {
+					victim=candidate;
+				}
+				candidate=null;
+			}
+			remove(victim);
+		}
+	}
+
+	private void remove(Node node) {
+		unlink(node);
+		node.removed=true;
+		node.cell=null;
+		map.remove(node.hash,node);
+	}
+
+	private void onAccess(Node node) {
+		switch (node.queue) {
+		case WINDOW:
+		case PROTECTED:
+			unlink(node);
+			addFirst(node.queue,node);
+			break;
+		case PROBATION:
+			// promote to protected, demoting least recently used protected entries if needed
+			unlink(node);
+			addFirst(PROTECTED,node);
+			while ((weights[PROTECTED]>protectedMax)&&(tails[PROTECTED]!=node)) {
+				Node demoted=tails[PROTECTED];
+				unlink(demoted);
+				addFirst(PROBATION,demoted);
+			}
+			break;
+		}
+	}
+
+	private void addFirst(int queue, Node node) {
+		node.queue=queue;
+		node.prev=null;
+		node.next=heads[queue];
+		if (node.next!=null) {
+			node.next.prev=node;
+		} else {
+			tails[queue]=node;
+		}
+		heads[queue]=node;
+		weights[queue]+=node.weight;
+	}
+
+	private void unlink(Node node) {
+		int queue=node.queue;
+		if (node.prev!=null) {
+			node.prev.next=node.next;
+		} else {
+			heads[queue]=node.next;
+		}
+		if (node.next!=null) {
+			node.next.prev=node.prev;
+		} else {
+			tails[queue]=node.prev;
+		}
+		node.prev=null;
+		node.next=null;
+		weights[queue]-=node.weight;
+	}
+
+	/**
+	 * Count-min sketch of approximate access frequencies, using 4 bit counters packed into longs
+	 * with 16 counters per expected entry. Each key maps to 4 counters, and only the smallest
+	 * counters are incremented (conservative update) to reduce the impact of collisions. All
+	 * counters are halved periodically so that old accesses age out.
+	 * 
+	 * CONCURRENCY: Guarded by the cache lock
+	 */
+	private static final class FrequencySketch {
+		private static final int[] SEEDS= {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+		private static final int MAX_COUNT=15;
+		private static final long RESET_MASK=0x7777777777777777L;
+
+		private final long[] table;
+		private final int mask;
+		private final int sampleSize;
+		private int additions=0;
+		private final int[] ixs=new int[SEEDS.length];
+
+		FrequencySketch(int expectedCount) {
+			int size=Integer.highestOneBit(Math.max(16, expectedCount-1))<<1;
+			table=new long[size]; // 16 counters per long
+			mask=(size<<4)-1;
+			sampleSize=expectedCount*10;
+		}
+
+		private int index(int hashCode, int i) {
+			int h=hashCode*SEEDS[i];
+			return (h^(h>>>16))&mask;
+		}
+
+		private int get(int ix) {
+			return (int)((table[ix>>>4]>>>((ix&15)<<2))&0xF);
+		}
+
+		void increment(int hashCode) {
+			int min=MAX_COUNT;
+			for (int i=0; i<SEEDS.length; i++) {
+				int ix=index(hashCode,i);
+				ixs[i]=ix;
+				min=Math.min(min, get(ix));
+			}
+			if (min>=MAX_COUNT) return;
+
+			for (int i=0; i<SEEDS.length; i++) {
+				int ix=ixs[i];
+				if (get(ix)==min) table[ix>>>4]+=1L<<((ix&15)<<2);
+			}
+			if (++additions>=sampleSize) reset();
+		}
+
+		int frequency(int hashCode) {
+			int result=MAX_COUNT;
+			for (int i=0; i<SEEDS.length; i++) {
+				result=Math.min(result, get(index(hashCode,i)));
+			}
+			return result;
+		}
+
+		private void reset() {
+			for (int i=0; i<table.length; i++) {
+				table[i]=(table[i]>>>1)&RESET_MASK;
+			}
+			additions=additions/2;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package convex.core.transactions;
 
+import convex.core.State;
 import convex.core.data.ACell;
 import convex.core.data.Address;
 import convex.core.data.Format;
@@ -60,6 +61,21 @@ public abstract class ATransaction extends ACell {
 	 */
 	public abstract <T extends ACell> Context<T> apply(Context<?> ctx);
 
+	/**
+	 * Gets the set of Accounts this transaction may access when applied to a State, without
+	 * executing it. Used to schedule independent transactions in parallel.
+	 * 
+	 * The result must be conservative. By default this is {@link AccessSet#ALL}, which is
+	 * appropriate for any transaction that runs CVM code (e.g. Invoke, or a Call to an
+	 * Actor) since this may call other Actors, create Accounts or read the whole State.
+	 * 
+	 * @param state State to which the transaction would be applied
+	 * @return Set of Accounts that may be accessed
+	 */
+	public AccessSet getAccessSet(State state) {
+		return AccessSet.ALL;
+	}
+
 	/**
 	 * Gets the *origin* Address for this transaction
 	 * @return Address for this Transaction
@@ -0,0 +1,130 @@
+package convex.core.transactions;
+
+import java.util.Arrays;
+
+import convex.core.data.Address;
+
+/**
+ * Set of Accounts that a transaction may read or update when applied to a State,
+ * determined before execution.
+ *
+ * Transactions with disjoint access sets are independent, so they can be applied in
+ * parallel. The set covers the application of the transaction itself, including the
+ * origin account. It does not cover effects common to all transactions on completion
+ * (i.e. fees and memory purchase), which must be applied in Block order.
+ *
+ * The special set {@link #ALL} indicates that a transaction may access any part of the
+ * State, e.g. because it runs arbitrary code.
+ */
+public final class AccessSet {
+
+	/**
+	 * Access set for a transaction that may access anything in the State
+	 */
+	public static final AccessSet ALL = new AccessSet(null);
+
+	/**
+	 * Sorted, distinct Account indexes. Null if all.
+	 */
+	private final long[] accounts;
+
+	private AccessSet(long[] accounts) {
+		this.accounts = accounts;
+	}
+
+	/**
+	 * Creates an AccessSet for the given Accounts
+	 * @param addresses Addresses of Accounts accessed, may contain duplicates
+	 * @return New AccessSet
+	 */
+	public static AccessSet of(Address... addresses) {
+		int n = addresses.length;
+		long[] ixs = new long[n];
+		for (int i = 0; i < n; i++) {
+			ixs[i] = addresses[i].longValue();
+		}
+		Arrays.sort(ixs);
+
+		// remove duplicates
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if ((k > 0) && (ixs[k - 1] == ixs[i])) continue;
+			ixs[k++] = ixs[i];
+		}
+		if (k < n) ixs = Arrays.copyOf(ixs, k);
+		return new AccessSet(ixs);
+	}
+
+	/**
+	 * Checks if this set covers the whole State
+	 * @return true if any part of the State may be accessed
+	 */
+	public boolean isAll() {
+		return accounts == null;
+	}
+
+	/**
+	 * Gets the number of Accounts in this set
+	 * @return Number of Accounts, or -1 if this set covers the whole State
+	 */
+	public int count() {
+		return (accounts == null) ? -1 : accounts.length;
+	}
+
+	/**
+	 * Gets an Account in this set, in order of Address
+	 * @param i Index of Account in this set
+	 * @return Address of Account
+	 */
+	public Address get(int i) {
+		if (accounts == null) throw new IllegalStateException("Access set includes all accounts");
+		return Address.create(accounts[i]);
+	}
+
+	/**
+	 * Checks if this set includes an Account
+	 * @param address Address of Account
+	 * @return true if the Account may be accessed
+	 */
+	public boolean contains(Address address) {
+		if (accounts == null) return true;
+		return Arrays.binarySearch(accounts, address.longValue()) >= 0;
+	}
+
+	/**
+	 * Checks if this set has any Account in common with another. Transactions with
+	 * access sets that do not intersect are independent.
+	 *
+	 * @param other Other AccessSet
+	 * @return true if the sets intersect
+	 */
+	public boolean intersects(AccessSet other) {
+		if ((accounts == null) || (other.accounts == null)) return true;
+		long[] a = accounts;
+		long[] b = other.accounts;
+		int i = 0;
+		int j = 0;
+		while ((i < a.length) && (j < b.length)) {
+			long c = a[i] - b[j];
+			if (c == 0) return true;
+			if (c < 0) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		if (accounts == null) return "#{:all}";
+		StringBuilder sb = new StringBuilder("#{");
+		for (int i = 0; i < accounts.length; i++) {
+			if (i > 0) sb.append(' ');
+			sb.append('#').append(accounts[i]);
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+}
@@ -3,7 +3,9 @@ package convex.core.transactions;
 import java.nio.ByteBuffer;
 
 import convex.core.Constants;
+import convex.core.State;
 import convex.core.data.ACell;
+import convex.core.data.AccountStatus;
 import convex.core.data.Address;
 import convex.core.data.Format;
 import convex.core.data.Tag;
@@ -74,6 +76,16 @@ public class Transfer extends ATransaction {
 		return (Context<T>) ctx;
 	}
 
+	@Override
+	public AccessSet getAccessSet(State state) {
+		// a transfer to an Actor calls receive-coin, which may run arbitrary code
+		AccountStatus as = state.getAccount(target);
+		if ((as != null) && as.isActor()) return AccessSet.ALL;
+
+		// otherwise exact, since only the origin and target accounts are used
+		return AccessSet.of(address, target);
+	}
+
 	@Override
 	public int estimatedEncodingSize() {
 		// tag (1), nonce(<12) and target (33)
@@ -13,12 +13,39 @@ public class Counters {
 	public static volatile long etchWrite = 0;
 	public static volatile long etchMiss =0;
 	
+	public static volatile long etchCacheHit = 0;
+	public static volatile long etchCacheMiss = 0;
+	
+	public static volatile long signatureVerify = 0;
+	public static volatile long signatureCacheHit = 0;
+	
+	public static volatile long messageDropped = 0;
+	public static volatile long sendDropped = 0;
+	public static volatile long readPaused = 0;
+	
+	public static volatile long compressedSend = 0;
+	public static volatile long compressionSaved = 0;
+	public static volatile long compressedReceive = 0;
+	
+	public static volatile long parallelCommit = 0;
+	public static volatile long parallelRetry = 0;
+	
 	public String getStats() {
 		StringBuffer sb=new StringBuffer();
 		
 		sb.append("Etch writes:  "+etchWrite);
 		sb.append("Etch reads:   "+etchRead);
 		sb.append("Etch hit(%):  "+Text.toPercentString(100.0*(etchRead-etchMiss)/etchRead));
+		sb.append("Cache hit(%): "+Text.toPercentString(100.0*etchCacheHit/(etchCacheHit+etchCacheMiss)));
+		sb.append("Sig verifies: "+signatureVerify);
+		sb.append("Sig cached:   "+signatureCacheHit);
+		sb.append("Recv dropped: "+messageDropped);
+		sb.append("Send dropped: "+sendDropped);
+		sb.append("Read paused:  "+readPaused);
+		sb.append("Compressed:   "+compressedSend);
+		sb.append("Bytes saved:  "+compressionSaved);
+		sb.append("Par commits:  "+parallelCommit);
+		sb.append("Par retries:  "+parallelRetry);
 		
 		return sb.toString();
 	}
@@ -5,12 +5,16 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +59,13 @@ import convex.core.util.Utils;
  *    - 8 bytes Memory Size (TODO: might be negative for unknown?)
  * - 2 bytes data length N (a short)
  * - N byes actual data
+ * 
+ * CONCURRENCY: Readers never take a lock. Writes are serialised by a single writer lock, and are
+ * published to readers with release/acquire fences on index slot updates. Structural changes to the
+ * index (chain collapses) may briefly hide existing keys, so a reader that misses while a write is in
+ * progress retries, using the write version as a sequence lock. Multiple values can be written in a 
+ * single group commit with {@link #writeAll(List)}. The write version is updated for each entry, so
+ * readers only retry around the entry being written rather than the whole group.
  */
 public class Etch {
 	// structural constants for data block
@@ -106,11 +117,16 @@ public class Etch {
 	private static final long PTR_INDEX=0x4000000000000000L; // pointer to index block
 	private static final long PTR_START=0x8000000000000000L; // start of chained entries
 	private static final long PTR_CHAIN=0xC000000000000000L; // chained entries after start
+	
+	/**
+	 * Number of lock-free attempts for a read that misses before falling back to the entry lock
+	 */
+	private static final int MAX_READ_RETRIES=8;
 
 	private static final Logger log=LoggerFactory.getLogger(Etch.class.getName());
 	
 	/**
-	 * Temporary byte array for writer. Must not be used by readers.
+	 * Temporary byte array, per thread. Used for index blocks by the writer and for key checks by readers.
 	 */
 	private final ThreadLocal<byte[]> tempArray=new ThreadLocal<>() {
 		@Override
@@ -124,19 +140,37 @@ public class Etch {
 	 */
 	private static long tempIndex=0;
 
-	private final File file;
+	private volatile File file;
 	private final RandomAccessFile data;
 	
 	/**
-	 * List of MappedByteBuffers for each region of the database file.
+	 * Array of MappedByteBuffers for each region of the database file. Copied on write
+	 * so that readers can access it without locking.
+	 */
+	private volatile MappedByteBuffer[] regionMap=new MappedByteBuffer[0];
+	
+	/**
+	 * Lock for remapping regions, separate from the writer lock so readers are never blocked by writes
+	 */
+	private final Object regionLock=new Object();
+	
+	private volatile long dataLength=0;
+	
+	/**
+	 * Write version, used as a sequence lock by readers. Odd while a single entry is being written.
 	 */
-	private final ArrayList<MappedByteBuffer> regionMap=new ArrayList<>();
+	private volatile long writeVersion=0;
 	
-	private long dataLength=0;
+	/**
+	 * Lock held while writing a single entry, inside the writer lock. Readers that keep missing 
+	 * during writes fall back to this lock, so they wait for at most one entry rather than a 
+	 * whole group commit.
+	 */
+	private final Object entryLock=new Object();
 	
 	private boolean BUILD_CHAINS=true;
 	
-	private Etch(File dataFile) throws IOException {
+	private Etch(File dataFile, boolean shutdownHook) throws IOException {
 		// Ensure we have a RandomAccessFile that exists
 		this.file=dataFile;
 		if (!dataFile.exists()) dataFile.createNewFile();
@@ -184,11 +218,13 @@ public class Etch {
 		}
 		
 		// shutdown hook to close file / release lock
-		convex.core.util.Shutdown.addHook(Shutdown.ETCH,new Runnable() {
-		    public void run() {
-		        close();
-		    }
-		});
+		if (shutdownHook) {
+			convex.core.util.Shutdown.addHook(Shutdown.ETCH,new Runnable() {
+			    public void run() {
+			        close();
+			    }
+			});
+		}
 	}
 	
 	/**
@@ -211,7 +247,7 @@ public class Etch {
 	public static Etch createTempEtch(String prefix) throws IOException {
 		File data = File.createTempFile(prefix+"-", null);
 		if (Constants.ETCH_DELETE_TEMP_ON_EXIT) data.deleteOnExit();
-		return new Etch(data);
+		return new Etch(data,true);
 	}
 	
 	/**
@@ -221,11 +257,22 @@ public class Etch {
 	 * @throws IOException If an IO error occurs
 	 */
 	public static Etch create(File file) throws IOException {
-		Etch etch= new Etch(file);
+		Etch etch= new Etch(file,true);
 		log.debug("Etch created on file: {} with data length: {}"+file,etch.dataLength);
 		return etch;
 	}
 	
+	/**
+	 * Create an Etch instance using the specified file, without a shutdown hook. The owner 
+	 * is responsible for closing it.
+	 * @param file File with which to create Etch instance
+	 * @return The new Etch instance
+	 * @throws IOException If an IO error occurs
+	 */
+	static Etch createUnhooked(File file) throws IOException {
+		return new Etch(file,false);
+	}
+	
 	/**
 	 * Gets the MappedByteBuffer for a given position, seeking to the specified location.
 	 * Type flags are ignored if included in the position pointer.
@@ -249,8 +296,8 @@ public class Etch {
 
 	private MappedByteBuffer getBuffer(int regionIndex) throws IOException {
 		// Get current mapped region, or null if out of range
-		int regionMapSize=regionMap.size();
-		MappedByteBuffer mbb=(regionIndex<regionMapSize)?regionMap.get(regionIndex):null;
+		MappedByteBuffer[] regions=regionMap;
+		MappedByteBuffer mbb=(regionIndex<regions.length)?regions[regionIndex]:null;
 		
 		// Call createBuffer if mapped region does not exist, or is too small
 		if ((mbb==null)||(mbb.capacity()<dataLength+REGION_MARGIN)) mbb=createBuffer(regionIndex);
@@ -261,27 +308,39 @@ public class Etch {
 	/**
 	 * Create a MappedByteBuffer at the specified region index position. 
 	 * 
-	 * CONCURRENCY: should be the only place where regionMap is modified.
+	 * CONCURRENCY: should be the only place where regionMap is modified. May be called
+	 * by readers as well as the writer, so holds the region lock rather than the writer lock.
 	 * 
 	 * @param regionIndex Index of database file region
 	 * @return
 	 * @throws IOException
 	 */
-	private synchronized MappedByteBuffer createBuffer(int regionIndex) throws IOException {
-		while(regionMap.size()<=regionIndex) regionMap.add(null);
-		
-		long pos=regionIndex*(long)MAX_REGION_SIZE;
-		
-		// Expand region size until big enough for current database plus appropriate margin
-		int length=1<<16;
-		while((length<MAX_REGION_SIZE)&&((pos+length)<(dataLength+REGION_MARGIN))) {
-			length*=2;
+	private MappedByteBuffer createBuffer(int regionIndex) throws IOException {
+		synchronized (regionLock) {
+			MappedByteBuffer[] regions=regionMap;
+			long pos=regionIndex*(long)MAX_REGION_SIZE;
+			long requiredLength=dataLength+REGION_MARGIN;
+			
+			// Another thread may already have remapped this region
+			if (regionIndex<regions.length) {
+				MappedByteBuffer existing=regions[regionIndex];
+				if ((existing!=null)&&(existing.capacity()>=requiredLength)) return existing;
+			}
+			
+			// Expand region size until big enough for current database plus appropriate margin
+			int length=1<<16;
+			while((length<MAX_REGION_SIZE)&&((pos+length)<requiredLength)) {
+				length*=2;
+			}
+			
+			length+=REGION_MARGIN; // include margin in buffer length
+			MappedByteBuffer mbb= data.getChannel().map(MapMode.READ_WRITE, pos, length);
+			
+			MappedByteBuffer[] newRegions=Arrays.copyOf(regions, Math.max(regions.length, regionIndex+1));
+			newRegions[regionIndex]=mbb;
+			regionMap=newRegions;
+			return mbb;
 		}
-		
-		length+=REGION_MARGIN; // include margin in buffer length
-		MappedByteBuffer mbb= data.getChannel().map(MapMode.READ_WRITE, pos, length);
-		regionMap.set(regionIndex, mbb);
-		return mbb;
 	}
 
 	/**
@@ -295,8 +354,59 @@ public class Etch {
 	 * @throws IOException If an IO error occurs
 	 */
 	public synchronized Ref<ACell> write(AArrayBlob key, Ref<ACell> value) throws IOException {
-		Counters.etchWrite++;
-		return write(key,0,value,INDEX_START);
+		return writeEntry(key,value);
+	}
+	
+	/**
+	 * Writes a list of values to the immutable store as a single group commit, keyed 
+	 * by the hash of each value. The writer lock is acquired only once for the whole group,
+	 * but each entry is published to readers as soon as it is written.
+	 * 
+	 * CONCURRENCY: Hold a lock for a single writer
+	 * 
+	 * @param values Values to write to the store
+	 * @return List of Refs after writing to store, in the same order as the values
+	 * @throws IOException If an IO error occurs
+	 */
+	public synchronized List<Ref<ACell>> writeAll(List<Ref<ACell>> values) throws IOException {
+		int n=values.size();
+		ArrayList<Ref<ACell>> results=new ArrayList<>(n);
+		for (int i=0; i<n; i++) {
+			Ref<ACell> value=values.get(i);
+			results.add(writeEntry(value.getHash(),value));
+		}
+		return results;
+	}
+	
+	/**
+	 * Writes a single entry, bracketed by write version updates so that readers only 
+	 * need to retry a miss that overlaps with this entry. Caller must hold the writer lock.
+	 */
+	private Ref<ACell> writeEntry(AArrayBlob key, Ref<ACell> value) throws IOException {
+		synchronized (entryLock) {
+			beginWrite();
+			try {
+				Counters.etchWrite++;
+				return write(key,0,value,INDEX_START);
+			} finally {
+				endWrite();
+			}
+		}
+	}
+	
+	/**
+	 * Marks the start of a write. Readers that miss during a write will retry.
+	 */
+	private void beginWrite() {
+		writeVersion++; // now odd, only modified under writer lock
+		VarHandle.storeStoreFence(); // write version must be visible before any index changes
+	}
+	
+	/**
+	 * Marks the end of a write, publishing all changes to readers.
+	 */
+	private void endWrite() {
+		writeVersion++; // volatile write releases all prior index changes
 	}
 	
 	private Ref<ACell> write(AArrayBlob key, int keyOffset, Ref<ACell> value, long indexPosition) throws IOException {
@@ -555,9 +665,9 @@ public class Etch {
 			
 			// Force writes to disk. Probably useful.
 			for (MappedByteBuffer m: regionMap) {
-				m.force();
+				if (m!=null) m.force();
 			}
-			regionMap.clear();
+			regionMap=new MappedByteBuffer[0];
 			System.gc();
 			
 			data.close();
@@ -605,7 +715,7 @@ public class Etch {
 	 * @throws IOException
 	 */
 	private long appendLeafIndex(int digit, long dataPointer) throws IOException {
-		long position=dataLength;
+		long position=alignIndexPosition();
 		byte[] temp=tempArray.get();
 		Arrays.fill(temp, (byte)0x00);
 		int ix=POINTER_SIZE*(digit&0xFF);
@@ -616,6 +726,16 @@ public class Etch {
 		return position;
 	}
 
+	/**
+	 * Checks if the database contains a value for the given key, without reading the value
+	 * @param key Key to check
+	 * @return true if the key is present, false otherwise
+	 * @throws IOException If an IO error occurs
+	 */
+	public boolean contains(AArrayBlob key) throws IOException {
+		return seekPosition(key)>=0;
+	}
+
 	/**
 	 * Reads a Blob from the database, returning null if not found
 	 * @param key Key to read from Store
@@ -683,7 +803,22 @@ public class Etch {
 	 * @throws IOException 
 	 */
 	private long seekPosition(AArrayBlob key) throws IOException {
-		return seekPosition(key,0,INDEX_START);
+		for (int i=0; i<MAX_READ_RETRIES; i++) {
+			long version=writeVersion;
+			long pointer=seekPosition(key,0,INDEX_START);
+			
+			// A found key is always valid, since data is never moved once written
+			if (pointer>=0) return pointer;
+			
+			// A miss is only definitive if no write overlapped with the search
+			VarHandle.acquireFence();
+			if (((version&1L)==0L)&&(version==writeVersion)) return -1;
+		}
+		
+		// Heavy write contention, so wait for the entry being written to get a consistent view
+		synchronized (entryLock) {
+			return seekPosition(key,0,INDEX_START);
+		}
 	}
 	
 	/**
@@ -697,6 +832,7 @@ public class Etch {
 		long pointerIndex=indexPosition+POINTER_SIZE*(digit&0xFF);	
 		MappedByteBuffer mbb=seekMap(pointerIndex);
 		long pointer=mbb.getLong();
+		VarHandle.acquireFence(); // see data published before slot was written
 		return pointer;
 	}
 	
@@ -758,6 +894,7 @@ public class Etch {
 	private void writeSlot(long indexPosition, int digit, long slotValue) throws IOException {
 		long position=indexPosition+(digit&0xFF)*POINTER_SIZE;
 		MappedByteBuffer mbb=seekMap(position);
+		VarHandle.releaseFence(); // publish any data and index blocks before the slot that points to them
 		mbb.putLong(slotValue);
 	}
 
@@ -783,26 +920,28 @@ public class Etch {
 		} else if (type==PTR_INDEX) {
 			// recursively check next index node
 			long newIndexPosition=slotPointer(slotValue);
+			if (!isValidPointer(newIndexPosition,INDEX_BLOCK_SIZE)) return -1;
 			return seekPosition(key,offset+1,newIndexPosition);
 		} else if (type==PTR_PLAIN) {
+			if (!isValidPointer(slotValue,KEY_SIZE)) return -1;
 			if (checkMatchingKey(key,slotValue)) return slotValue;
 			return -1;
 		} else if (type==PTR_CHAIN) {
 			// continuation of chain from some previous index, therefore key can't be present
 			return -1;
 		} else if (type==PTR_START) {
-			synchronized (this) {
-				// start of chain, so scan chain of entries
-				int i=0;
-				while (i<256) {
-					long ptr=slotValue&(~TYPE_MASK);
-					if (checkMatchingKey(key,ptr)) return ptr;
-					
-					i++; // advance to next position
-					slotValue=readSlot(indexPosition,digit+i);
-					type=(slotValue&TYPE_MASK);
-					if (!(type==PTR_CHAIN)) return -1; // reached end of chain
-				}
+			// start of chain, so scan chain of entries
+			// chain may be collapsed concurrently, in which case caller retries on a miss
+			int i=0;
+			while (i<256) {
+				long ptr=slotValue&(~TYPE_MASK);
+				if (!isValidPointer(ptr,KEY_SIZE)) return -1;
+				if (checkMatchingKey(key,ptr)) return ptr;
+				
+				i++; // advance to next position
+				slotValue=readSlot(indexPosition,digit+i);
+				type=(slotValue&TYPE_MASK);
+				if (!(type==PTR_CHAIN)) return -1; // reached end of chain
 			}
 			return -1;
 		} else {
@@ -810,6 +949,41 @@ public class Etch {
 		}
 	}
 	
+	/**
+	 * Pads the data file so that a new index block starts on a pointer boundary. Aligned slots
+	 * can't straddle a cache line, so lock-free readers see either the old or new slot value.
+	 * The root index block position is fixed by the file format, so is left as is.
+	 * @return Position for the new index block
+	 * @throws IOException
+	 */
+	private long alignIndexPosition() throws IOException {
+		long position=dataLength;
+		if (position==INDEX_START) return position;
+		int pad=(int)(-position&(POINTER_SIZE-1));
+		if (pad>0) {
+			MappedByteBuffer mbb=seekMap(position);
+			for (int i=0; i<pad; i++) {
+				mbb.put((byte)0);
+			}
+			position+=pad;
+			dataLength=position;
+		}
+		return position;
+	}
+	
+	/**
+	 * Checks that a pointer read from an index slot refers to a complete block within the data
+	 * written so far. A lock-free reader can see a torn slot value if a concurrent write hits an
+	 * unaligned slot (the root index block, or files written by older versions), so pointers are
+	 * checked before they are followed. A bad pointer is treated as a miss, which is retried.
+	 * @param pointer Pointer to block, with type bits cleared
+	 * @param blockSize Number of bytes that must be present at the pointer
+	 * @return true if the pointer is valid, false otherwise
+	 */
+	private boolean isValidPointer(long pointer, int blockSize) {
+		return (pointer>=INDEX_START)&&(pointer+blockSize<=dataLength);
+	}
+
 	/**
 	 * Append a new index block to the store file. The new Index block will be initially empty,
 	 * i.e. filled completely with zeros.
@@ -817,7 +991,7 @@ public class Etch {
 	 * @throws IOException
 	 */
 	private long appendNewIndexBlock() throws IOException {
-		long position=dataLength;
+		long position=alignIndexPosition();
 		byte[] temp=tempArray.get();
 		MappedByteBuffer mbb=seekMap(position);
 		Arrays.fill(temp,(byte)0);
@@ -887,8 +1061,32 @@ public class Etch {
 	public File getFile() {
 		return file;
 	}
+	
+	/**
+	 * Gets the current length of data in this Etch database, including header and index blocks
+	 * @return Data length in bytes
+	 */
+	public long getDataLength() {
+		return dataLength;
+	}
+	
+	/**
+	 * Atomically moves the database file to a new location, replacing any existing file. 
+	 * The database remains open and usable. Existing data is flushed first so that 
+	 * the moved file is complete.
+	 * 
+	 * @param target Target file
+	 * @throws IOException If an IO error occurs
+	 */
+	synchronized void moveTo(File target) throws IOException {
+		MappedByteBuffer mbb=seekMap(OFFSET_FILE_SIZE);
+		mbb.putLong(dataLength);
+		flush();
+		Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		file=target;
+	}
 
-	public synchronized Hash getRootHash() throws IOException {
+	public Hash getRootHash() throws IOException {
 		MappedByteBuffer mbb=seekMap(OFFSET_ROOT_HASH);
 		byte[] bs=new byte[Hash.LENGTH];
 		mbb.get(bs);
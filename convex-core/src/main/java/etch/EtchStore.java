@@ -2,16 +2,29 @@ package etch;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import convex.core.Constants;
 import convex.core.data.ACell;
 import convex.core.data.Hash;
-import convex.core.data.IRefFunction;
 import convex.core.data.Ref;
+import convex.core.data.RefTreeWalker;
 import convex.core.store.AStore;
+import convex.core.store.RefCache;
+import convex.core.util.Counters;
+import convex.core.util.Shutdown;
 import convex.core.util.Utils;
 
 /**
@@ -24,18 +37,97 @@ import convex.core.util.Utils;
  * Objects are keyed by cryptographic hash. That solves naming. Objects are
  * immutable. That solves cache invalidation.
  * 
- * Garbage collection is left as an exercise for the reader.
+ * Garbage collection is performed by compaction: live data reachable from the root
+ * hash is copied to a fresh Etch file, which then replaces the current one.
+ * 
+ * A store may be sharded across multiple Etch files in a directory, with cells assigned
+ * to shards by the leading bits of their hash. Each shard has its own memory mapped regions
+ * and writer lock, so writes to different shards proceed in parallel.
  */
 public class EtchStore extends AStore {
 	private static final Logger log = LoggerFactory.getLogger(EtchStore.class.getName());
 
 	/**
-	 * Etch Storage of persisted Refs for each hash value
+	 * Number of writes in a single batch above which shards are written in parallel
+	 */
+	private static final int PARALLEL_WRITE_THRESHOLD=256;
+	
+	/**
+	 * Maximum number of shards, since shards are selected by the first byte of the hash
+	 */
+	public static final int MAX_SHARDS=256;
+	
+	/**
+	 * Etch shards for storage of persisted Refs, indexed by leading bits of each hash value. 
+	 * Shard 0 holds the root hash. May be replaced by compaction.
+	 */
+	private volatile Etch[] shards;
+	
+	/**
+	 * Directory containing shard files, or null if this store uses a single Etch file
 	 */
-	private Etch etch;
+	private final File directory;
+	
+	/**
+	 * Lock held for reading while writing to the current Etch instance, and for writing
+	 * while compaction replaces it.
+	 */
+	private final ReentrantReadWriteLock swapLock=new ReentrantReadWriteLock();
+	
+	/**
+	 * Hashes written during a compaction, or null if no compaction is in progress
+	 */
+	private volatile List<Hash> compactionJournal=null;
+	
+	/**
+	 * Timestamp until which the status of Refs held in memory is not trusted. Each compaction 
+	 * starts a new store generation, and may remove cells that Refs from the previous generation 
+	 * still mark as persisted, so for a grace period after the swap the store itself is checked.
+	 */
+	private volatile long distrustUntil=0;
+	
+	/**
+	 * True once a shutdown hook has been registered for shards created by compaction
+	 */
+	private boolean shutdownHooked=false;
+	
+	/**
+	 * Previous Etch shards replaced by compaction. Kept open for readers that started
+	 * before the swap, and closed on the next compaction or when this store is closed.
+	 */
+	private Etch[] retired=null;
+	
+	/**
+	 * Cache of decoded cells for hot data, or null if caching is disabled
+	 */
+	private volatile RefCache cache;
 
 	public EtchStore(Etch etch) {
-		this.etch = etch;
+		this(new Etch[] {etch},null);
+	}
+	
+	private EtchStore(Etch[] shards, File directory) {
+		this.shards = shards;
+		this.directory = directory;
+		this.cache = RefCache.create(Constants.ETCH_CACHE_SIZE);
+	}
+	
+	/**
+	 * Sets the size of the cache of decoded cells for this store. Any currently cached cells are discarded.
+	 * 
+	 * @param size Maximum cache size in bytes, or zero to disable caching
+	 */
+	public void setCacheSize(long size) {
+		this.cache = (size>0)?RefCache.create(size):null;
+	}
+	
+	/**
+	 * Gets the cache of decoded cells for this store
+	 * 
+	 * @return RefCache instance, or null if caching is disabled
+	 */
+	public RefCache getCache() {
+		return cache;
 	}
 
 	/**
@@ -51,6 +143,55 @@ public class EtchStore extends AStore {
 		return new EtchStore(etch);
 	}
 
+	/**
+	 * Creates an EtchStore sharded across multiple Etch files in the specified directory. 
+	 * An existing sharded store in the directory must have the same number of shards.
+	 * 
+	 * @param directory Directory for shard files. Will be created if it does not already exist.
+	 * @param shardCount Number of shards, between 1 and MAX_SHARDS. A power of two gives an even distribution.
+	 * @return EtchStore instance
+	 * @throws IOException If an IO error occurs, or the number of existing shards differs
+	 */
+	public static EtchStore createSharded(File directory, int shardCount) throws IOException {
+		if ((shardCount<1)||(shardCount>MAX_SHARDS)) throw new IllegalArgumentException("Invalid shard count: "+shardCount);
+		if (!directory.exists()) directory.mkdirs();
+		if (!directory.isDirectory()) throw new IOException("Not a directory: "+directory);
+		
+		File[] existing=directory.listFiles((dir,name)->name.startsWith("shard-")&&name.endsWith(".etch"));
+		if ((existing.length>0)&&(existing.length!=shardCount)) {
+			throw new IOException("Sharded Etch store at "+directory+" has "+existing.length+" shards, expected "+shardCount);
+		}
+		
+		Etch[] shards=new Etch[shardCount];
+		try {
+			for (int i=0; i<shardCount; i++) {
+				shards[i]=Etch.create(new File(directory,"shard-"+i+".etch"));
+			}
+		} catch (IOException e) {
+			for (Etch shard: shards) {
+				if (shard!=null) shard.close();
+			}
+			throw e;
+		}
+		return new EtchStore(shards,directory);
+	}
+	
+	/**
+	 * Gets the number of Etch shards used by this store
+	 * @return Number of shards, 1 if not sharded
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+	
+	/**
+	 * Gets the shard index for a hash, given the number of shards. Uses the leading bits of the hash.
+	 */
+	private static int shardIndex(Hash hash, int shardCount) {
+		if (shardCount==1) return 0;
+		return ((hash.byteAt(0)&0xFF)*shardCount)>>>8;
+	}
+
 	/**
 	 * Create an Etch store using a new temporary file with the given prefix
 	 * 
@@ -83,14 +224,40 @@ public class EtchStore extends AStore {
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T extends ACell> Ref<T> refForHash(Hash hash) {
+		RefCache cache=this.cache;
+		if (cache!=null) {
+			Ref<T> cached=cache.get(hash);
+			if (cached!=null) {
+				Counters.etchCacheHit++;
+				return cached;
+			}
+			Counters.etchCacheMiss++;
+		}
+		
+		// Hold the swap lock so that a cell read from shards being retired can't be cached 
+		// after compaction has cleared the cache
+		swapLock.readLock().lock();
 		try {
-			Ref<ACell> existing = etch.read(hash);
+			Etch[] shards=this.shards;
+			Ref<ACell> existing = shards[shardIndex(hash,shards.length)].read(hash);
 			if (existing == null) return null;
+			if (cache!=null) cache.put(existing);
 			return (Ref<T>) existing;
 		} catch (IOException e) {
 			throw new Error("IO exception from Etch", e);
+		} finally {
+			swapLock.readLock().unlock();
 		}
 	}
+	
+	/**
+	 * Checks if the status of Refs held in memory can be trusted, i.e. no compaction has 
+	 * happened recently enough to have removed cells they mark as persisted
+	 */
+	private boolean isRefStatusTrusted() {
+		long until=distrustUntil;
+		return (until==0)||(Utils.getCurrentTimestamp()>=until);
+	}
 
 	@Override
 	public <T extends ACell> Ref<T> storeRef(Ref<T> ref, int status, Consumer<Ref<ACell>> noveltyHandler) {
@@ -101,73 +268,196 @@ public class EtchStore extends AStore {
 	public <T extends ACell> Ref<T> storeTopRef(Ref<T> ref, int status, Consumer<Ref<ACell>> noveltyHandler) {
 		return storeRef(ref, noveltyHandler, status, true);
 	}
+	
+	@Override
+	public <T extends ACell> Ref<T> storeTree(Ref<T> root, int status, Consumer<Ref<ACell>> noveltyHandler) {
+		return storeRef(root, noveltyHandler, status, true);
+	}
 
+	/**
+	 * Stores a Ref and all child Refs not already stored at the required status. 
+	 * 
+	 * The cell tree is traversed iteratively in depth first order with a RefTreeWalker. 
+	 * All novelty is collected and then written to Etch in a single group commit.
+	 * 
+	 * @param <T> Type of Ref value
+	 * @param ref Ref to store
+	 * @param noveltyHandler Novelty Handler function for Novelty detected. May be null.
+	 * @param requiredStatus Status to store at
+	 * @param topLevel If true, store the top level Ref even if embedded
+	 * @return The persisted Ref
+	 */
 	@SuppressWarnings("unchecked")
 	public <T extends ACell> Ref<T> storeRef(Ref<T> ref, Consumer<Ref<ACell>> noveltyHandler, int requiredStatus,
 			boolean topLevel) {
 		// first check if the Ref is already persisted to required level
-		if (ref.getStatus() >= requiredStatus) return ref;
+		boolean trusted=isRefStatusTrusted();
+		if (trusted && (ref.getStatus() >= requiredStatus)) return ref;
+		
+		// Refs to write, in depth first order (children before parents)
+		ArrayList<Ref<ACell>> writes=new ArrayList<>();
+		
+		// Results for non-embedded cells, by hash, so that duplicates are only stored once
+		HashMap<Hash,Ref<ACell>> stored=new HashMap<>();
+		
+		RefTreeWalker walker=new RefTreeWalker() {
+			@Override
+			protected Ref<ACell> visit(Ref<ACell> r, boolean isRoot) {
+				ACell cell=r.getValue();
+				return checkExisting(r,cell,(cell==null)||cell.isEmbedded(),requiredStatus,trusted,stored);
+			}
+			
+			@Override
+			protected boolean shouldExpand(Ref<ACell> r, ACell cell) {
+				// beyond STORED level, need to persist child refs first
+				return requiredStatus > Ref.STORED;
+			}
 
-		final ACell cell = ref.getValue();
+			@Override
+			protected Ref<ACell> complete(Ref<ACell> r, ACell cell, boolean isRoot) {
+				Ref<ACell> result=r.withMinimumStatus(requiredStatus);
+				boolean embedded=cell.isEmbedded();
+				if (!embedded || (topLevel&&isRoot)) {
+					if (log.isTraceEnabled()) {
+						log.trace( "Etch persisting at status=" + requiredStatus + " hash = 0x"
+								+ result.getHash().toHexString() + " ref of class " + Utils.getClassName(cell) + " with store " + EtchStore.this);
+					}
+					writes.add(result);
+					if (!embedded) stored.put(result.getHash(), result);
+				}
+				return result;
+			}
+		};
+		
+		// Hold the swap lock while checking existing cells as well as writing, so that
+		// compaction can't remove cells between the check and the write
+		Ref<ACell> rootResult;
+		List<Ref<ACell>> results;
+		swapLock.readLock().lock();
+		try {
+			rootResult=walker.walk((Ref<ACell>)ref);
+			if (writes.isEmpty()) return (Ref<T>) rootResult;
+			
+			// Do actual write to store, as a single group commit
+			results=writeAll(shards,writes);
+			
+			// record novelty so that an in-progress compaction can copy it
+			List<Hash> journal=compactionJournal;
+			if (journal!=null) {
+				for (Ref<ACell> r: writes) journal.add(r.getHash());
+			}
+		} catch (IOException e) {
+			throw Utils.sneakyThrow(e);
+		} finally {
+			swapLock.readLock().unlock();
+		}
+		
+		// keep cached Refs consistent with updated status
+		RefCache cache=this.cache;
+		if (cache!=null) {
+			for (Ref<ACell> result: results) {
+				cache.update(result);
+			}
+		}
+		
+		// call novelty handler for each newly persisted Ref
+		if (noveltyHandler != null) {
+			for (Ref<ACell> result: results) {
+				noveltyHandler.accept(result);
+			}
+		}
+		
+		// root is always the last Ref written, if it was written at all
+		Ref<ACell> rootWrite=writes.get(writes.size()-1);
+		if (rootWrite==rootResult) return (Ref<T>) results.get(results.size()-1);
+		return (Ref<T>) rootResult;
+	}
+	
+	/**
+	 * Checks if a Ref is already stored at the required status
+	 * @return Existing Ref if no further storage is required, or null otherwise
+	 */
+	@SuppressWarnings("unchecked")
+	private Ref<ACell> checkExisting(Ref<ACell> ref, ACell cell, boolean embedded, int requiredStatus, boolean trusted, HashMap<Hash,Ref<ACell>> stored) {
+		if (trusted && (ref.getStatus() >= requiredStatus)) return ref;
+		
 		// Quick handling for null
-		if (cell == null) return (Ref<T>) Ref.NULL_VALUE;
-
-		// check store for existing ref first.
-		boolean embedded = cell.isEmbedded();
-		Hash hash = null;
+		if (cell == null) return (Ref<ACell>) Ref.NULL_VALUE;
+		
 		// if not embedded, worth checking store first for existing value
 		if (!embedded) {
-			hash = ref.getHash();
-			Ref<T> existing = refForHash(hash);
-			if (existing != null) {
-				// Return existing ref if status is sufficient
-				if (existing.getStatus() >= requiredStatus) return existing;
+			Hash hash = ref.getHash();
+			Ref<ACell> existing = stored.get(hash);
+			if (existing != null) return existing;
+			
+			existing = refForHash(hash);
+			// Return existing ref if status is sufficient
+			if ((existing != null) && (existing.getStatus() >= requiredStatus)) {
+				stored.put(hash, existing);
+				return existing;
 			}
 		}
+		return null;
+	}
 
-		// beyond STORED level, need to recursively persist child refs if they exist
-		if ((requiredStatus > Ref.STORED)&&(cell.getRefCount()>0)) {
-			IRefFunction func = r -> {
-				return storeRef((Ref<ACell>) r, noveltyHandler, requiredStatus, false);
-			};
-
-			// need to do recursive persistence
-			// TODO: maybe switch to a queue? Mitigate risk of stack overflow?
-			ACell newObject = cell.updateRefs(func);
-
-			// perhaps need to update Ref
-			if (cell != newObject) ref = ref.withValue((T) newObject);
+	/**
+	 * Writes a batch of Refs to the appropriate shards. Each shard is written as a single group commit,
+	 * with shards written in parallel for large batches.
+	 * 
+	 * @return Written Refs, in the same order as the writes
+	 */
+	private static List<Ref<ACell>> writeAll(Etch[] shards, ArrayList<Ref<ACell>> writes) throws IOException {
+		int n=shards.length;
+		if (n==1) return shards[0].writeAll(writes);
+		
+		// group writes by shard, preserving order within each shard
+		int count=writes.size();
+		int[] shardOf=new int[count];
+		List<List<Ref<ACell>>> groups=new ArrayList<>(n);
+		List<List<Ref<ACell>>> groupResults=new ArrayList<>(n);
+		for (int i=0; i<n; i++) {
+			groups.add(new ArrayList<>());
+			groupResults.add(null);
 		}
-
-		if (topLevel || !embedded) {
-			// Do actual write to store
-			final Hash fHash = (hash != null) ? hash : ref.getHash();
-			if (log.isTraceEnabled()) {
-				log.trace( "Etch persisting at status=" + requiredStatus + " hash = 0x"
-						+ fHash.toHexString() + " ref of class " + Utils.getClassName(cell) + " with store " + this);
+		for (int j=0; j<count; j++) {
+			Ref<ACell> r=writes.get(j);
+			int i=shardIndex(r.getHash(),n);
+			shardOf[j]=i;
+			groups.get(i).add(r);
+		}
+		
+		IntStream range=IntStream.range(0, n);
+		if (count>=PARALLEL_WRITE_THRESHOLD) {
+			// compute memory sizes on this thread, since other threads won't use this store to resolve child Refs
+			for (Ref<ACell> r: writes) {
+				if (r.getStatus()>=Ref.PERSISTED) r.getValue().getMemorySize();
 			}
-			
-			Ref<ACell> result;
+			range=range.parallel();
+		}
+		range.forEach(i->{
+			List<Ref<ACell>> group=groups.get(i);
+			if (group.isEmpty()) return;
 			try {
-				// ensure status is set when we write to store
-				ref = ref.withMinimumStatus(requiredStatus);
-				result = etch.write(fHash, (Ref<ACell>) ref);
+				// each task sets a distinct element, so no structural modification
+				groupResults.set(i,shards[i].writeAll(group));
 			} catch (IOException e) {
 				throw Utils.sneakyThrow(e);
 			}
-
-			// call novelty handler if newly persisted
-			if (noveltyHandler != null) noveltyHandler.accept(result);
-			return (Ref<T>) result;
-		} else {
-			// no need to write, just tag updated status
-			return ref.withMinimumStatus(requiredStatus);
+		});
+		
+		// reassemble results in original order
+		int[] pos=new int[n];
+		ArrayList<Ref<ACell>> results=new ArrayList<>(count);
+		for (int j=0; j<count; j++) {
+			int i=shardOf[j];
+			results.add(groupResults.get(i).get(pos[i]++));
 		}
+		return results;
 	}
 
 	@Override
 	public String toString() {
-		return "EtchStore at: " + etch.getFile().getName();
+		return "EtchStore at: " + getFile().getName();
 	}
 
 	/**
@@ -176,11 +466,17 @@ public class EtchStore extends AStore {
 	 * @return File name as a String
 	 */
 	public String getFileName() {
-		return etch.getFile().toString();
+		return getFile().toString();
 	}
 
-	public void close() {
-		etch.close();
+	public synchronized void close() {
+		RefCache cache=this.cache;
+		if (cache!=null) cache.clear();
+		if (retired!=null) {
+			for (Etch shard: retired) shard.close();
+			retired=null;
+		}
+		for (Etch shard: shards) shard.close();
 	}
 	
 	/**
@@ -188,20 +484,209 @@ public class EtchStore extends AStore {
 	 * @throws IOException If an IO error occurs
 	 */
 	public void flush() throws IOException  {
-		etch.flush();
+		for (Etch shard: shards) shard.flush();
 	}
 
+	/**
+	 * Gets the file for this store. For a sharded store, this is the directory containing the shards.
+	 * @return File or directory
+	 */
 	public File getFile() {
-		return etch.getFile();
+		if (directory!=null) return directory;
+		return shards[0].getFile();
 	}
 
 	@Override
 	public Hash getRootHash() throws IOException {
-		return etch.getRootHash();
+		return shards[0].getRootHash();
 	}
 
 	@Override
 	public void setRootHash(Hash h) throws IOException {
-		etch.setRootHash(h);
+		swapLock.readLock().lock();
+		try {
+			shards[0].setRootHash(h);
+		} finally {
+			swapLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Compacts this store, removing all data not reachable from the root hash or the given 
+	 * additional roots. Live cells are copied to a fresh Etch file alongside the current one, 
+	 * which then atomically replaces the current file. For a sharded store, each shard is
+	 * compacted into a fresh file in the same way.
+	 * 
+	 * The store remains usable while compaction is in progress. Cells written during compaction 
+	 * are retained, and writers are only blocked briefly while the new file is swapped in. 
+	 * 
+	 * Cells not reachable from any root are removed even if they are referenced by persisted Refs
+	 * held in memory, so callers should pass any data still in use, e.g. received messages not yet 
+	 * fully processed, as additional roots. For a grace period after compaction the store does not 
+	 * trust the status of Refs when storing cells, so removed cells that were still in transit are 
+	 * written again if they are stored later.
+	 * 
+	 * @param roots Additional root hashes to retain
+	 * @return Number of live cells retained
+	 * @throws IOException If an IO error occurs
+	 */
+	public synchronized long compact(Hash... roots) throws IOException {
+		Etch[] source=shards;
+		int n=source.length;
+		Etch[] target=new Etch[n];
+		File[] tempFiles=new File[n];
+		long oldLength=0;
+		for (int i=0; i<n; i++) {
+			tempFiles[i]=new File(source[i].getFile().getPath()+".compact");
+			if (tempFiles[i].exists()) tempFiles[i].delete();
+			oldLength+=source[i].getDataLength();
+		}
+		
+		long count=0;
+		boolean swapped=false;
+		compactionJournal=Collections.synchronizedList(new ArrayList<>());
+		try {
+			for (int i=0; i<n; i++) {
+				// no shutdown hook per file, since the store closes its current shards on shutdown
+				target[i]=Etch.createUnhooked(tempFiles[i]);
+			}
+			
+			// mark and copy live data while the store is still in use
+			Hash rootHash=source[0].getRootHash();
+			count+=copyLive(source,target,rootHash);
+			for (Hash root: roots) {
+				count+=copyLive(source,target,root);
+			}
+			
+			// block writers while we copy any new data and swap in the compacted file
+			swapLock.writeLock().lock();
+			try {
+				for (Hash h: compactionJournal) {
+					count+=copyLive(source,target,h);
+				}
+				compactionJournal=null;
+				target[0].setRootHash(source[0].getRootHash());
+				swapFiles(source,target);
+				shards=target;
+				distrustUntil=Utils.getCurrentTimestamp()+Constants.ETCH_COMPACTION_GRACE_PERIOD;
+				swapped=true;
+				
+				// cache may contain cells that no longer exist in the store
+				RefCache cache=this.cache;
+				if (cache!=null) cache.clear();
+			} finally {
+				swapLock.writeLock().unlock();
+			}
+		} finally {
+			compactionJournal=null;
+			if (!swapped) {
+				for (int i=0; i<n; i++) {
+					if (target[i]!=null) target[i].close();
+					tempFiles[i].delete();
+				}
+			}
+		}
+		
+		if (retired!=null) {
+			for (Etch shard: retired) shard.close();
+		}
+		retired=source;
+		if (!shutdownHooked) {
+			// close compacted shards on shutdown, once for the life of this store
+			Shutdown.addHook(Shutdown.ETCH, this::close);
+			shutdownHooked=true;
+		}
+		long newLength=0;
+		for (Etch shard: target) newLength+=shard.getDataLength();
+		log.info("Compacted Etch store {} from {} to {} bytes, retaining {} cells",getFile(),oldLength,newLength,count);
+		return count;
+	}
+	
+	/**
+	 * Moves compacted shard files over the current ones. Either all shards are replaced, or 
+	 * any already replaced are restored so that the store stays on its current files. 
+	 * 
+	 * Each current file is hard linked to a backup before any file is replaced, so no data is 
+	 * unlinked until the swap succeeds. A crash part way through leaves a mix of current and 
+	 * compacted shards, which is still consistent since each current shard holds a superset 
+	 * of the compacted data and the root hash is unchanged.
+	 */
+	private static void swapFiles(Etch[] source, Etch[] target) throws IOException {
+		int n=source.length;
+		if (n==1) {
+			// a single atomic move is all-or-nothing already
+			target[0].moveTo(source[0].getFile());
+			return;
+		}
+		
+		Path[] backups=new Path[n];
+		int moved=0;
+		boolean keepBackups=false;
+		try {
+			for (int i=0; i<n; i++) {
+				Path live=source[i].getFile().toPath();
+				Path backup=live.resolveSibling(live.getFileName()+".old");
+				Files.deleteIfExists(backup);
+				Files.createLink(backup, live);
+				backups[i]=backup;
+			}
+			for (; moved<n; moved++) {
+				target[moved].moveTo(source[moved].getFile());
+			}
+		} catch (Throwable e) {
+			try {
+				for (int i=0; i<moved; i++) {
+					Files.move(backups[i], source[i].getFile().toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException re) {
+				keepBackups=true;
+				log.error("Failed to restore Etch shards after failed compaction, backups retained in {}",source[0].getFile().getParent(),re);
+			}
+			throw e;
+		} finally {
+			if (!keepBackups) {
+				for (Path backup: backups) {
+					if (backup!=null) Files.deleteIfExists(backup);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copies all cells reachable from a root hash from one set of Etch shards to another, 
+	 * stopping at cells already present in the target. Cells missing from the source 
+	 * are skipped.
+	 * 
+	 * @return Number of cells copied
+	 */
+	private static long copyLive(Etch[] source, Etch[] target, Hash root) throws IOException {
+		int shardCount=source.length;
+		long count=0;
+		ArrayList<Ref<ACell>> stack=new ArrayList<>();
+		stack.add(Ref.forHash(root));
+		while (!stack.isEmpty()) {
+			Ref<ACell> ref=stack.remove(stack.size()-1);
+			
+			ACell cell;
+			if (ref.isDirect()&&((cell=ref.getValue())!=null)&&cell.isEmbedded()) {
+				// embedded value, not stored itself but may have non-embedded children
+			} else {
+				Hash hash=ref.getHash();
+				int shard=shardIndex(hash,shardCount);
+				if (target[shard].contains(hash)) continue;
+				Ref<ACell> stored=source[shard].read(hash);
+				if (stored==null) continue;
+				target[shard].write(hash, stored);
+				count++;
+				cell=stored.getValue();
+			}
+			
+			if (cell==null) continue;
+			int n=cell.getRefCount();
+			for (int i=0; i<n; i++) {
+				stack.add(cell.getRef(i));
+			}
+		}
+		return count;
 	}
 }
@@ -2,9 +2,15 @@ package convex.core;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Random;
+
 import org.junit.jupiter.api.Test;
 
+import convex.core.data.AVector;
+import convex.core.data.AccountKey;
 import convex.core.data.Maps;
+import convex.core.data.Vectors;
 
 public class BeliefVotingTest {
 
@@ -13,4 +19,34 @@ public class BeliefVotingTest {
 		assertEquals(100.0, Belief.computeVote(Maps.hashMapOf(1, 50.0, 0, 50.0)), 0.000001);
 		assertEquals(0.0, Belief.computeVote(Maps.hashMapOf()), 0.000001);
 	}
+
+	@Test
+	public void testMergeCachePrefixes() {
+		Random r = new Random(1234);
+		int n = 100;
+		ArrayList<Block> blocks = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			blocks.add(Block.create(i, new ArrayList<>(), AccountKey.ZERO));
+		}
+		Block fork = Block.create(-1, new ArrayList<>(), AccountKey.ZERO);
+
+		// Orders which are prefixes of the full list, some with a forked last Block
+		ArrayList<Order> orders = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			AVector<Block> bs = Vectors.create(blocks.subList(0, r.nextInt(n)));
+			if (r.nextBoolean()) bs = bs.conj(fork);
+			orders.add(Order.create().withBlocks(bs));
+		}
+
+		// base grows, and occasionally forks, as in successive merges
+		MergeCache cache = MergeCache.create();
+		AVector<Block> base = Vectors.empty();
+		for (int i = 0; i < n; i++) {
+			base = (r.nextInt(10) == 0) ? base.conj(fork) : Vectors.create(blocks.subList(0, i));
+			for (Order o : orders) {
+				assertEquals(base.commonPrefixLength(o.getBlocks()), cache.getConsistencyPrefix(base, o));
+				assertEquals(base.commonPrefixLength(o.getBlocks()), cache.getAgreementPrefix(base, o));
+			}
+		}
+	}
 }
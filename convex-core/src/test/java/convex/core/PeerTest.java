@@ -4,6 +4,11 @@ import static convex.test.Assertions.assertNobodyError;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -12,9 +17,12 @@ import convex.core.data.PeerStatus;
 import convex.core.data.RecordTest;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadSignatureException;
+import convex.core.exceptions.InvalidDataException;
+import convex.core.init.Init;
 import convex.core.init.InitTest;
 import convex.core.lang.RT;
 import convex.core.lang.Reader;
+import convex.core.transactions.Invoke;
 import convex.test.Samples;
 
 public class PeerTest {
@@ -50,6 +58,38 @@ public class PeerTest {
 		
 	}
 
+	@Test
+	public void testDeferredExecution() throws BadSignatureException, InvalidDataException {
+		// single peer, so it can reach consensus alone
+		State s = Init.createState(List.of(InitTest.FIRST_PEER_KEY));
+		Peer p = Peer.create(InitTest.FIRST_PEER_KEYPAIR, s).withDeferredExecution(true);
+		assertTrue(p.isExecutionDeferred());
+
+		Invoke t = Invoke.create(InitTest.HERO, 1, "(def x 17)");
+		Block bl0 = Block.of(p.getTimeStamp(), p.getPeerKey(), p.sign(t));
+		p = p.proposeBlock(bl0);
+		for (int i = 0; (i < 10) && (p.getConsensusPoint() == 0); i++) {
+			p = p.mergeBeliefs(p.getBelief());
+		}
+		assertEquals(1, p.getConsensusPoint());
+
+		// consensus reached, but Block not yet executed
+		assertEquals(0, p.getExecutedPoint());
+		assertSame(s, p.getConsensusState());
+		assertThrows(IllegalStateException.class, () -> Peer.create(InitTest.FIRST_PEER_KEYPAIR, s).appendBlockResult(null));
+
+		// execution gives the same result as an undeferred Peer
+		BlockResult br = p.getConsensusState().applyBlock(p.getPeerOrder().getBlock(0));
+		p = p.appendBlockResult(br);
+		assertEquals(1, p.getExecutedPoint());
+		assertSame(br.getState(), p.getConsensusState());
+		assertEquals(RT.cvm(17L), p.executeQuery(Reader.read("x"), InitTest.HERO).getResult());
+		assertEquals(br.getResult(0), p.getResult(0, 0));
+
+		Peer q = p.withDeferredExecution(false);
+		assertThrows(IllegalStateException.class, () -> q.appendBlockResult(br));
+	}
+
 	@Test
 	public void testQuery() throws BadSignatureException {
 		Peer p = Peer.create(InitTest.FIRST_PEER_KEYPAIR, STATE);
@@ -5,10 +5,13 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.HashMap;
+
 import org.junit.jupiter.api.Test;
 
 import convex.core.data.ACell;
 import convex.core.data.AVector;
+import convex.core.data.AccountKey;
 import convex.core.data.AccountStatus;
 import convex.core.data.Blob;
 import convex.core.data.Format;
@@ -44,6 +47,25 @@ public class StateTest {
 		RecordTest.doRecordTests(s);
 	}
 
+	@Test
+	public void testStakeTable() {
+		State s = INIT_STATE;
+		StakeTable st = s.getStakeTable();
+		assertSame(st, s.getStakeTable());
+		assertEquals(s.getPeers().count(), st.size());
+
+		HashMap<AccountKey, Double> stakes = s.computeStakes();
+		assertEquals(stakes.get(null), st.getTotalStake());
+		for (int i = 0; i < st.size(); i++) {
+			AccountKey key = st.getKey(i);
+			assertEquals(i, st.indexOf(key));
+			assertEquals(stakes.get(key), st.getStake(key));
+			assertEquals(s.getPeer(key).getTotalStake(), (long) st.getStake(i));
+		}
+		assertEquals(-1, st.indexOf(AccountKey.ZERO));
+		assertEquals(0.0, st.getStake(AccountKey.ZERO));
+	}
+
 	@Test
 	public void testRoundTrip() throws BadFormatException {
 		State s = INIT_STATE;
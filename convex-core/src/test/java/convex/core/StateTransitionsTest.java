@@ -7,6 +7,8 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.ArrayList;
+
 import org.junit.jupiter.api.Test;
 
 import convex.core.crypto.AKeyPair;
@@ -21,6 +23,7 @@ import convex.core.data.BlobMap;
 import convex.core.data.SignedData;
 import convex.core.data.Vectors;
 import convex.core.exceptions.BadSignatureException;
+import convex.core.init.Init;
 import convex.core.init.InitTest;
 import convex.core.lang.Juice;
 import convex.core.lang.Reader;
@@ -28,6 +31,7 @@ import convex.core.lang.TestState;
 import convex.core.transactions.ATransaction;
 import convex.core.transactions.Invoke;
 import convex.core.transactions.Transfer;
+import convex.core.util.Counters;
 import convex.core.util.Utils;
 
 /**
@@ -315,4 +319,139 @@ public class StateTransitionsTest {
 
 	}
 
+	/**
+	 * Genesis State with a fresh Account for each genesis peer, as targets for transfers
+	 */
+	private static final class TransferTargets {
+		final State state;
+		final Address[] fresh;
+
+		TransferTargets(State state, Address[] fresh) {
+			this.state = state;
+			this.fresh = fresh;
+		}
+	}
+
+	/**
+	 * Creates the fresh target Accounts in a Block one tick after genesis, using sequence
+	 * numbers 1 to n for the HERO account.
+	 */
+	private TransferTargets createTransferTargets() {
+		State s = InitTest.STATE;
+		AKeyPair heroKP = InitTest.HERO_KEYPAIR;
+		long ts = s.getTimeStamp().longValue();
+		int np = InitTest.KEYPAIRS.length;
+
+		ArrayList<SignedData<ATransaction>> setup = new ArrayList<>();
+		for (int i = 0; i < np; i++) {
+			setup.add(heroKP.signData(Invoke.create(InitTest.HERO, i + 1, "(create-account *key*)")));
+		}
+		BlockResult sbr = s.applyBlock(Block.create(ts + 1, setup, FIRST_PEER_KEY));
+		Address[] fresh = new Address[np];
+		for (int i = 0; i < np; i++) {
+			assertFalse(sbr.isError(i), sbr.getResult(i).toString());
+			fresh[i] = (Address) sbr.getResult(i).getValue();
+		}
+		return new TransferTargets(sbr.getState(), fresh);
+	}
+
+	@Test
+	public void testParallelExecution() throws BadSignatureException {
+		AKeyPair heroKP = InitTest.HERO_KEYPAIR;
+		long ts = InitTest.STATE.getTimeStamp().longValue();
+		int np = InitTest.KEYPAIRS.length;
+		TransferTargets targets = createTransferTargets();
+		State s = targets.state;
+		Address[] fresh = targets.fresh;
+
+		// independent transfers and invokes from different accounts
+		ArrayList<SignedData<ATransaction>> txs = new ArrayList<>();
+		for (int i = 1; i < np; i++) {
+			Address peer = Init.getGenesisPeerAddress(i);
+			txs.add(InitTest.KEYPAIRS[i].signData(Transfer.create(peer, 1, fresh[i], 1000 * i)));
+		}
+		txs.add(heroKP.signData(Invoke.create(InitTest.HERO, np + 1, "(def x 1)")));
+
+		// conflicting with earlier transactions in the Block
+		txs.add(heroKP.signData(Invoke.create(InitTest.HERO, np + 2, "(transfer " + fresh[0] + " 100)")));
+		txs.add(InitTest.KEYPAIRS[1].signData(Transfer.create(Init.getGenesisPeerAddress(1), 2, fresh[1], 17)));
+		txs.add(InitTest.KEYPAIRS[2].signData(Invoke.create(Init.getGenesisPeerAddress(2), 2, "(balance " + fresh[3] + ")")));
+
+		// failures, and transactions that must run sequentially
+		txs.add(InitTest.KEYPAIRS[3].signData(Transfer.create(Init.getGenesisPeerAddress(3), 7, fresh[0], 1)));
+		txs.add(InitTest.KEYPAIRS[4].signData(Invoke.create(Init.getGenesisPeerAddress(4), 2, "(deploy '(def a 1))")));
+		txs.add(InitTest.KEYPAIRS[5].signData(Invoke.create(Init.getGenesisPeerAddress(5), 2, "(count (keys *state*))")));
+		txs.add(InitTest.KEYPAIRS[6].signData(Invoke.create(Init.getGenesisPeerAddress(6), 2, "(fail :foo)")));
+		txs.add(InitTest.KEYPAIRS[7].signData(Invoke.create(Init.getGenesisPeerAddress(7), 2, "*timestamp*")));
+
+		Block b = Block.create(ts + 2, txs, FIRST_PEER_KEY);
+		long commits = Counters.parallelCommit;
+		BlockResult expected = s.applyBlock(b);
+		BlockResult br = s.applyBlockParallel(b);
+		assertEquals(expected.getResults(), br.getResults());
+		assertEquals(expected.getState(), br.getState());
+		assertEquals(expected, br);
+
+		// independent transactions should not need re-execution
+		assertTrue(Counters.parallelCommit - commits >= np);
+		assertEquals(ErrorCodes.SEQUENCE, br.getResult(np + 3).getErrorCode());
+		assertEquals(ErrorCodes.ASSERT, br.getResult(np + 6).getErrorCode());
+		assertEquals(1000L + 17L + s.getBalance(fresh[1]), br.getState().getBalance(fresh[1]));
+	}
+
+	@Test
+	public void testScheduledExecution() throws BadSignatureException {
+		AKeyPair heroKP = InitTest.HERO_KEYPAIR;
+		long ts = InitTest.STATE.getTimeStamp().longValue();
+		int np = InitTest.KEYPAIRS.length;
+		TransferTargets targets = createTransferTargets();
+		State s = targets.state;
+		Address[] fresh = targets.fresh;
+
+		// rounds of payments from each genesis peer, each round is a wave of independent transfers
+		int ROUNDS = 4;
+		ArrayList<SignedData<ATransaction>> txs = new ArrayList<>();
+		for (int r = 0; r < ROUNDS; r++) {
+			for (int i = 1; i < np; i++) {
+				Address peer = Init.getGenesisPeerAddress(i);
+				txs.add(InitTest.KEYPAIRS[i].signData(Transfer.create(peer, r + 1, fresh[(i + r) % np], 100 + r)));
+			}
+			if (r == 1) {
+				// barriers between waves: CVM code, and a transfer to an Actor
+				txs.add(heroKP.signData(Invoke.create(InitTest.HERO, np + 1, "(def x *balance*)")));
+				txs.add(heroKP.signData(Transfer.create(InitTest.HERO, np + 2, Init.CORE_ADDRESS, 10)));
+			}
+		}
+		// a transaction that fails its sequence check
+		txs.add(InitTest.KEYPAIRS[1].signData(Transfer.create(Init.getGenesisPeerAddress(1), 99, fresh[0], 1)));
+
+		Block b = Block.create(ts + 2, txs, FIRST_PEER_KEY);
+		assertEquals(np - 1, BlockScheduler.nextWave(s, b.getTransactions(), 0));
+		assertEquals(2 * (np - 1), BlockScheduler.nextWave(s, b.getTransactions(), np - 1));
+		assertEquals(2 * (np - 1) + 1, BlockScheduler.nextWave(s, b.getTransactions(), 2 * (np - 1)));
+
+		BlockResult expected = s.applyBlock(b);
+		BlockResult br = s.applyBlockScheduled(b);
+		assertEquals(expected.getResults(), br.getResults());
+		assertEquals(expected.getState(), br.getState());
+		assertEquals(expected, br);
+
+		// every payment in a wave succeeds, and lands in the target account
+		assertEquals(ErrorCodes.SEQUENCE, br.getResult(txs.size() - 1).getErrorCode());
+		for (int i = 0; i < txs.size() - 1; i++) {
+			if (txs.get(i).getValue() instanceof Invoke) continue;
+			Transfer t = (Transfer) txs.get(i).getValue();
+			if (Init.CORE_ADDRESS.equals(t.getTarget())) continue;
+			assertFalse(br.isError(i), br.getResult(i).toString());
+		}
+		for (int j = 0; j < np; j++) {
+			long received = 0;
+			for (int r = 0; r < ROUNDS; r++) {
+				int i = Math.floorMod(j - r, np);
+				if (i != 0) received += 100 + r;
+			}
+			assertEquals(s.getBalance(fresh[j]) + received, br.getState().getBalance(fresh[j]));
+		}
+	}
+
 }
@@ -2,15 +2,22 @@ package convex.core;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
 import convex.core.data.Address;
+import convex.core.data.Vectors;
+import convex.core.init.Init;
 import convex.core.init.InitTest;
 import convex.core.lang.ACVMTest;
 import convex.core.lang.Context;
 import convex.core.lang.Juice;
+import convex.core.lang.Symbols;
 import convex.core.transactions.ATransaction;
+import convex.core.transactions.AccessSet;
+import convex.core.transactions.Call;
+import convex.core.transactions.Invoke;
 import convex.core.transactions.Transfer;
 
 /**
@@ -45,5 +52,31 @@ public class TransactionTest extends ACVMTest {
 		assertEquals(1000+expectedFees,state().getAccount(HERO).getBalance()-s.getAccount(HERO).getBalance());
 		assertEquals(expectedFees,s.getGlobalFees().longValue());
 	}
+	
+	@Test
+	public void testAccessSets() {
+		State s=state();
+		
+		// transfers between user accounts are exact
+		AccessSet as=Transfer.create(VILLAIN, 1, HERO, 1000).getAccessSet(s);
+		assertEquals(2,as.count());
+		assertEquals(HERO,as.get(0));
+		assertTrue(as.contains(VILLAIN));
+		assertFalse(as.contains(Init.CORE_ADDRESS));
+		assertEquals(1,Transfer.create(HERO, 1, HERO, 1000).getAccessSet(s).count());
+		
+		// transfers to actors may run arbitrary code
+		assertTrue(Transfer.create(HERO, 1, Init.CORE_ADDRESS, 1000).getAccessSet(s).isAll());
+		
+		// transactions running CVM code are conservative
+		assertTrue(Invoke.create(HERO, 1, "(+ 1 2)").getAccessSet(s).isAll());
+		assertTrue(Call.create(HERO, 1, Init.REGISTRY_ADDRESS, Symbols.REGISTER, Vectors.empty()).getAccessSet(s).isAll());
+		
+		Address other=Init.CORE_ADDRESS;
+		assertFalse(as.intersects(AccessSet.of(other)));
+		assertTrue(as.intersects(AccessSet.of(other,HERO)));
+		assertTrue(as.intersects(AccessSet.ALL));
+		assertTrue(AccessSet.ALL.contains(other));
+	}
 
 }
@@ -20,9 +20,11 @@ import java.util.Base64;
 
 import org.junit.jupiter.api.Test;
 
+import convex.core.data.ABlob;
 import convex.core.data.ACell;
 import convex.core.data.AccountKey;
 import convex.core.data.Blob;
+import convex.core.data.Hash;
 import convex.core.data.SignedData;
 import convex.core.exceptions.BadFormatException;
 import convex.core.exceptions.InvalidDataException;
@@ -30,6 +32,31 @@ import convex.core.lang.RT;
 
 public class Ed25519Test {
 
+	@Test
+	public void testBatchVerify() {
+		AKeyPair kp=Ed25519KeyPair.createSeeded(1234);
+		int n=20;
+		ABlob[] messages=new ABlob[n];
+		AccountKey[] keys=new AccountKey[n];
+		ASignature[] sigs=new ASignature[n];
+		for (int i=0; i<n; i++) {
+			Hash msg=Blob.wrap(new byte[] {(byte)i,1,2,3}).getHash();
+			messages[i]=msg;
+			keys[i]=kp.getAccountKey();
+			sigs[i]=kp.sign(msg);
+		}
+		messages[7]=Blob.wrap(new byte[] {9,9,9}).getHash(); // wrong message
+		sigs[11]=Ed25519Signature.ZERO;
+		
+		boolean[] results=ASignature.verifyBatch(messages, keys, sigs);
+		for (int i=0; i<n; i++) {
+			assertEquals((i!=7)&&(i!=11),results[i]);
+		}
+		
+		assertEquals(0,ASignature.verifyBatch(new ABlob[0], new AccountKey[0], new ASignature[0]).length);
+		assertThrows(IllegalArgumentException.class,()->ASignature.verifyBatch(messages, new AccountKey[1], sigs));
+	}
+
 	@Test
 	public void testKeyGen() {
 		AKeyPair kp1=Ed25519KeyPair.generate();
@@ -0,0 +1,42 @@
+package convex.core.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.data.Blob;
+import convex.core.data.Hash;
+
+public class SignatureCacheTest {
+
+	private static Hash hash(int i) {
+		return Blob.wrap(new byte[] {(byte)(i>>8),(byte)i}).getHash();
+	}
+
+	@Test
+	public void testCache() {
+		SignatureCache cache=SignatureCache.create(100);
+		assertFalse(cache.isVerified(hash(1)));
+		cache.add(hash(1));
+		assertTrue(cache.isVerified(hash(1)));
+
+		cache.clear();
+		assertFalse(cache.isVerified(hash(1)));
+	}
+
+	@Test
+	public void testBounded() {
+		SignatureCache cache=SignatureCache.create(100);
+		cache.add(hash(0));
+		for (int i=1; i<1000; i++) {
+			cache.add(hash(i));
+			assertTrue(cache.size()<=100);
+
+			// frequently used entry should survive
+			assertTrue(cache.isVerified(hash(0)));
+		}
+		assertFalse(cache.isVerified(hash(1)));
+		assertTrue(cache.isVerified(hash(999)));
+	}
+}
@@ -0,0 +1,104 @@
+package convex.core.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.store.AStore;
+import convex.core.store.MemoryStore;
+import convex.core.store.Stores;
+import etch.EtchStore;
+
+public class RefTreeWalkerTest {
+
+	/**
+	 * Builds a deeply nested structure that would overflow the stack with recursive traversal
+	 */
+	private static AVector<ACell> createDeep(int depth) {
+		Random r=new Random(123);
+		AVector<ACell> v=Vectors.empty();
+		for (int i=0; i<depth; i++) {
+			v=Vectors.of(Blob.createRandom(r, 100),v);
+			v.getHash(); // compute hashes incrementally
+		}
+		return v;
+	}
+
+	private static class CountingWalker extends RefTreeWalker {
+		@Override
+		protected Ref<ACell> visit(Ref<ACell> ref, boolean isRoot) {
+			return null;
+		}
+
+		@Override
+		protected Ref<ACell> complete(Ref<ACell> ref, ACell cell, boolean isRoot) {
+			return ref;
+		}
+	}
+
+	@Test
+	public void testSharedSubtrees() {
+		AVector<ACell> shared=Vectors.of(Blob.createRandom(new Random(), 100));
+		AVector<ACell> v=Vectors.of(shared,shared,shared);
+		CountingWalker walker=new CountingWalker();
+		Ref<AVector<ACell>> ref=v.getRef();
+		assertSame(ref,walker.walk(ref));
+
+		// root, shared vector and blob, each only once since shared Refs are identical
+		assertTrue(walker.getCount()<=5);
+	}
+
+	@Test
+	public void testProgress() {
+		AVector<ACell> v=createDeep(1000);
+		ArrayList<Long> reports=new ArrayList<>();
+		CountingWalker walker=new CountingWalker();
+		walker.withProgress(n->reports.add(n), 100);
+		walker.walk(v.getRef());
+		assertEquals(walker.getCount()/100,reports.size());
+		assertEquals(100L,reports.get(0));
+	}
+
+	@Test
+	public void testDeepPersist() {
+		AVector<ACell> v=createDeep(20000);
+		AStore oldStore=Stores.current();
+		try {
+			MemoryStore ms=new MemoryStore();
+			Stores.setCurrent(ms);
+			Ref<AVector<ACell>> mr=v.getRef().persist();
+			assertEquals(Ref.PERSISTED,mr.getStatus());
+			assertEquals(v,ms.refForHash(v.getHash()).getValue());
+
+			EtchStore es=EtchStore.createTemp();
+			Stores.setCurrent(es);
+			Ref<AVector<ACell>> er=v.getRef().persist();
+			assertEquals(Ref.PERSISTED,er.getStatus());
+			assertEquals(Ref.PERSISTED,es.refForHash(v.getHash()).getStatus());
+
+			// nothing missing once persisted
+			HashSet<Hash> missing=new HashSet<>();
+			Ref.forHash(v.getHash()).findMissing(missing);
+			assertTrue(missing.isEmpty());
+		} finally {
+			Stores.setCurrent(oldStore);
+		}
+	}
+
+	@Test
+	public void testDeepFindMissing() {
+		AVector<ACell> v=createDeep(20000);
+		HashSet<Hash> missing=new HashSet<>();
+		v.getRef().findMissing(missing);
+		assertTrue(missing.isEmpty());
+
+		// accumulate without overflowing the stack: one vector and one blob per level, plus the empty vector
+		assertEquals(40001,Ref.accumulateRefSet(v.getRef()).size());
+	}
+}
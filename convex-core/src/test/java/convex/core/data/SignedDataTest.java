@@ -15,6 +15,7 @@ import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadSignatureException;
 import convex.core.init.InitTest;
 import convex.core.lang.RT;
+import convex.core.util.Counters;
 import convex.test.Samples;
 
 public class SignedDataTest {
@@ -80,6 +81,50 @@ public class SignedDataTest {
 		assertTrue(sd1.checkSignature());
 	}
 
+	@Test
+	public void testCheckSignatures() {
+		AKeyPair kp = InitTest.HERO_KEYPAIR;
+		java.util.ArrayList<SignedData<CVMLong>> items=new java.util.ArrayList<>();
+		for (int i=0; i<20; i++) {
+			CVMLong v=RT.cvm(i);
+			// create unverified copies of good signatures
+			SignedData<CVMLong> good=kp.signData(v);
+			items.add(SignedData.create(good.getAccountKey(), good.getSignature(), v.getRef()));
+		}
+		assertFalse(items.get(0).isSignatureChecked());
+		assertTrue(SignedData.checkSignatures(items));
+		for (SignedData<CVMLong> sd: items) {
+			assertTrue(sd.isSignatureChecked());
+			assertTrue(sd.checkSignature());
+		}
+
+		// one bad signature in the batch
+		SignedData<CVMLong> bad = SignedData.create(Samples.BAD_ACCOUNTKEY, Samples.BAD_SIGNATURE, RT.cvm(13L).getRef());
+		items.add(bad);
+		items.add(null);
+		assertFalse(SignedData.checkSignatures(items));
+		assertTrue(bad.isSignatureChecked());
+		assertFalse(bad.checkSignature());
+	}
+
+	@Test
+	public void testGlobalSignatureCache() {
+		AKeyPair kp = InitTest.HERO_KEYPAIR;
+		AVector<CVMLong> v = Vectors.of(17L, 19L, 23L);
+		SignedData<AVector<CVMLong>> signed=kp.signData(v);
+		
+		// a re-decoded copy should be verified from the cache
+		SignedData<AVector<CVMLong>> copy=SignedData.create(signed.getAccountKey(), signed.getSignature(), v.getRef());
+		assertFalse(copy.isSignatureChecked());
+		long hits=Counters.signatureCacheHit;
+		assertTrue(copy.checkSignature());
+		assertEquals(hits+1,Counters.signatureCacheHit);
+		
+		// different signature for same value must not hit cache
+		SignedData<AVector<CVMLong>> forged=SignedData.create(signed.getAccountKey(), Samples.BAD_SIGNATURE, v.getRef());
+		assertFalse(forged.checkSignature());
+	}
+
 	@Test
 	public void testNullValueSignings() throws BadSignatureException {
 		SignedData<ACell> sd = SignedData.create(InitTest.HERO_KEYPAIR, null);
@@ -4,10 +4,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
@@ -30,6 +32,7 @@ import convex.core.data.Lists;
 import convex.core.data.Maps;
 import convex.core.data.Ref;
 import convex.core.data.Vectors;
+import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadFormatException;
 import convex.core.init.InitTest;
 import convex.core.lang.Symbols;
@@ -40,6 +43,7 @@ import convex.core.transactions.Invoke;
 import convex.core.transactions.Transfer;
 import convex.core.util.Utils;
 import convex.test.Samples;
+import etch.Etch;
 import etch.EtchStore;
 
 public class EtchStoreTest {
@@ -215,6 +219,180 @@ public class EtchStoreTest {
 		}
 	}
 
+	@Test
+	public void testStoreTree() {
+		AStore oldStore = Stores.current();
+		ArrayList<Ref<ACell>> al = new ArrayList<>();
+		try {
+			Stores.setCurrent(store);
+			Blob big=Blob.createRandom(new Random(), 200);
+			
+			// large vector with the same non-embedded Blob repeated, plus random elements
+			AVector<ACell> data=Vectors.empty();
+			for (int i=0; i<1000; i++) {
+				data=data.conj((i%10==0)?big:Blob.createRandom(new Random(), 100));
+			}
+			assertNull(store.refForHash(data.getHash()));
+			
+			Ref<AVector<ACell>> ref=store.storeTree(data.getRef(), Ref.PERSISTED, r->al.add(r));
+			assertEquals(data,ref.getValue());
+			assertTrue(ref.getStatus()>=Ref.PERSISTED);
+			
+			// root is last novelty, shared Blob is only stored once
+			int num=al.size();
+			assertEquals(data.getHash(), al.get(num-1).getHash());
+			assertEquals(1,al.stream().filter(r->r.getHash().equals(big.getHash())).count());
+			
+			// everything should be retrievable and persisted
+			Ref<ACell> stored=store.refForHash(data.getHash());
+			assertEquals(Ref.PERSISTED,stored.getStatus());
+			assertNotNull(store.refForHash(big.getHash()));
+			
+			// storing again should produce no novelty
+			store.storeTree(data.getRef(), Ref.PERSISTED, r->al.add(r));
+			assertEquals(num, al.size());
+		} finally {
+			Stores.setCurrent(oldStore);
+		}
+	}
+
+	@Test
+	public void testCompact() throws IOException {
+		File file=File.createTempFile("etch-compact",null);
+		file.deleteOnExit();
+		EtchStore es=EtchStore.create(file);
+		AStore oldStore = Stores.current();
+		try {
+			Stores.setCurrent(es);
+			AVector<Blob> live=Vectors.of(Blob.createRandom(new Random(), 200),Blob.createRandom(new Random(), 200));
+			AVector<Blob> extra=Vectors.of(Blob.createRandom(new Random(), 200));
+			ArrayList<Hash> garbage=new ArrayList<>();
+			ArrayList<Blob> garbageBlobs=new ArrayList<>();
+			for (int i=0; i<100; i++) {
+				Blob b=Blob.createRandom(new Random(), 1000);
+				ACell.createPersisted(b);
+				garbage.add(b.getHash());
+				garbageBlobs.add(b);
+			}
+			Ref<AVector<Blob>> liveRef=ACell.createPersisted(live);
+			ACell.createPersisted(extra);
+			es.setRootHash(liveRef.getHash());
+			long oldLength=file.length();
+			
+			long count=es.compact(extra.getHash());
+			assertEquals(5,count); // two vectors plus three non-embedded Blobs
+			assertEquals(liveRef.getHash(),es.getRootHash());
+			assertTrue(file.length()<oldLength);
+			
+			assertEquals(live,es.refForHash(live.getHash()).getValue());
+			assertNotNull(es.refForHash(live.get(1).getHash()));
+			assertEquals(Ref.PERSISTED,es.refForHash(live.getHash()).getStatus());
+			assertNotNull(es.refForHash(extra.getHash()));
+			for (Hash h: garbage) {
+				assertNull(es.refForHash(h));
+			}
+			
+			// removed cells are stored again, even though their Refs in memory are still persisted
+			Blob dropped=garbageBlobs.get(0);
+			assertEquals(Ref.PERSISTED,dropped.getRef().getStatus());
+			ACell.createPersisted(Vectors.of(dropped));
+			assertEquals(dropped,es.refForHash(dropped.getHash()).getValue());
+			
+			// store still usable after compaction, and survives reopening
+			AVector<Blob> more=Vectors.of(Blob.createRandom(new Random(), 100));
+			ACell.createPersisted(more);
+			es.close();
+			
+			EtchStore es2=EtchStore.create(file);
+			assertEquals(liveRef.getHash(),es2.getRootHash());
+			assertEquals(live,es2.refForHash(live.getHash()).getValue());
+			assertNotNull(es2.refForHash(more.getHash()));
+			es2.close();
+		} finally {
+			Stores.setCurrent(oldStore);
+		}
+	}
+
+	@Test
+	public void testSharded() throws IOException {
+		File dir=Files.createTempDirectory("etch-sharded").toFile();
+		dir.deleteOnExit();
+		EtchStore es=EtchStore.createSharded(dir, 4);
+		assertEquals(4,es.getShardCount());
+		assertEquals(dir,es.getFile());
+		
+		// large enough tree to write shards in parallel
+		AVector<CVMLong> v=Vectors.empty();
+		for (int i=0; i<10000; i++) v=v.conj(CVMLong.create(i));
+		Ref<AVector<CVMLong>> ref=es.storeTree(v.getRef(), Ref.PERSISTED, null);
+		assertEquals(v,ref.getValue());
+		es.setRootHash(v.getHash());
+		
+		File[] shardFiles=dir.listFiles();
+		assertEquals(4,shardFiles.length);
+		for (File f: shardFiles) {
+			f.deleteOnExit();
+		}
+		
+		assertEquals(Ref.PERSISTED,es.refForHash(v.getHash()).getStatus());
+		assertEquals(Ref.PERSISTED,es.refForHash(v.getRef(0).getHash()).getStatus());
+		
+		long count=es.compact();
+		assertTrue(count>v.getRefCount());
+		assertEquals(v,es.refForHash(v.getHash()).getValue());
+		assertEquals(4,dir.listFiles().length); // no temporary or backup files left
+		es.close();
+		
+		// reopen, shard count must match
+		assertThrows(IOException.class,()->EtchStore.createSharded(dir, 2));
+		EtchStore es2=EtchStore.createSharded(dir, 4);
+		assertEquals(v.getHash(),es2.getRootHash());
+		es2.setCacheSize(0);
+		Ref<AVector<CVMLong>> ref2=es2.refForHash(v.getHash());
+		AVector<CVMLong> v2=ref2.getValue();
+		AStore oldStore = Stores.current();
+		try {
+			Stores.setCurrent(es2);
+			assertEquals(v,v2);
+			assertEquals(CVMLong.create(9999),v2.get(9999));
+		} finally {
+			Stores.setCurrent(oldStore);
+		}
+		es2.close();
+		
+		// each cell is stored only in the shard selected by the leading bits of its hash
+		EtchStore[] shards=new EtchStore[4];
+		for (int i=0; i<4; i++) {
+			shards[i]=new EtchStore(Etch.create(new File(dir,"shard-"+i+".etch")));
+		}
+		ArrayList<ACell> cells=new ArrayList<>();
+		cells.add(v);
+		for (int j=0; j<v.getRefCount(); j++) {
+			ACell child=v.getRef(j).getValue();
+			cells.add(child);
+			for (int k=0; k<child.getRefCount(); k++) {
+				cells.add(child.getRef(k).getValue());
+			}
+		}
+		int[] counts=new int[4];
+		for (ACell c: cells) {
+			if (c.isEmbedded()) continue; // not stored separately
+			Hash h=c.getHash();
+			int expected=(h.byteAt(0)&0xFF)>>>6; // top 2 bits for 4 shards
+			for (int i=0; i<4; i++) {
+				assertEquals(i==expected,shards[i].refForHash(h)!=null);
+			}
+			counts[expected]++;
+		}
+		for (int shardCount: counts) {
+			assertTrue(shardCount>0);
+		}
+		assertEquals(v.getHash(),shards[0].getRootHash());
+		for (EtchStore shard: shards) {
+			shard.close();
+		}
+	}
+
 	@Test
 	public void testReopen() throws IOException {
 		File file=File.createTempFile("etch",null);
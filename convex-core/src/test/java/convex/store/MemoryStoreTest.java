@@ -111,4 +111,23 @@ public class MemoryStoreTest {
 			Stores.setCurrent(oldStore);
 		}
 	}
+
+	@Test
+	public void testStoreTree() {
+		MemoryStore ms = new MemoryStore();
+		ArrayList<Ref<ACell>> al = new ArrayList<>();
+		ACell data = Sets.of(Samples.INT_VECTOR_300,Samples.MAX_EMBEDDED_BLOB,Samples.INT_VECTOR_300); 
+		
+		Ref<ACell> ref=ms.storeTree(data.getRef(), Ref.PERSISTED, r->al.add(r));
+		assertEquals(data,ref.getValue());
+		assertTrue(ref.isDirect());
+		int num=al.size();
+		assertTrue(num>0);
+		assertEquals(data, al.get(num-1).getValue());
+		assertEquals(Ref.PERSISTED,ms.refForHash(data.getHash()).getStatus());
+		assertNotNull(ms.refForHash(Samples.INT_VECTOR_300.getHash()));
+		
+		ms.storeTree(data.getRef(), Ref.PERSISTED, r->al.add(r));
+		assertEquals(num, al.size()); // no new novelty
+	}
 }
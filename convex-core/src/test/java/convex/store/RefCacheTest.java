@@ -0,0 +1,106 @@
+package convex.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.Ref;
+import convex.core.data.Vectors;
+import convex.core.data.prim.CVMLong;
+import convex.core.store.RefCache;
+import etch.EtchStore;
+
+public class RefCacheTest {
+
+	private static Ref<ACell> makeRef(long i) {
+		AVector<CVMLong> v=Vectors.of(i,i+1,i+2);
+		return v.getRef();
+	}
+
+	@Test
+	public void testGetPut() {
+		RefCache cache=RefCache.create(100000);
+		Ref<ACell> r=makeRef(1);
+		assertNull(cache.get(r.getHash()));
+
+		cache.put(r);
+		assertSame(r,cache.get(r.getHash()));
+		assertEquals(1,cache.count());
+		assertEquals(RefCache.weigh(r.getValue()),cache.getWeight());
+
+		// update replaces Ref without changing weight
+		Ref<ACell> r2=r.withMinimumStatus(Ref.STORED);
+		cache.update(r2);
+		assertSame(r2,cache.get(r.getHash()));
+		assertEquals(1,cache.count());
+
+		cache.clear();
+		assertNull(cache.get(r.getHash()));
+		assertEquals(0,cache.getWeight());
+	}
+
+	@Test
+	public void testBounded() {
+		long max=20000;
+		RefCache cache=RefCache.create(max);
+		for (int i=0; i<1000; i++) {
+			cache.put(makeRef(i));
+			assertTrue(cache.getWeight()<=max);
+		}
+		assertTrue(cache.count()<1000);
+	}
+
+	@Test
+	public void testFrequentSurvivesScan() {
+		RefCache cache=RefCache.create(50000);
+
+		// build up frequency for a hot set of Refs
+		ArrayList<Ref<ACell>> hot=new ArrayList<>();
+		for (int i=0; i<20; i++) {
+			hot.add(makeRef(i*1000000L));
+		}
+		for (int j=0; j<10; j++) {
+			for (Ref<ACell> r: hot) {
+				if (cache.get(r.getHash())==null) cache.put(r);
+			}
+		}
+
+		// large scan of cold Refs, each used once
+		for (int i=0; i<5000; i++) {
+			cache.put(makeRef(i*3+1));
+		}
+
+		for (Ref<ACell> r: hot) {
+			assertNotNull(cache.get(r.getHash()));
+		}
+	}
+
+	@Test
+	public void testEtchStoreCache() {
+		EtchStore store=EtchStore.createTemp();
+		assertNotNull(store.getCache());
+		AVector<CVMLong> v=Vectors.of(1,2,3,4,5,6,7,8,9,10,11);
+		Ref<AVector<CVMLong>> stored=store.storeTopRef(v.getRef(), Ref.STORED, null);
+
+		Ref<ACell> r1=store.refForHash(stored.getHash());
+		Ref<ACell> r2=store.refForHash(stored.getHash());
+		assertSame(r1,r2);
+		assertEquals(v,r2.getValue());
+
+		// status upgrade should be visible through cache
+		store.storeTopRef(v.getRef(), Ref.PERSISTED, null);
+		assertEquals(Ref.PERSISTED,store.refForHash(stored.getHash()).getStatus());
+
+		store.setCacheSize(0);
+		assertNull(store.getCache());
+		assertEquals(v,store.refForHash(stored.getHash()).getValue());
+	}
+}
@@ -3,8 +3,12 @@ package etch.api;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
@@ -66,4 +70,82 @@ public class TestEtch {
 			}
 		}
 	}
+	
+	@Test
+	public void testGroupWrite() throws IOException {
+		Etch etch = Etch.createTempEtch();
+		int COUNT = 1000;
+		List<Ref<ACell>> refs=new ArrayList<>();
+		for (int i = 0; i < COUNT; i++) {
+			AVector<CVMLong> v=Vectors.of(i,"group");
+			refs.add(v.getRef());
+		}
+		
+		List<Ref<ACell>> results=etch.writeAll(refs);
+		assertEquals(COUNT,results.size());
+		
+		for (int i = 0; i < COUNT; i++) {
+			Ref<ACell> r=refs.get(i);
+			assertEquals(r.getHash(),results.get(i).getHash());
+			assertEquals(r.getValue(),etch.read(r.getHash()).getValue());
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testConcurrentReads() throws Exception {
+		Etch etch = Etch.createTempEtch();
+		int COUNT = 20000;
+		int READERS = 4;
+		
+		AVector<CVMLong>[] values=new AVector[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			values[i]=Vectors.of(i,"concurrent");
+		}
+		
+		// number of values written so far, readers only check these
+		AtomicInteger written=new AtomicInteger(0);
+		AtomicInteger failures=new AtomicInteger(0);
+		
+		Thread writer=new Thread(()->{
+			try {
+				for (int i = 0; i < COUNT; i++) {
+					etch.write(values[i].getHash(), values[i].getRef());
+					written.set(i+1);
+				}
+			} catch (IOException e) {
+				failures.incrementAndGet();
+			}
+		});
+		
+		ArrayList<Thread> readers=new ArrayList<>();
+		for (int t=0; t<READERS; t++) {
+			final int seed=t;
+			Thread reader=new Thread(()->{
+				try {
+					int n=0;
+					while (written.get()<COUNT) {
+						int limit=written.get();
+						if (limit==0) continue;
+						int ix=(int)((n++*7919L+seed)%limit);
+						Ref<ACell> r=etch.read(values[ix].getHash());
+						if ((r==null)||!values[ix].equals(r.getValue())) failures.incrementAndGet();
+					}
+				} catch (IOException e) {
+					failures.incrementAndGet();
+				}
+			});
+			readers.add(reader);
+		}
+		
+		writer.start();
+		for (Thread r: readers) r.start();
+		writer.join();
+		for (Thread r: readers) r.join();
+		
+		assertEquals(0,failures.get());
+		for (int i = 0; i < COUNT; i++) {
+			assertTrue(etch.read(values[i].getHash())!=null);
+		}
+	}
 }
@@ -67,7 +67,8 @@ public class BlockViewComponent extends JPanel {
 			g.setColor(c);
 			g.fillRect(x + 1, 1, W - 2, W - 2);
 
-			if (c == Color.green) {
+			// consensus Blocks may not be executed yet
+			if ((c == Color.green) && (i + 1 < p.getStates().count())) {
 				g.setColor(Color.black);
 				State s = p.getStates().get(i + 1);
 				for (int j = 0; j < 6; j++) {
@@ -2,9 +2,12 @@ package convex.api;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -85,13 +88,22 @@ public class Convex {
 	/**
 	 * Sequence number for this client, or null if not yet known
 	 */
-	protected Long sequence = null;
+	protected volatile Long sequence = null;
 
-	private HashMap<Long, CompletableFuture<Result>> awaiting = new HashMap<>();
+	/**
+	 * Futures awaiting Results, keyed by message ID. Concurrent, so that requests can be
+	 * sent from any thread and completed on the network thread without locking.
+	 */
+	private final ConcurrentHashMap<Long, CompletableFuture<Result>> awaiting = new ConcurrentHashMap<>();
+
+	/**
+	 * Time after which requests awaiting Results fail with a TimeoutException (ms)
+	 */
+	private long timeout = Constants.DEFAULT_CLIENT_TIMEOUT;
 
 	private final Consumer<Message> internalHandler = new ResultConsumer() {
 		@Override
-		protected synchronized void handleResultMessage(Message m) {
+		protected void handleResultMessage(Message m) {
 			Result v = m.getPayload();
 
 			if ((v!=null)&&(ErrorCodes.SEQUENCE.equals(v.getErrorCode()))) {
@@ -99,23 +111,22 @@ public class Convex {
 				sequence=null;
 			}
 			long id = m.getID().longValue();
-			synchronized (awaiting) {
-				CompletableFuture<Result> cf = awaiting.get(id);
-				if (cf != null) {
-					awaiting.remove(id);
-					cf.complete(v);
-				} else {
-					log.warn(
-							"Ignored Result received for unexpected message ID: {}", id);
-				}
+			CompletableFuture<Result> cf = awaiting.remove(id);
+			if (cf != null) {
+				cf.complete(v);
+			} else {
+				log.warn("Ignored Result received for unexpected message ID: {}", id);
 			}
-
 		}
 
 		@Override
 		public void accept(Message m) {
 			super.accept(m);
 
+			for (StateSync sync : syncs) {
+				sync.accept(m);
+			}
+
 			if (delegatedHandler != null) {
 				try {
 					delegatedHandler.accept(m);
@@ -128,6 +139,11 @@ public class Convex {
 
 	private Consumer<Message> delegatedHandler = null;
 
+	/**
+	 * State syncs in progress, which receive all data messages
+	 */
+	private final CopyOnWriteArrayList<StateSync> syncs = new CopyOnWriteArrayList<>();
+
 	private Convex(Address address, AKeyPair keyPair) {
 		this.keyPair = keyPair;
 		this.address = address;
@@ -342,7 +358,15 @@ public class Convex {
 	 * @return A Future for the result of the transaction
 	 * @throws IOException If the connection is broken, or the send buffer is full
 	 */
-	public synchronized CompletableFuture<Result> transact(ATransaction transaction) throws IOException {
+	public CompletableFuture<Result> transact(ATransaction transaction) throws IOException {
+		return transact(transaction, timeout);
+	}
+
+	/**
+	 * Prepares, signs and sends a transaction. Synchronized so that transactions are sent in
+	 * the order their sequence numbers are allocated.
+	 */
+	private synchronized CompletableFuture<Result> transact(ATransaction transaction, long timeoutMillis) throws IOException {
 		if (autoSequence || (transaction.getSequence() <= 0)) {
 			transaction = applyNextSequence(transaction);
 		}
@@ -350,7 +374,7 @@ public class Convex {
 			transaction = transaction.withAddress(address);
 		}
 		SignedData<ATransaction> signed = keyPair.signData(transaction);
-		return transact(signed);
+		return transact(signed, timeoutMillis);
 	}
 
 	/**
@@ -361,31 +385,77 @@ public class Convex {
 	 * @return A Future for the result of the transaction
 	 * @throws IOException If the connection is broken
 	 */
-	public synchronized CompletableFuture<Result> transact(SignedData<ATransaction> signed) throws IOException {
-		CompletableFuture<Result> cf = new CompletableFuture<Result>();
-		
-		long id = -1;
-				
-		// loop until request is queued
-		while (id < 0) {
-			id = connection.sendTransaction(signed);
-			if (id<0) {
+	public CompletableFuture<Result> transact(SignedData<ATransaction> signed) throws IOException {
+		return transact(signed, timeout);
+	}
+
+	private CompletableFuture<Result> transact(SignedData<ATransaction> signed, long timeoutMillis) throws IOException {
+		// Register future before sending, so the result can't arrive first
+		long id = Connection.getNextID();
+		CompletableFuture<Result> cf = awaitResult(id, timeoutMillis);
+		try {
+			// loop until request is queued. Only waits if the send buffer is full.
+			while (!connection.sendTransaction(id, signed)) {
 				try {
 					Thread.sleep(1);
 				} catch (InterruptedException e) {
 					// Ignore
 				}
 			}
+		} catch (IOException e) {
+			awaiting.remove(id);
+			throw e;
 		}
+		return cf;
+	}
 
-		// Store future for completion by result message
-		synchronized (awaiting) {
-			awaiting.put(id, cf);
-		}
-
+	/**
+	 * Registers a future for the Result of a request, which fails with a TimeoutException
+	 * if no Result is received in time.
+	 *
+	 * @param id Message ID of request
+	 * @param timeoutMillis Timeout in milliseconds
+	 * @return Future for the Result
+	 */
+	CompletableFuture<Result> awaitResult(long id, long timeoutMillis) {
+		CompletableFuture<Result> cf = new CompletableFuture<Result>();
+		awaiting.put(id, cf);
+		TimeoutWheel.getShared().schedule(timeoutMillis, () -> {
+			if (awaiting.remove(id, cf)) {
+				cf.completeExceptionally(new TimeoutException("No result for request " + id + " after " + timeoutMillis + "ms"));
+			}
+		});
 		return cf;
 	}
 
+	/**
+	 * Fails a request registered with awaitResult, e.g. if it could not be sent
+	 *
+	 * @param id Message ID of request
+	 * @param e Cause of failure
+	 */
+	void failResult(long id, Throwable e) {
+		CompletableFuture<Result> cf = awaiting.remove(id);
+		if (cf != null) cf.completeExceptionally(e);
+	}
+
+	/**
+	 * Waits for a Result from a future returned by this client
+	 */
+	private static Result awaitSync(Future<Result> cf, long timeoutMillis) throws TimeoutException, IOException {
+		try {
+			return cf.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof TimeoutException) throw (TimeoutException) cause;
+			if (cause instanceof IOException) throw (IOException) cause;
+			throw new Error("Unexpected failure awaiting result", cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while awaiting result", e);
+		}
+	}
+
 	/**
 	 * Submits a transfer transaction to the Convex network, returning a future once
 	 * the transaction has been successfully queued.
@@ -457,17 +527,12 @@ public class Convex {
 		// sample time at start of transaction attempt
 		long start = Utils.getTimeMillis();
 
-		Future<Result> cf = transact(transaction);
+		Future<Result> cf = transact(transaction, timeout);
 
 		// adjust timeout if time elapsed to submit transaction
 		long now = Utils.getTimeMillis();
 		timeout = Math.max(0L, timeout - (now - start));
-		try {
-			Result r = cf.get(timeout, TimeUnit.MILLISECONDS);
-			return r;
-		} catch (InterruptedException | ExecutionException e) {
-			throw new Error("Not possible? Since there is no Thread for the future....", e);
-		}
+		return awaitSync(cf, timeout);
 	}
 
 	/**
@@ -486,16 +551,12 @@ public class Convex {
 		// sample time at start of transaction attempt
 		long start = Utils.getTimeMillis();
 
-		Future<Result> cf = transact(transaction);
+		Future<Result> cf = transact(transaction, timeout);
 
 		// adjust timeout if time elapsed to submit transaction
 		long now = Utils.getTimeMillis();
 		timeout = Math.max(0L, timeout - (now - start));
-		try {
-			return cf.get(timeout, TimeUnit.MILLISECONDS);
-		} catch (InterruptedException | ExecutionException e) {
-			throw new Error("Not possible? Since there is no Thread for the future....", e);
-		}
+		return awaitSync(cf, timeout);
 	}
 
 	/**
@@ -506,7 +567,7 @@ public class Convex {
 	 * @return A Future for the result of the query
 	 * @throws IOException If the connection is broken, or the send buffer is full
 	 */
-	public Future<Result> query(ACell query) throws IOException {
+	public CompletableFuture<Result> query(ACell query) throws IOException {
 		return query(query, getAddress());
 	}
 
@@ -553,14 +614,18 @@ public class Convex {
 							}
 							ref.findMissing(missingSet);
 						}
+						// send batched missing data requests until we fill pipeline
+						ArrayList<Hash> batch = new ArrayList<>();
+						int requests = 0;
 						for (Hash h : missingSet) {
-							// send missing data requests until we fill pipeline
-							log.debug( "Request missing data: {}" , h);
-							boolean sent = connection.sendMissingData(h);
-							if (!sent) {
-								log.debug("Send Queue full!");
-								break;
-							}
+							batch.add(h);
+							if (batch.size() < Constants.MAX_DATA_REQUEST_HASHES) continue;
+							if (!requestData(batch)) break;
+							batch.clear();
+							if (++requests >= ACQUIRE_REQUESTS_PER_ROUND) break;
+						}
+						if ((!batch.isEmpty()) && (requests < ACQUIRE_REQUESTS_PER_ROUND)) {
+							requestData(batch);
 						}
 						// if too low, can send multiple requests, and then block the peer
 						Thread.sleep(100);
@@ -591,6 +656,49 @@ public class Convex {
 		return f;
 	}
 
+	/**
+	 * Maximum number of batched data requests sent in each round of acquisition. Each
+	 * request may return up to the maximum data request budget of cells.
+	 */
+	private static final int ACQUIRE_REQUESTS_PER_ROUND = 4;
+
+	/**
+	 * Requests a batch of missing data, including cells below the requested cells.
+	 * @param hashes Hashes of missing cells
+	 * @return true if the request was sent, false if the send buffer is full
+	 * @throws IOException If an IO error occurs
+	 */
+	private boolean requestData(List<Hash> hashes) throws IOException {
+		log.debug("Request missing data for {} hashes", hashes.size());
+		boolean sent = connection.sendRequestData(hashes, Constants.MAX_DATA_REQUEST_BUDGET);
+		if (!sent) {
+			log.debug("Send Queue full!");
+		}
+		return sent;
+	}
+
+	/**
+	 * Syncs a complete persistent data structure, such as a State, for the given hash
+	 * from the remote peer into the given store. Data is streamed breadth first by a
+	 * StateSync and written directly to the store. Any part of the structure already
+	 * in the store is not requested again, so an interrupted sync can be resumed.
+	 *
+	 * Suitable for large structures, where {@link #acquire(Hash, AStore)} would
+	 * repeatedly walk the partially acquired data to find what is missing.
+	 *
+	 * @param hash Hash of value to sync.
+	 * @param store Store to sync the persistent data to.
+	 *
+	 * @return Future for the Cell being synced
+	 */
+	public <T extends ACell> Future<T> sync(Hash hash, AStore store) {
+		StateSync sync = StateSync.create(hash, store);
+		syncs.add(sync);
+		CompletableFuture<T> f = sync.start(connection);
+		f.whenComplete((v, e) -> syncs.remove(sync));
+		return f;
+	}
+
 	/**
 	 * Submits a status request to the Convex network peer, returning a Future once the
 	 * request has been successfully queued.
@@ -598,19 +706,13 @@ public class Convex {
 	 * @return A Future for the result of the requestStatus
 	 * @throws IOException If the connection is broken, or the send buffer is full
 	 */
-	public Future<Result> requestStatus() throws IOException {
-		CompletableFuture<Result> cf = new CompletableFuture<Result>();
-
-		synchronized (awaiting) {
-			long id = connection.sendStatusRequest();
-			if (id < 0) {
-				throw new IOException("Failed to send query due to full buffer");
-			}
-
-			// Store future for completion by result message
-			awaiting.put(id, cf);
+	public CompletableFuture<Result> requestStatus() throws IOException {
+		long id = Connection.getNextID();
+		CompletableFuture<Result> cf = awaitResult(id, timeout);
+		if (!connection.sendStatusRequest(id)) {
+			awaiting.remove(id);
+			throw new IOException("Failed to send status request due to full buffer");
 		}
-
 		return cf;
 	}
 
@@ -625,20 +727,14 @@ public class Convex {
 	 * @throws IOException if the connection fails.
 	 *
 	 */
-	public Future<Result> requestChallenge(SignedData<ACell> data) throws IOException {
-
-		CompletableFuture<Result> cf = new CompletableFuture<Result>();
-
-		synchronized (awaiting) {
-			long id = connection.sendChallenge(data);
-			if (id < 0) {
-				throw new IOException("Failed to send challenge due to full buffer");
-			}
-
-			// Store future for completion by result message
-			awaiting.put(id, cf);
+	public CompletableFuture<Result> requestChallenge(SignedData<ACell> data) throws IOException {
+		// Register future before sending, so the result can't arrive first
+		long id = Connection.getNextID();
+		CompletableFuture<Result> cf = awaitResult(id, timeout);
+		if (!connection.sendChallenge(id, data)) {
+			awaiting.remove(id);
+			throw new IOException("Failed to send challenge due to full buffer");
 		}
-
 		return cf;
 	}
 
@@ -652,19 +748,18 @@ public class Convex {
 	 * @return A Future for the result of the query
 	 * @throws IOException If the connection is broken, or the send buffer is full
 	 */
-	public Future<Result> query(ACell query, Address address) throws IOException {
-		CompletableFuture<Result> cf = new CompletableFuture<Result>();
-
-		synchronized (awaiting) {
-			long id = connection.sendQuery(query, address);
-			if (id < 0) {
-				throw new IOException("Failed to send query due to full buffer");
-			}
+	public CompletableFuture<Result> query(ACell query, Address address) throws IOException {
+		return query(query, address, timeout);
+	}
 
-			// Store future for completion by result message
-			awaiting.put(id, cf);
+	private CompletableFuture<Result> query(ACell query, Address address, long timeoutMillis) throws IOException {
+		// Register future before sending, so the result can't arrive first
+		long id = Connection.getNextID();
+		CompletableFuture<Result> cf = awaitResult(id, timeoutMillis);
+		if (!connection.sendQuery(id, query, address)) {
+			awaiting.remove(id);
+			throw new IOException("Failed to send query due to full buffer");
 		}
-
 		return cf;
 	}
 
@@ -718,13 +813,8 @@ public class Convex {
 	 * @throws IOException In case of network error
 	 */
 	public Result querySync(ACell query, Address address, long timeoutMillis) throws TimeoutException, IOException {
-		Future<Result> cf = query(query, address);
-
-		try {
-			return cf.get(timeoutMillis, TimeUnit.MILLISECONDS);
-		} catch (InterruptedException | ExecutionException e) {
-			throw new Error("Not possible? Since there is no Thread for the future....", e);
-		}
+		Future<Result> cf = query(query, address, timeoutMillis);
+		return awaitSync(cf, timeoutMillis);
 	}
 
 	/**
@@ -765,7 +855,40 @@ public class Convex {
 			c.close();
 		}
 		connection = null;
-		awaiting.clear();
+
+		// fail any requests still awaiting results, since they can no longer arrive
+		for (Long id : awaiting.keySet()) {
+			CompletableFuture<Result> cf = awaiting.remove(id);
+			if (cf != null) cf.completeExceptionally(new IOException("Connection closed"));
+		}
+	}
+
+	/**
+	 * Sets the timeout for requests made asynchronously by this client. Futures for requests 
+	 * fail with a TimeoutException if no Result is received within this time.
+	 *
+	 * @param timeoutMillis Timeout in milliseconds
+	 */
+	public void setTimeout(long timeoutMillis) {
+		this.timeout = timeoutMillis;
+	}
+
+	/**
+	 * Gets the timeout for requests made asynchronously by this client.
+	 *
+	 * @return Timeout in milliseconds
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Gets the number of requests sent by this client that are still awaiting Results
+	 *
+	 * @return Number of pending requests
+	 */
+	public int getPendingCount() {
+		return awaiting.size();
 	}
 	
 	@Override
@@ -821,7 +944,7 @@ public class Convex {
 			AVector<ACell> status=sF.get(Constants.DEFAULT_CLIENT_TIMEOUT, TimeUnit.MILLISECONDS).getValue();
 			Hash stateHash=RT.ensureHash(status.get(4));
 			if (stateHash==null) throw new Error("Bad status response from Peer");
-			return acquire(stateHash);
+			return sync(stateHash,Stores.current());
 		} catch (InterruptedException|ExecutionException|IOException e) {
 			throw Utils.sneakyThrow(e);
 		} 
@@ -0,0 +1,454 @@
+package convex.api;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.Constants;
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.Hash;
+import convex.core.data.Ref;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+import convex.net.Connection;
+import convex.net.Message;
+
+/**
+ * Streams a complete data structure, typically a State, from a remote peer into a local store.
+ *
+ * The cell tree is fetched breadth first. Missing cells are requested in batches with REQUEST_DATA
+ * messages, keeping a window of requests in flight. Each received cell is written straight to the
+ * store, and any of its children not already stored are queued for request. Cells not received
+ * within a timeout are requested again.
+ *
+ * Cells are promoted to PERSISTED incrementally: each stored cell tracks how many of its children
+ * are not yet persisted, and is persisted as soon as that count reaches zero, which may in turn
+ * complete its parents. Only incomplete cells are tracked, so memory use depends on the size of
+ * the frontier rather than the size of the whole structure.
+ *
+ * Sync is resumable: cells already in the store are never requested again, so a sync interrupted
+ * by a restart continues from whatever had been stored.
+ *
+ * Received DATA and DATA_BUNDLE messages must be passed to {@link #accept(Message)}.
+ */
+public class StateSync implements Consumer<Message> {
+
+	private static final Logger log = LoggerFactory.getLogger(StateSync.class.getName());
+
+	/**
+	 * Maximum number of requested cells awaiting delivery
+	 */
+	private static final int MAX_OUTSTANDING = 64 * Constants.MAX_DATA_REQUEST_HASHES;
+
+	/**
+	 * Time after which requested cells that have not arrived are requested again (ms)
+	 */
+	private static final long RETRY_TIMEOUT = 2000;
+
+	/**
+	 * Interval between progress reports (ms)
+	 */
+	private static final long REPORT_INTERVAL = 5000;
+
+	/**
+	 * Maximum time to wait for received cells before checking state again (ns)
+	 */
+	private static final long POLL_NANOS = 10000000L;
+
+	private final Hash rootHash;
+	private final AStore store;
+	private final CompletableFuture<ACell> result = new CompletableFuture<>();
+
+	/**
+	 * Cells received, awaiting processing by the sync thread
+	 */
+	private final ConcurrentLinkedQueue<ACell> received = new ConcurrentLinkedQueue<>();
+
+	private long stallTimeout = Constants.PEER_SYNC_TIMEOUT;
+
+	// The following are only accessed by the sync thread
+
+	private Connection connection;
+	private Thread thread;
+
+	/**
+	 * Hashes of missing cells waiting to be requested, in breadth first order
+	 */
+	private final ArrayDeque<Hash> frontier = new ArrayDeque<>();
+	private final HashSet<Hash> queued = new HashSet<>();
+
+	/**
+	 * Hashes of requested cells, with the time requested
+	 */
+	private final HashMap<Hash, Long> outstanding = new HashMap<>();
+
+	/**
+	 * Stored cells that are not yet persisted, with the number of child references still
+	 * awaiting persistence
+	 */
+	private final HashMap<Hash, Integer> pending = new HashMap<>();
+
+	/**
+	 * Incomplete cells, i.e. missing or not yet persisted, with the parents waiting on each.
+	 * A parent appears once for each reference it holds to the cell.
+	 */
+	private final HashMap<Hash, ArrayList<Hash>> parents = new HashMap<>();
+
+	private long startTime;
+	private long lastProgress;
+	private long lastReport;
+	private long lastRetryCheck;
+
+	private volatile long cellCount = 0;
+	private volatile long byteCount = 0;
+
+	private StateSync(Hash rootHash, AStore store) {
+		this.rootHash = rootHash;
+		this.store = store;
+	}
+
+	/**
+	 * Creates a StateSync for the given root hash.
+	 *
+	 * @param rootHash Hash of the root cell to acquire
+	 * @param store Store to write received cells to
+	 * @return New StateSync instance
+	 */
+	public static StateSync create(Hash rootHash, AStore store) {
+		return new StateSync(rootHash, store);
+	}
+
+	/**
+	 * Sets the time after which the sync fails if no requested cells are received.
+	 *
+	 * @param timeout Timeout in milliseconds
+	 * @return This StateSync instance
+	 */
+	public StateSync withStallTimeout(long timeout) {
+		this.stallTimeout = timeout;
+		return this;
+	}
+
+	/**
+	 * Starts the sync on a new thread, requesting data via the given connection.
+	 *
+	 * @param <T> Type of root value
+	 * @param connection Connection to a peer that holds the data
+	 * @return Future for the root value, completed once the full structure is persisted
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T extends ACell> CompletableFuture<T> start(Connection connection) {
+		if (thread != null) throw new IllegalStateException("State sync already started");
+		this.connection = connection;
+		thread = new Thread(this::run, "State sync for " + rootHash.toHexString(8));
+		thread.setDaemon(true);
+		thread.start();
+		return (CompletableFuture<T>) result;
+	}
+
+	/**
+	 * Accepts a received message. DATA and DATA_BUNDLE messages are queued for processing,
+	 * others are ignored.
+	 */
+	@Override
+	public void accept(Message m) {
+		switch (m.getType()) {
+		case DATA: {
+			ACell cell = m.getPayload();
+			if (cell != null) received.add(cell);
+			break;
+		}
+		case DATA_BUNDLE: {
+			AVector<ACell> cells = m.getPayload();
+			long n = cells.count();
+			for (long i = 0; i < n; i++) {
+				received.add(cells.get(i));
+			}
+			break;
+		}
+		default:
+			return;
+		}
+		Thread t = thread;
+		if (t != null) LockSupport.unpark(t);
+	}
+
+	private void run() {
+		AStore tempStore = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			startTime = System.currentTimeMillis();
+			lastProgress = startTime;
+			lastReport = startTime;
+			resume();
+
+			while (!result.isDone()) {
+				long now = System.currentTimeMillis();
+				processReceived(now);
+
+				if (frontier.isEmpty() && outstanding.isEmpty()) {
+					// nothing awaited but incomplete, e.g. store changed under us, so check again
+					log.debug("Rechecking sync of {} from stored cells", rootHash);
+					resume();
+					continue;
+				}
+
+				if (now - lastRetryCheck >= RETRY_TIMEOUT / 4) {
+					retryExpired(now);
+					lastRetryCheck = now;
+				}
+				sendRequests(now);
+
+				if (now - lastReport >= REPORT_INTERVAL) {
+					report(now);
+					lastReport = now;
+				}
+				if (now - lastProgress > stallTimeout) {
+					throw new TimeoutException("State sync stalled with " + outstanding.size() + " cells outstanding");
+				}
+
+				if (received.isEmpty()) LockSupport.parkNanos(POLL_NANOS);
+			}
+		} catch (Throwable t) {
+			log.warn("State sync for {} failed: {}", rootHash, t);
+			result.completeExceptionally(t);
+		} finally {
+			Stores.setCurrent(tempStore);
+		}
+	}
+
+	/**
+	 * Determines the initial set of incomplete cells from what is already stored
+	 */
+	private void resume() {
+		pending.clear();
+		parents.clear();
+		parents.put(rootHash, new ArrayList<>());
+		Ref<ACell> ref = store.refForHash(rootHash);
+		if (ref == null) {
+			enqueue(rootHash);
+			return;
+		}
+		track(ref);
+		if (!result.isDone()) {
+			log.info("Resuming sync of {} with {} missing cells", rootHash, frontier.size());
+		}
+	}
+
+	private void processReceived(long now) {
+		ACell cell;
+		while ((cell = received.poll()) != null) {
+			Ref<ACell> ref = Ref.get(cell);
+			Hash h = ref.getHash();
+
+			// only handle cells that we requested
+			if (outstanding.remove(h) == null) continue;
+			cellCount++;
+			byteCount += cell.getEncodingLength();
+			lastProgress = now;
+
+			Ref<ACell> existing = store.refForHash(h);
+			if (existing == null) existing = store.storeTopRef(ref, Ref.STORED, null);
+			track(existing);
+		}
+	}
+
+	/**
+	 * Starts tracking a stored cell that is awaited by the sync. Queues requests for children
+	 * that are not stored, and tracks children that are stored but not yet persisted. Cells
+	 * with no incomplete children are persisted immediately.
+	 */
+	private void track(Ref<ACell> ref) {
+		ArrayDeque<Ref<ACell>> work = new ArrayDeque<>();
+		work.add(ref);
+		while (!work.isEmpty()) {
+			Ref<ACell> r = work.poll();
+			Hash h = r.getHash();
+			if (pending.containsKey(h)) continue;
+			if (r.getStatus() >= Ref.PERSISTED) {
+				complete(h);
+				continue;
+			}
+
+			int count = 0;
+			for (Ref<ACell> child : getBranches(r.getValue())) {
+				Hash ch = child.getHash();
+				if (!parents.containsKey(ch)) {
+					// not yet known to be incomplete
+					Ref<ACell> existing = store.refForHash(ch);
+					if (existing == null) {
+						if (!outstanding.containsKey(ch)) enqueue(ch);
+					} else if (existing.getStatus() >= Ref.PERSISTED) {
+						continue;
+					} else {
+						work.add(existing);
+					}
+				}
+				parents.computeIfAbsent(ch, k -> new ArrayList<>()).add(h);
+				count++;
+			}
+			if (count == 0) {
+				complete(h);
+			} else {
+				pending.put(h, count);
+			}
+		}
+	}
+
+	/**
+	 * Persists a cell whose children are all persisted, then any parents that are
+	 * completed as a result. Completes the sync when the root is persisted.
+	 */
+	private void complete(Hash hash) {
+		ArrayDeque<Hash> done = new ArrayDeque<>();
+		done.add(hash);
+		while (!done.isEmpty()) {
+			Hash h = done.poll();
+			pending.remove(h);
+			Ref<ACell> ref = store.refForHash(h);
+			// children are all persisted, so this only writes the cell itself
+			if (ref.getStatus() < Ref.PERSISTED) ref = store.storeTopRef(ref, Ref.PERSISTED, null);
+
+			if (h.equals(rootHash)) {
+				parents.remove(h);
+				report(System.currentTimeMillis());
+				result.complete(ref.getValue());
+				continue;
+			}
+
+			ArrayList<Hash> waiting = parents.remove(h);
+			if (waiting == null) continue;
+			for (Hash p : waiting) {
+				int remaining = pending.get(p) - 1;
+				if (remaining == 0) {
+					done.add(p);
+				} else {
+					pending.put(p, remaining);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the non-embedded child references of a cell. Embedded children are traversed,
+	 * since they may themselves contain references to other cells.
+	 */
+	private static ArrayList<Ref<ACell>> getBranches(ACell cell) {
+		ArrayList<Ref<ACell>> branches = new ArrayList<>();
+		ArrayList<ACell> stack = new ArrayList<>();
+		if (cell != null) stack.add(cell);
+		while (!stack.isEmpty()) {
+			ACell c = stack.remove(stack.size() - 1);
+			int n = c.getRefCount();
+			for (int i = 0; i < n; i++) {
+				Ref<ACell> child = c.getRef(i);
+				if (child.isEmbedded()) {
+					ACell value = child.getValue();
+					if (value != null) stack.add(value);
+				} else {
+					branches.add(child);
+				}
+			}
+		}
+		return branches;
+	}
+
+	private void enqueue(Hash h) {
+		if (queued.add(h)) frontier.add(h);
+	}
+
+	/**
+	 * Requests again any cells that were not received in time
+	 */
+	private void retryExpired(long now) {
+		Iterator<Map.Entry<Hash, Long>> it = outstanding.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Hash, Long> e = it.next();
+			if (now - e.getValue() >= RETRY_TIMEOUT) {
+				it.remove();
+				enqueue(e.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Sends batched requests for cells in the frontier, up to the maximum outstanding
+	 */
+	private void sendRequests(long now) throws IOException {
+		ArrayList<Hash> batch = new ArrayList<>();
+		while ((outstanding.size() + Constants.MAX_DATA_REQUEST_HASHES <= MAX_OUTSTANDING) && !frontier.isEmpty()) {
+			batch.clear();
+			while ((batch.size() < Constants.MAX_DATA_REQUEST_HASHES) && !frontier.isEmpty()) {
+				Hash h = frontier.poll();
+				queued.remove(h);
+				Ref<ACell> existing = store.refForHash(h);
+				if (existing != null) {
+					// arrived some other way, so just need anything missing below it
+					track(existing);
+				} else {
+					batch.add(h);
+				}
+			}
+			if (batch.isEmpty()) continue;
+
+			if (!connection.sendRequestData(batch, 0)) {
+				// send buffer full, so put requests back and try again later
+				for (int i = batch.size() - 1; i >= 0; i--) {
+					Hash h = batch.get(i);
+					if (queued.add(h)) frontier.addFirst(h);
+				}
+				return;
+			}
+			for (Hash h : batch) {
+				outstanding.put(h, now);
+			}
+		}
+	}
+
+	private void report(long now) {
+		long elapsed = Math.max(1, now - startTime);
+		log.info("Sync of {}: {} cells, {} bytes in {}ms ({} cells/s, {} bytes/s), {} cells pending", rootHash, cellCount,
+				byteCount, elapsed, (cellCount * 1000) / elapsed, (byteCount * 1000) / elapsed,
+				frontier.size() + outstanding.size());
+	}
+
+	/**
+	 * Gets the number of requested cells received so far
+	 *
+	 * @return Number of cells received
+	 */
+	public long getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Gets the total encoding size of requested cells received so far
+	 *
+	 * @return Number of bytes received
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * Gets the Hash of the root cell being acquired
+	 *
+	 * @return Root Hash
+	 */
+	public Hash getRootHash() {
+		return rootHash;
+	}
+}
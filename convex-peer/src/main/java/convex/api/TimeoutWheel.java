@@ -0,0 +1,145 @@
+package convex.api;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel for cheaply scheduling large numbers of timeouts.
+ *
+ * Timeouts are placed in one of a ring of slots according to their deadline, and a single daemon
+ * thread visits one slot per tick. Scheduling is O(1) and only holds a lock long enough to pick a
+ * slot the wheel has not yet reached, so many thousands of pending requests can each have a timeout
+ * with little contention. Timeouts fire up to one tick late.
+ *
+ * Timeout actions run on the wheel thread, so should be quick and must not block.
+ */
+public class TimeoutWheel {
+
+	private static final Logger log = LoggerFactory.getLogger(TimeoutWheel.class.getName());
+
+	/**
+	 * Shared wheel used for client request timeouts
+	 */
+	private static volatile TimeoutWheel shared = null;
+
+	private final long tickMillis;
+	private final List<ConcurrentLinkedQueue<Entry>> slots;
+	private final long startTime;
+	private final Thread thread;
+
+	/**
+	 * Tick currently being processed by the wheel thread. New entries always go in a later slot.
+	 * Guarded by tickLock, so an entry can't be added to a slot as the wheel moves past it.
+	 */
+	private long currentTick = 0;
+
+	private final Object tickLock = new Object();
+
+	private static final class Entry {
+		final long deadline;
+		final Runnable action;
+
+		Entry(long deadline, Runnable action) {
+			this.deadline = deadline;
+			this.action = action;
+		}
+	}
+
+	private TimeoutWheel(long tickMillis, int numSlots, String name) {
+		this.tickMillis = tickMillis;
+		this.slots = new ArrayList<>(numSlots);
+		for (int i = 0; i < numSlots; i++) {
+			slots.add(new ConcurrentLinkedQueue<>());
+		}
+		this.startTime = System.currentTimeMillis();
+		thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Creates a TimeoutWheel, starting its thread
+	 * @param tickMillis Time resolution of timeouts in milliseconds
+	 * @param numSlots Number of slots in the wheel
+	 * @param name Name for the wheel thread
+	 * @return New TimeoutWheel instance
+	 */
+	public static TimeoutWheel create(long tickMillis, int numSlots, String name) {
+		if ((tickMillis <= 0) || (numSlots <= 0)) throw new IllegalArgumentException("Tick and slot count must be positive");
+		return new TimeoutWheel(tickMillis, numSlots, name);
+	}
+
+	/**
+	 * Gets the shared TimeoutWheel, creating it if necessary
+	 * @return Shared TimeoutWheel instance
+	 */
+	public static TimeoutWheel getShared() {
+		// double checked initialisation
+		TimeoutWheel w = shared;
+		if (w == null) {
+			synchronized (TimeoutWheel.class) {
+				w = shared;
+				if (w == null) {
+					w = create(20, 512, "Client timeout wheel");
+					shared = w;
+				}
+			}
+		}
+		return w;
+	}
+
+	/**
+	 * Schedules an action to run after a delay
+	 * @param delayMillis Delay in milliseconds
+	 * @param action Action to run. Should check whether it is still needed, since there is no cancellation.
+	 */
+	public void schedule(long delayMillis, Runnable action) {
+		long deadline = System.currentTimeMillis() + Math.max(0, delayMillis);
+		long tick = (deadline - startTime + tickMillis - 1) / tickMillis;
+		Entry entry = new Entry(deadline, action);
+		synchronized (tickLock) {
+			tick = Math.max(tick, currentTick + 1);
+			slots.get((int) (tick % slots.size())).add(entry);
+		}
+	}
+
+	private void run() {
+		long tick = 0;
+		while (true) {
+			try {
+				long tickTime = startTime + tick * tickMillis;
+				long now = System.currentTimeMillis();
+				if (now < tickTime) {
+					Thread.sleep(tickTime - now);
+					now = System.currentTimeMillis();
+				}
+
+				synchronized (tickLock) {
+					currentTick = tick;
+				}
+
+				// entries more than one rotation in the future stay in their slot
+				Iterator<Entry> it = slots.get((int) (tick % slots.size())).iterator();
+				while (it.hasNext()) {
+					Entry e = it.next();
+					if (e.deadline > now) continue;
+					it.remove();
+					try {
+						e.action.run();
+					} catch (Throwable t) {
+						log.warn("Exception in timeout action: {}", t);
+					}
+				}
+				tick++;
+			} catch (InterruptedException e) {
+				log.debug("Timeout wheel interrupted");
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package convex.api;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.ErrorCodes;
+import convex.core.Result;
+import convex.core.data.ACell;
+import convex.core.data.Address;
+import convex.core.data.SignedData;
+import convex.core.data.prim.CVMLong;
+import convex.core.lang.RT;
+import convex.core.lang.Symbols;
+import convex.core.lang.ops.Special;
+import convex.core.transactions.ATransaction;
+import convex.net.Connection;
+
+/**
+ * Batching submitter for high volumes of transactions from a single account.
+ *
+ * Submitted transactions are accumulated while the previous batch is being sent. Each batch
+ * is given a contiguous range of sequence numbers from a locally tracked counter, signed in
+ * parallel, and written to the connection in one go, so there is no round trip per
+ * transaction.
+ *
+ * If a transaction fails with a SEQUENCE error (e.g. because another client used the account,
+ * or an earlier transaction failed before using its sequence number) the batcher waits for
+ * all transactions in flight to complete, queries the account's sequence number from the peer,
+ * and resubmits the failed transactions in their original order.
+ *
+ * The batcher should be the only submitter of transactions for its account while in use.
+ */
+public class TransactionBatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(TransactionBatcher.class.getName());
+
+	/**
+	 * Default maximum number of transactions in a batch
+	 */
+	public static final int DEFAULT_MAX_BATCH = 100;
+
+	/**
+	 * Maximum number of times a transaction is sent before a SEQUENCE error is returned
+	 * to the submitter
+	 */
+	public static final int MAX_ATTEMPTS = 5;
+
+	/**
+	 * Batches at least this size are signed in parallel
+	 */
+	private static final int PARALLEL_SIGN_SIZE = 8;
+
+	private static final class Pending {
+		final long order;
+		final ATransaction transaction;
+		final CompletableFuture<Result> result = new CompletableFuture<>();
+		int attempts = 0;
+		long epoch;
+
+		Pending(long order, ATransaction transaction) {
+			this.order = order;
+			this.transaction = transaction;
+		}
+	}
+
+	private final Convex convex;
+	private final Address address;
+	private final int maxBatch;
+	private final Thread thread;
+
+	/**
+	 * Transactions waiting to be sent, in submission order so that resubmitted
+	 * transactions go before newer ones.
+	 */
+	private final PriorityQueue<Pending> queue = new PriorityQueue<>((a, b) -> Long.compare(a.order, b.order));
+
+	// All fields below guarded by this
+	private long submitCount = 0;
+	private long nextSequence = -1;
+	private long epoch = 0;
+	private boolean resync = true;
+	private int inFlight = 0;
+	private boolean closed = false;
+
+	private TransactionBatcher(Convex convex, int maxBatch) {
+		this.convex = convex;
+		this.address = convex.getAddress();
+		this.maxBatch = maxBatch;
+		thread = new Thread(this::run, "Transaction batcher for " + address);
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Creates a TransactionBatcher for the account of a Convex client, and starts its thread
+	 * @param convex Convex client, with address and key pair set
+	 * @return New TransactionBatcher instance
+	 */
+	public static TransactionBatcher create(Convex convex) {
+		return create(convex, DEFAULT_MAX_BATCH);
+	}
+
+	/**
+	 * Creates a TransactionBatcher for the account of a Convex client, and starts its thread
+	 * @param convex Convex client, with address and key pair set
+	 * @param maxBatch Maximum number of transactions in a batch
+	 * @return New TransactionBatcher instance
+	 */
+	public static TransactionBatcher create(Convex convex, int maxBatch) {
+		if (convex.getAddress() == null) throw new IllegalArgumentException("Convex client must have an address");
+		if (maxBatch <= 0) throw new IllegalArgumentException("Batch size must be positive");
+		TransactionBatcher batcher = new TransactionBatcher(convex, maxBatch);
+		batcher.thread.start();
+		return batcher;
+	}
+
+	/**
+	 * Submits a transaction for sending in the next batch. The sequence number is assigned
+	 * by the batcher, and the origin address set if missing.
+	 *
+	 * @param transaction Transaction to submit
+	 * @return Future for the Result of the transaction
+	 */
+	public CompletableFuture<Result> submit(ATransaction transaction) {
+		if (transaction.getAddress() == null) transaction = transaction.withAddress(address);
+		synchronized (this) {
+			Pending p = new Pending(submitCount++, transaction);
+			if (closed) {
+				p.result.completeExceptionally(new IOException("Transaction batcher closed"));
+			} else {
+				queue.add(p);
+				notifyAll();
+			}
+			return p.result;
+		}
+	}
+
+	/**
+	 * Gets the number of transactions sent and awaiting results
+	 * @return Number of transactions in flight
+	 */
+	public synchronized int getInFlightCount() {
+		return inFlight;
+	}
+
+	/**
+	 * Gets the number of submitted transactions waiting to be sent
+	 * @return Number of queued transactions
+	 */
+	public synchronized int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Closes this batcher. Transactions not yet sent fail with an IOException, transactions
+	 * in flight still complete normally.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+			notifyAll();
+		}
+		thread.interrupt();
+		failQueued(new IOException("Transaction batcher closed"));
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				Pending[] batch;
+				long firstSequence;
+				synchronized (this) {
+					// wait for transactions, and for any in flight to complete before a resync
+					while (!closed && (queue.isEmpty() || (resync && (inFlight > 0)))) {
+						wait();
+					}
+					if (closed) return;
+
+					if (resync) {
+						batch = null;
+						firstSequence = -1;
+					} else {
+						int n = Math.min(maxBatch, queue.size());
+						batch = new Pending[n];
+						for (int i = 0; i < n; i++) {
+							Pending p = queue.poll();
+							p.attempts++;
+							p.epoch = epoch;
+							batch[i] = p;
+						}
+						firstSequence = nextSequence;
+						nextSequence += n;
+						inFlight += n;
+					}
+				}
+
+				if (batch == null) {
+					syncSequence();
+				} else {
+					sendBatch(batch, firstSequence);
+				}
+			}
+		} catch (InterruptedException e) {
+			// finished
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Queries the account sequence number from the peer, and starts a new epoch
+	 * so that SEQUENCE errors from before the resync are not counted again.
+	 */
+	private void syncSequence() throws InterruptedException {
+		try {
+			Result r = convex.querySync(Special.forSymbol(Symbols.STAR_SEQUENCE), address);
+			ACell v = r.getValue();
+			if (r.isError() || !(v instanceof CVMLong)) {
+				throw new IOException("Unable to get sequence number: " + r);
+			}
+			long sequence = RT.jvm(v);
+			synchronized (this) {
+				nextSequence = sequence + 1;
+				resync = false;
+				epoch++;
+			}
+			log.debug("Synchronised sequence number for {} at {}", address, sequence);
+		} catch (IOException | TimeoutException e) {
+			if (!convex.isConnected()) {
+				log.warn("Transaction batcher for {} lost connection", address);
+				close();
+				return;
+			}
+			log.warn("Failed to synchronise sequence number for {}: {}", address, e.getMessage());
+			Thread.sleep(100);
+		}
+	}
+
+	private void sendBatch(Pending[] batch, long firstSequence) {
+		int n = batch.length;
+		IntStream range = IntStream.range(0, n);
+		if (n >= PARALLEL_SIGN_SIZE) range = range.parallel();
+		List<SignedData<ATransaction>> signed = range
+				.mapToObj(i -> convex.signData(batch[i].transaction.withSequence(firstSequence + i)))
+				.collect(Collectors.toList());
+
+		// register for results before sending, so that a fast result can't arrive first
+		long[] ids = new long[n];
+		long timeout = convex.getTimeout();
+		for (int i = 0; i < n; i++) {
+			Pending p = batch[i];
+			ids[i] = Connection.getNextID();
+			convex.awaitResult(ids[i], timeout).whenComplete((r, e) -> handleResult(p, r, e));
+		}
+
+		int sent = 0;
+		try {
+			Connection conn = convex.getConnection();
+			if (conn == null) throw new IOException("Not connected");
+			while (sent < n) {
+				int k = conn.sendTransactions(ids, signed, sent, n);
+				if (k == 0) {
+					// back pressure, send buffer is full
+					Thread.sleep(1);
+				}
+				sent += k;
+			}
+		} catch (IOException | InterruptedException e) {
+			if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+			for (int i = sent; i < n; i++) {
+				convex.failResult(ids[i], e);
+			}
+		}
+	}
+
+	private void handleResult(Pending p, Result r, Throwable e) {
+		synchronized (this) {
+			inFlight--;
+			boolean sequenceError = (r != null) && ErrorCodes.SEQUENCE.equals(r.getErrorCode());
+
+			// after a timeout we can't know whether the sequence number was used
+			if ((sequenceError || (e instanceof TimeoutException)) && (p.epoch == epoch)) {
+				resync = true;
+			}
+			notifyAll();
+
+			if (sequenceError && !closed && (p.attempts < MAX_ATTEMPTS)) {
+				queue.add(p);
+				return;
+			}
+		}
+		if (e != null) {
+			p.result.completeExceptionally(e);
+		} else {
+			p.result.complete(r);
+		}
+	}
+
+	private void failQueued(Throwable e) {
+		while (true) {
+			Pending p;
+			synchronized (this) {
+				p = queue.poll();
+			}
+			if (p == null) return;
+			p.result.completeExceptionally(e);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package convex.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe pool of direct ByteBuffers of a fixed size.
+ *
+ * Buffers are allocated on demand if none are available, and at most a fixed number of
+ * idle buffers are retained. Buffers beyond this limit are left for garbage collection.
+ */
+public class BufferPool {
+
+	private final int bufferSize;
+	private final int maxPooled;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooledCount = new AtomicInteger(0);
+
+	private BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Creates a BufferPool
+	 * @param bufferSize Size of each buffer in bytes
+	 * @param maxPooled Maximum number of idle buffers to retain
+	 * @return New BufferPool instance
+	 */
+	public static BufferPool create(int bufferSize, int maxPooled) {
+		if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive");
+		return new BufferPool(bufferSize, maxPooled);
+	}
+
+	/**
+	 * Gets a cleared buffer from the pool, allocating a new buffer if none are available
+	 * @return Buffer ready for writing
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer b = pool.poll();
+		if (b == null) return ByteBuffer.allocateDirect(bufferSize);
+		pooledCount.decrementAndGet();
+		b.clear();
+		return b;
+	}
+
+	/**
+	 * Returns a buffer to the pool. The buffer must not be used by the caller afterwards.
+	 * @param b Buffer previously acquired from this pool
+	 */
+	public void release(ByteBuffer b) {
+		if (b.capacity() != bufferSize) throw new IllegalArgumentException("Buffer not from this pool");
+		if (pooledCount.incrementAndGet() <= maxPooled) {
+			pool.add(b);
+		} else {
+			pooledCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the number of idle buffers currently held by the pool
+	 * @return Number of pooled buffers
+	 */
+	public int getPooledCount() {
+		return pooledCount.get();
+	}
+
+	/**
+	 * Gets the size of buffers in this pool
+	 * @return Buffer size in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+}
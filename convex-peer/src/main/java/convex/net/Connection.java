@@ -12,10 +12,12 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
-import java.util.Set;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +28,7 @@ import convex.core.data.ACell;
 import convex.core.data.AccountKey;
 import convex.core.data.AVector;
 import convex.core.data.Address;
+import convex.core.data.Blob;
 import convex.core.data.Format;
 import convex.core.data.Hash;
 import convex.core.data.IRefFunction;
@@ -45,11 +48,13 @@ import convex.core.util.Utils;
  * </p>
  *
  * <p>
- * Sent messages are sent asynchronously via the shared client selector.
+ * Sent messages are sent asynchronously via the selector handling this
+ * Connection: one of the shared client selectors for outgoing connections, or
+ * the server's selectors for accepted connections.
  * </p>
  *
  * <p>
- * Received messages are read by the shared client selector, converted into
+ * Received messages are read by the same selector, converted into
  * Message instances, and passed to a Consumer for handling.
  * </p>
  *
@@ -65,7 +70,16 @@ public class Connection {
 	/**
 	 * Counter for IDs of all messages sent from this JVM
 	 */
-	private static long idCounter = 0;
+	private static final AtomicLong idCounter = new AtomicLong(0);
+
+	/**
+	 * Allocates a new message ID, unique within this JVM. Safe to call from any thread.
+	 *
+	 * @return New message ID, always positive
+	 */
+	public static long getNextID() {
+		return idCounter.incrementAndGet();
+	}
 
 	/**
 	 * Store to use for this connection. Required for responding to incoming
@@ -80,12 +94,6 @@ public class Connection {
 
 	private static final Logger log = LoggerFactory.getLogger(Connection.class.getName());
 
-	/**
-	 * Pre-allocated direct buffer for message sending TODO: is one per connection
-	 * OK? Users should synchronise on this briefly while building message.
-	 */
-	private final ByteBuffer frameBuf = ByteBuffer.allocateDirect(Format.LIMIT_ENCODING_LENGTH + 20);
-
 	private final MessageReceiver receiver;
 	private final MessageSender sender;
 
@@ -250,8 +258,8 @@ public class Connection {
 	 */
 	public boolean sendData(ACell value) throws IOException {
 		log.trace("Sending data: {}", value);
-		ByteBuffer buf = Format.encodedBuffer(value);
-		return sendBuffer(MessageType.DATA, buf);
+		Blob enc = Format.encodedBlob(value);
+		return sendBuffer(MessageType.DATA, enc.getByteBuffer());
 	}
 
 	/**
@@ -266,6 +274,68 @@ public class Connection {
 		return sendObject(MessageType.MISSING_DATA, value);
 	}
 
+	/**
+	 * Sends a REQUEST_DATA Message on this connection, requesting a batch of cells.
+	 *
+	 * @param hashes Hashes of requested cells. At most Constants.MAX_DATA_REQUEST_HASHES
+	 * @param budget Maximum bytes of additional cells below the requested cells to receive. Zero for requested cells only.
+	 * @return true if buffered successfully, false otherwise (not sent)
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendRequestData(List<Hash> hashes, long budget) throws IOException {
+		int n = hashes.size();
+		if ((n < 1) || (n > Constants.MAX_DATA_REQUEST_HASHES)) {
+			throw new IllegalArgumentException("Invalid number of hashes for data request: " + n);
+		}
+		ACell[] elements = new ACell[n + 1];
+		elements[0] = CVMLong.create(budget);
+		for (int i = 0; i < n; i++) {
+			elements[i + 1] = hashes.get(i);
+		}
+		log.trace("Requested missing data for {} hashes with budget {}", n, budget);
+		return sendObject(MessageType.REQUEST_DATA, Vectors.create(elements));
+	}
+
+	/**
+	 * Maximum length of the cell encodings in a single DATA_BUNDLE message, allowing for the message code
+	 */
+	private static final int MAX_BUNDLE_LENGTH = Format.LIMIT_ENCODING_LENGTH - 1;
+
+	/**
+	 * Sends cells as one or more DATA_BUNDLE Messages on this connection. Cells are packed
+	 * in order into as few messages as possible.
+	 *
+	 * Stops at the first message that cannot be buffered, so the caller may retry
+	 * with the remaining cells.
+	 *
+	 * @param cells Cells to send. Should be non-embedded cells.
+	 * @return Number of cells buffered successfully
+	 * @throws IOException If IO error occurs
+	 */
+	public int sendDataBundle(List<? extends ACell> cells) throws IOException {
+		ArrayList<ByteBuffer> frame = new ArrayList<>();
+		int frameLength = 0;
+		int sent = 0;
+		int packed = 0;
+		for (ACell cell : cells) {
+			Blob enc = cell.getEncoding();
+			int length = (int) enc.count();
+			if ((frameLength + length > MAX_BUNDLE_LENGTH) && (packed > sent)) {
+				if (!sendBuffer(MessageType.DATA_BUNDLE, frame.toArray(new ByteBuffer[frame.size()]))) return sent;
+				sent = packed;
+				frame.clear();
+				frameLength = 0;
+			}
+			frame.add(enc.getByteBuffer());
+			frameLength += length;
+			packed++;
+		}
+		if (packed > sent) {
+			if (!sendBuffer(MessageType.DATA_BUNDLE, frame.toArray(new ByteBuffer[frame.size()]))) return sent;
+		}
+		return packed;
+	}
+
 	/**
 	 * Sends a QUERY Message on this connection with a null Address
 	 *
@@ -286,16 +356,28 @@ public class Connection {
 	 * @throws IOException If IO error occurs
 	 */
 	public long sendQuery(ACell form, Address address) throws IOException {
+		long id = getNextID();
+		return sendQuery(id, form, address) ? id : -1;
+	}
+
+	/**
+	 * Sends a QUERY Message on this connection with a given message ID, which
+	 * allows the caller to register for the result before the message is sent.
+	 *
+	 * @param id      Message ID, e.g. from getNextID()
+	 * @param form    A data object representing the query form
+	 * @param address The address with which to run the query, which may be null
+	 * @return true if buffered successfully, false if send buffer is full.
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendQuery(long id, ACell form, Address address) throws IOException {
 		AStore temp = Stores.current();
 		try {
-			long id = ++idCounter;
 			AVector<ACell> v = Vectors.of(id, form, address);
-			boolean sent = sendObject(MessageType.QUERY, v);
-			return sent ? id : -1;
+			return sendObject(MessageType.QUERY, v);
 		} finally {
 			Stores.setCurrent(temp);
 		}
-
 	}
 
 	/**
@@ -305,12 +387,22 @@ public class Connection {
 	 * @throws IOException If IO error occurs
 	 */
 	public long sendStatusRequest() throws IOException {
+		long id = getNextID();
+		return sendStatusRequest(id) ? id : -1;
+	}
+
+	/**
+	 * Sends a STATUS Request Message on this connection with a given message ID.
+	 *
+	 * @param id Message ID, e.g. from getNextID()
+	 * @return true if buffered successfully, false if send buffer is full.
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendStatusRequest(long id) throws IOException {
 		AStore temp = Stores.current();
 		try {
-			long id = ++idCounter;
 			CVMLong idPayload = CVMLong.create(id);
-			sendObject(MessageType.STATUS, idPayload);
-			return id;
+			return sendObject(MessageType.STATUS, idPayload);
 		} finally {
 			Stores.setCurrent(temp);
 		}
@@ -327,11 +419,24 @@ public class Connection {
 	 *
 	 */
 	public long sendChallenge(SignedData<ACell> challenge) throws IOException {
+		long id = getNextID();
+		return sendChallenge(id, challenge) ? id : -1;
+	}
+
+	/**
+	 * Sends a CHALLENGE Request Message on this connection with a given message ID, which
+	 * allows the caller to register for the result before the message is sent.
+	 *
+	 * @param id Message ID, e.g. from getNextID()
+	 * @param challenge Challenge a Vector that has been signed by the sending peer.
+	 * @return true if buffered successfully, false if send buffer is full.
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendChallenge(long id, SignedData<ACell> challenge) throws IOException {
 		AStore temp = Stores.current();
 		try {
-			long id = ++idCounter;
-			boolean sent = sendObject(MessageType.CHALLENGE, challenge);
-			return (sent) ? id : -1;
+			// the challenge payload has no ID field, the ID is only used locally to await the result
+			return sendObject(MessageType.CHALLENGE, challenge);
 		} finally {
 			Stores.setCurrent(temp);
 		}
@@ -349,7 +454,7 @@ public class Connection {
 	public long sendResponse(SignedData<ACell> response) throws IOException {
 		AStore temp = Stores.current();
 		try {
-			long id = ++idCounter;
+			long id = getNextID();
 			boolean sent = sendObject(MessageType.RESPONSE, response);
 			return (sent) ? id : -1;
 		} finally {
@@ -371,13 +476,25 @@ public class Connection {
 	 * @throws IOException In the event of an IO error, e.g. closed connection
 	 */
 	public long sendTransaction(SignedData<ATransaction> signed) throws IOException {
+		long id = getNextID();
+		return sendTransaction(id, signed) ? id : -1;
+	}
+
+	/**
+	 * Sends a transaction with a given message ID, which allows the caller to
+	 * register for the result before the message is sent.
+	 *
+	 * @param id     Message ID, e.g. from getNextID()
+	 * @param signed Signed transaction
+	 * @return true if buffered successfully, false if send buffer is full.
+	 * @throws IOException In the event of an IO error, e.g. closed connection
+	 */
+	public boolean sendTransaction(long id, SignedData<ATransaction> signed) throws IOException {
 		AStore temp = Stores.current();
 		try {
 			Stores.setCurrent(store);
-			long id = ++idCounter;
 			AVector<ACell> v = Vectors.of(id, signed);
-			boolean sent = sendObject(MessageType.TRANSACT, v);
-			return (sent) ? id : -1;
+			return sendObject(MessageType.TRANSACT, v);
 		} finally {
 			Stores.setCurrent(temp);
 		}
@@ -467,85 +584,333 @@ public class Connection {
 	 */
 	public boolean sendObject(MessageType type, ACell payload) throws IOException {
 		Counters.sendCount++;
+		Blob enc = persistPayload(type, payload);
+		boolean sent = sendBuffer(type, enc.getByteBuffer());
+		return sent;
+	}
 
+	/**
+	 * Persists a message payload, sending any novelty, and gets its encoding
+	 */
+	private Blob persistPayload(MessageType type, ACell payload) {
 		// Need to ensure message is persisted at least, so we can respond to missing
 		// data messages
 		// using the current thread store
-		ACell sendVal = payload;
-		ACell.createPersisted(sendVal, r -> {
+		ACell.createPersisted(payload, r -> {
 			try {
 				ACell data = r.getValue();
-				boolean sent = sendData(data);
+				sendData(data);
 			} catch (IOException e) {
 				throw Utils.sneakyThrow(e);
 			}
 		});
 
-		ByteBuffer buf = Format.encodedBuffer(sendVal);
+		Blob enc = Format.encodedBlob(payload);
 		if (log.isTraceEnabled()) {
 			log.trace("Sending message: " + type + " :: " + payload + " to " + getRemoteAddress() + " format: "
-					+ Format.encodedBlob(payload).toHexString());
+					+ enc.toHexString());
 		}
-		boolean sent = sendBuffer(type, buf);
-		return sent;
+		return enc;
 	}
 
 	/**
-	 * Sends a message with the given message type and data buffer.
+	 * Sends a batch of transactions, buffering as many TRANSACT messages as possible in a
+	 * single atomic write, so that a batch costs one write on the socket rather than one
+	 * per transaction. Messages are grouped up to half the send buffer, so a large batch
+	 * may need several calls.
+	 *
+	 * @param ids    Message IDs for the transactions, e.g. from getNextID()
+	 * @param signed Signed transactions
+	 * @param start  Index of first transaction to send
+	 * @param end    Index after the last transaction to send
+	 * @return Number of transactions buffered, zero if the send buffer is full
+	 * @throws IOException In the event of an IO error, e.g. closed connection
+	 */
+	public int sendTransactions(long[] ids, List<SignedData<ATransaction>> signed, int start, int end) throws IOException {
+		AStore temp = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			ArrayList<ByteBuffer> frames = new ArrayList<>();
+			long length = 0;
+			int i = start;
+			while (i < end) {
+				AVector<ACell> v = Vectors.of(ids[i], signed.get(i));
+				ByteBuffer[] frame = buildFrame(MessageType.TRANSACT, persistPayload(MessageType.TRANSACT, v).getByteBuffer());
+				long frameLength = 0;
+				for (ByteBuffer b : frame) {
+					frameLength += b.remaining();
+				}
+				// always include at least one message
+				if ((i > start) && (length + frameLength > MessageSender.SEND_BUFFER_SIZE / 2)) break;
+				for (ByteBuffer b : frame) {
+					frames.add(b);
+				}
+				length += frameLength;
+				i++;
+			}
+			if (!queueFrame(frames.toArray(new ByteBuffer[frames.size()]))) return 0;
+			Counters.sendCount += i - start;
+			return i - start;
+		} finally {
+			Stores.setCurrent(temp);
+		}
+	}
+
+	/**
+	 * Sends a message with the given message type and data buffers. The data buffers are
+	 * queued for sending without copying, so must not be modified afterwards.
 	 *
 	 * @param type MessageType value
-	 * @param buf  Buffer containing raw wire data for the message
+	 * @param bufs Buffers containing raw wire data for the message, in order
 	 * @return true if message sent, false otherwise
 	 * @throws IOException
 	 */
-	private boolean sendBuffer(MessageType type, ByteBuffer buf) throws IOException {
-		int dataLength = buf.remaining();
+	private boolean sendBuffer(MessageType type, ByteBuffer... bufs) throws IOException {
+		ByteBuffer[] frame = buildFrame(type, bufs);
+		boolean sent = queueFrame(frame);
+
+		if (sent) {
+			if (log.isTraceEnabled()) {
+				log.trace("Sent message " + type + " Connection ID: " + System.identityHashCode(this));
+			}
+		} else {
+			log.debug("sendBuffer failed with message {} Connection ID: {}", type, System.identityHashCode(this));
+		}
+		return sent;
+	}
 
-		// Total length field is message code + encoded object length
-		int messageLength = dataLength + 1;
-		boolean sent;
-		int headerLength;
+	/**
+	 * Builds the wire frame for a message, compressing if negotiated with the remote end
+	 *
+	 * @param type MessageType value
+	 * @param bufs Buffers containing raw wire data for the message, in order
+	 * @return Buffers for complete frame
+	 */
+	private ByteBuffer[] buildFrame(MessageType type, ByteBuffer... bufs) {
+		int dataLength = 0;
+		for (ByteBuffer buf : bufs) {
+			dataLength += buf.remaining();
+		}
 
-		// synchronize in case we are sending messages from different threads
-		// This is OK but need to avoid corrupted messages.
-		synchronized (frameBuf) {
-			// ensure frameBuf is clear and ready for writing
-			frameBuf.clear();
+		// flag bits are only sent once the remote end is known to understand them,
+		// otherwise we send a plain type byte which any Peer can decode
+		boolean compressing = isCompressing();
+		int code = type.getMessageCode();
+		if (compressing) code |= MessageType.FLAG_ACCEPTS_COMPRESSED;
+
+		// compress large messages if the remote end accepts compressed messages
+		ByteBuffer[] frame = null;
+		if (compressing && (dataLength >= Constants.COMPRESSION_THRESHOLD)) {
+			ByteBuffer compressed = createCompressedFrame(code, dataLength, bufs);
+			if (compressed != null) frame = new ByteBuffer[] { compressed };
+		}
 
-			// write message header
-			Format.writeMessageLength(frameBuf, messageLength);
-			frameBuf.put(type.getMessageCode());
-			headerLength = frameBuf.position();
+		if (frame == null) {
+			// Total length field is message code + encoded object length
+			int messageLength = dataLength + 1;
 
-			// now write message
-			frameBuf.put(buf);
-			frameBuf.flip(); // ensure frameBuf is ready to write to channel
+			// write message header. Max 2 bytes for length plus message code
+			ByteBuffer header = ByteBuffer.allocate(3);
+			Format.writeMessageLength(header, messageLength);
+			header.put((byte) code);
+			header.flip();
 
-			sent = sender.bufferMessage(frameBuf);
+			frame = new ByteBuffer[bufs.length + 1];
+			frame[0] = header;
+			System.arraycopy(bufs, 0, frame, 1, bufs.length);
 		}
+		return frame;
+	}
 
-		if (sent) {
-			if (channel instanceof SocketChannel) {
-				SocketChannel chan = (SocketChannel) channel;
-				// register interest in both reads and writes
-				try {
-					chan.register(selector, SelectionKey.OP_WRITE | SelectionKey.OP_READ, this);
-				} catch (CancelledKeyException e) {
-					// ignore. Must have got cancelled elsewhere?
+	/**
+	 * Queues a complete frame with the sender, and registers interest in writing if successful.
+	 * The sender queues the whole frame atomically, so safe to send from different threads.
+	 */
+	private boolean queueFrame(ByteBuffer... frame) throws IOException {
+		boolean sent = sender.bufferMessage(frame);
+		if (sent && (channel instanceof SocketChannel)) {
+			SocketChannel chan = (SocketChannel) channel;
+			Selector sel = selector;
+			if (sel == null) sel = ensureClientSelector(chan);
+			// register interest in writes, leaving read interest unchanged
+			SelectionKey key = chan.keyFor(sel);
+			try {
+				if (key != null) {
+					key.interestOpsOr(SelectionKey.OP_WRITE);
+				} else {
+					chan.register(sel, SelectionKey.OP_WRITE | (readPaused ? 0 : SelectionKey.OP_READ), this);
 				}
-				// wake up selector
-				selector.wakeup();
+			} catch (CancelledKeyException e) {
+				// ignore. Must have got cancelled elsewhere?
 			}
+			// wake up selector
+			sel.wakeup();
+		}
+		return sent;
+	}
 
-			if (log.isTraceEnabled()) {
-				log.trace("Sent message " + type + " of length: " + dataLength + " Connection ID: "
-						+ System.identityHashCode(this));
+	/**
+	 * Sends a pre-built message frame on this connection. The frame content is shared,
+	 * not copied, so the same frame may be sent on any number of connections.
+	 *
+	 * The payload of the frame should already be persisted, and any novelty sent.
+	 *
+	 * @param frame Frame created with createFrame or createDataBundleFrames
+	 * @return true if buffered successfully, false otherwise (not sent)
+	 * @throws IOException If IO error occurs
+	 */
+	public boolean sendFrame(ByteBuffer frame) throws IOException {
+		Counters.sendCount++;
+		return queueFrame(frame.duplicate());
+	}
+
+	/**
+	 * Creates a compressed version of a message frame, for sending with sendFrame on
+	 * connections where {@link #isCompressing()} is true.
+	 *
+	 * @param frame Frame created with createFrame or createDataBundleFrames
+	 * @return Compressed frame, or null if the frame is too small or doesn't compress well
+	 */
+	public static ByteBuffer compressFrame(ByteBuffer frame) {
+		ByteBuffer b = frame.duplicate();
+		int lengthLength;
+		try {
+			lengthLength = (Format.peekMessageLength(b) < 64) ? 1 : 2;
+		} catch (BadFormatException e) {
+			throw new IllegalArgumentException("Not a valid message frame", e);
+		}
+		b.position(b.position() + lengthLength);
+		int code = b.get() & 0xFF;
+		int dataLength = b.remaining();
+		if (dataLength < Constants.COMPRESSION_THRESHOLD) return null;
+		return createCompressedFrame(code | MessageType.FLAG_ACCEPTS_COMPRESSED, dataLength, b);
+	}
+
+	/**
+	 * Creates a compressed frame for message content. Content is compressed as a 2-byte
+	 * uncompressed length followed by an LZ4 block.
+	 *
+	 * @return Compressed frame, or null if compression saves less than 1/8 of the content size
+	 */
+	private static ByteBuffer createCompressedFrame(int code, int dataLength, ByteBuffer... bufs) {
+		byte[] data = new byte[dataLength];
+		int pos = 0;
+		for (ByteBuffer buf : bufs) {
+			ByteBuffer b = buf.duplicate();
+			int n = b.remaining();
+			b.get(data, pos, n);
+			pos += n;
+		}
+
+		int maxLength = dataLength - (dataLength / 8) - 2;
+		byte[] compressed = new byte[maxLength];
+		int length = LZ4.compress(data, 0, dataLength, compressed, 0, maxLength);
+		if (length < 0) return null;
+
+		ByteBuffer frame = ByteBuffer.allocate(length + 5);
+		Format.writeMessageLength(frame, length + 3);
+		frame.put((byte) (code | MessageType.FLAG_COMPRESSED));
+		frame.putShort((short) dataLength);
+		frame.put(compressed, 0, length);
+		frame.flip();
+		Counters.compressedSend++;
+		Counters.compressionSaved += dataLength - (length + 2);
+		return frame.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Flag indicating that this end accepts compressed messages, and will compress
+	 * large outgoing messages if the remote end does too
+	 */
+	private volatile boolean compression = false;
+
+	/**
+	 * Flag indicating that the remote end has advertised it accepts compressed messages,
+	 * either in its STATUS or by sending a flagged frame
+	 */
+	private volatile boolean remoteCompression = false;
+
+	/**
+	 * Enables or disables compression on this Connection. Compression is negotiated:
+	 * outgoing messages carry plain type bytes until the remote end has advertised that
+	 * it accepts compressed messages, after which messages are flagged and large
+	 * messages are compressed.
+	 *
+	 * @param enabled true to enable compression
+	 */
+	public void setCompression(boolean enabled) {
+		compression = enabled;
+	}
+
+	/**
+	 * Checks if large messages are currently compressed on this Connection, i.e. both
+	 * ends have enabled compression.
+	 *
+	 * @return true if compressing, false otherwise
+	 */
+	public boolean isCompressing() {
+		return compression && remoteCompression;
+	}
+
+	/**
+	 * Records that the remote end accepts compressed messages. Should only be called
+	 * once the remote end has advertised support, since flagged frames are rejected
+	 * by Peers that don't understand them.
+	 */
+	public void setRemoteCompression() {
+		remoteCompression = true;
+	}
+
+	/**
+	 * Creates a complete message frame, which can be sent on many connections with
+	 * sendFrame while only being encoded once.
+	 *
+	 * @param type Type of message
+	 * @param payload Payload value for message
+	 * @return Read-only ByteBuffer containing the message frame
+	 */
+	public static ByteBuffer createFrame(MessageType type, ACell payload) {
+		Blob enc = Format.encodedBlob(payload);
+		return createFrame(type, Collections.singletonList(enc), (int) enc.count());
+	}
+
+	/**
+	 * Creates DATA_BUNDLE message frames for a list of cells, which can be sent on many
+	 * connections with sendFrame while only being encoded once.
+	 *
+	 * @param cells Cells to include. Should be non-embedded cells.
+	 * @return List of read-only frames, containing all cells in order
+	 */
+	public static ArrayList<ByteBuffer> createDataBundleFrames(List<? extends ACell> cells) {
+		ArrayList<ByteBuffer> frames = new ArrayList<>();
+		ArrayList<Blob> encodings = new ArrayList<>();
+		int frameLength = 0;
+		for (ACell cell : cells) {
+			Blob enc = cell.getEncoding();
+			int length = (int) enc.count();
+			if ((frameLength + length > MAX_BUNDLE_LENGTH) && !encodings.isEmpty()) {
+				frames.add(createFrame(MessageType.DATA_BUNDLE, encodings, frameLength));
+				encodings.clear();
+				frameLength = 0;
 			}
-		} else {
-			log.debug("sendBuffer failed with message {} of length: {} Connection ID: {}"
-						, type, dataLength, System.identityHashCode(this));
+			encodings.add(enc);
+			frameLength += length;
 		}
-		return sent;
+		if (!encodings.isEmpty()) {
+			frames.add(createFrame(MessageType.DATA_BUNDLE, encodings, frameLength));
+		}
+		return frames;
+	}
+
+	private static ByteBuffer createFrame(MessageType type, List<Blob> encodings, int dataLength) {
+		ByteBuffer frame = ByteBuffer.allocate(dataLength + 3);
+		Format.writeMessageLength(frame, dataLength + 1);
+		frame.put(type.getMessageCode());
+		for (Blob enc : encodings) {
+			enc.writeToBuffer(frame);
+		}
+		frame.flip();
+		return frame.asReadOnlyBuffer();
 	}
 
 	public synchronized void close() {
@@ -575,88 +940,124 @@ public class Connection {
 	 */
 	public void startClientListening() throws IOException {
 		SocketChannel chan = (SocketChannel) channel;
-		chan.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, this);
+		Selector sel = ensureClientSelector(chan);
+		chan.register(sel, SelectionKey.OP_WRITE | (readPaused ? 0 : SelectionKey.OP_READ), this);
+		sel.wakeup();
+	}
 
-		// start running selector loop after we register for reading!
-		ensureSelectorLoop();
+	/**
+	 * Sets the selector that handles this Connection's channel. Messages sent on this
+	 * Connection are written by the thread running this selector.
+	 *
+	 * @param selector Selector the channel is registered with
+	 */
+	void setSelector(Selector selector) {
+		this.selector = selector;
+	}
 
-		// seems to be needed to ensure selector sees new connection?
-		selector.wakeup();
+	/**
+	 * Assigns a client selector to this Connection if it does not yet have one
+	 */
+	private synchronized Selector ensureClientSelector(SocketChannel chan) throws IOException {
+		if (selector == null) {
+			SelectionKey key = getClientSelectors().register(chan, readPaused ? 0 : SelectionKey.OP_READ, this);
+			selector = key.selector();
+		}
+		return selector;
 	}
 
-	private static final Selector selector;
+	public void wakeUp() {
+		Selector sel = selector;
+		if (sel != null) sel.wakeup();
+	}
 
-	static {
+	/**
+	 * Flag indicating that reads on this Connection are paused
+	 */
+	private volatile boolean readPaused = false;
+
+	/**
+	 * Pauses or resumes reading from this Connection's channel. While paused, no more
+	 * messages are received, so the remote sender is slowed down by TCP flow control.
+	 * Outgoing messages are still sent.
+	 *
+	 * @param paused true to pause reading, false to resume
+	 */
+	public void setReadPaused(boolean paused) {
+		readPaused = paused;
+		Selector sel = selector;
+		if (sel == null) return;
+		SelectionKey key = ((SocketChannel) channel).keyFor(sel);
+		if (key == null) return;
 		try {
-			selector = Selector.open();
-		} catch (IOException e) {
-			throw new Error(e);
+			if (paused) {
+				key.interestOpsAnd(~SelectionKey.OP_READ);
+			} else {
+				key.interestOpsOr(SelectionKey.OP_READ);
+				sel.wakeup();
+			}
+		} catch (CancelledKeyException e) {
+			// connection closed, nothing to do
 		}
 	}
 
-	public void wakeUp() {
-		selector.wakeup();
+	/**
+	 * Checks if reading from this Connection is paused
+	 *
+	 * @return true if paused, false otherwise
+	 */
+	public boolean isReadPaused() {
+		return readPaused;
 	}
 
-	private static Thread loopThread;
+	/**
+	 * Selector handling this connection, or null if not yet registered
+	 */
+	private volatile Selector selector = null;
+
+	private static volatile SelectorGroup clientSelectors = null;
+
+	private static int clientSelectorThreads = Constants.CLIENT_SELECTOR_THREADS;
+
+	/**
+	 * Sets the number of selector threads shared by all outgoing client Connections.
+	 * Must be called before the first client Connection is established to have any effect.
+	 *
+	 * @param threads Number of client selector threads
+	 * @return true if set, false if the client selectors are already running
+	 */
+	public static synchronized boolean setClientSelectorThreads(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Client selector threads must be positive");
+		if (clientSelectors != null) return false;
+		clientSelectorThreads = threads;
+		return true;
+	}
 
-	private static void ensureSelectorLoop() {
+	private static SelectorGroup getClientSelectors() throws IOException {
 		// double checked initialisation
-		if (loopThread == null) {
+		SelectorGroup group = clientSelectors;
+		if (group == null) {
 			synchronized (Connection.class) {
-				if (loopThread == null) {
-					loopThread = new Thread(selectorLoop, "PeerConnection NIO client selector loop");
-					// make this a daemon thread so it shuts down if everything else exits
-					loopThread.setDaemon(true);
-					loopThread.start();
+				group = clientSelectors;
+				if (group == null) {
+					group = SelectorGroup.create(clientSelectorThreads, Connection::handleClientKey, null);
+					// daemon threads, so these shut down if everything else exits
+					group.start("PeerConnection NIO client selector loop");
+					clientSelectors = group;
+					log.debug("Client selector loops started with {} threads", clientSelectorThreads);
 				}
 			}
 		}
+		return group;
 	}
 
-	private static Runnable selectorLoop = new Runnable() {
-		@Override
-		public void run() {
-
-			log.debug("Client selector loop started");
-			while (true) {
-				try {
-					selector.select(1000);
-					Set<SelectionKey> keys = selector.selectedKeys();
-					Iterator<SelectionKey> it = keys.iterator();
-					while (it.hasNext()) {
-						final SelectionKey key = it.next();
-						it.remove(); // always remove key from selection set
-
-						// log.finest("PeerConnection key received: "+key);
-						if (!key.isValid()) {
-							continue;
-						}
-
-						try {
-							if (key.isReadable()) {
-								selectRead(key);
-							} else if (key.isWritable()) {
-								selectWrite(key);
-							}
-						} catch (ClosedChannelException e) {
-							// channel was closed, just lose the key?
-							log.debug("Unexpected ChannelClosedException, cancelling key: {}", e);
-							key.cancel();
-						} catch (IOException e) {
-							log.debug("Unexpected IOException, cancelling key: {}", e);
-							key.cancel();
-						} catch (CancelledKeyException e) {
-							log.debug("Cancelled key");
-						}
-					}
-				} catch (Throwable t) {
-					log.error("Uncaught error in PeerConnection client selector loop: {}", t);
-					t.printStackTrace();
-				}
-			}
+	private static void handleClientKey(SelectionKey key) throws IOException {
+		if (key.isReadable()) {
+			selectRead(key);
+		} else if (key.isWritable()) {
+			selectWrite(key);
 		}
-	};
+	}
 
 	/**
 	 * Handles channel reads from a SelectionKey for the client listener
@@ -720,7 +1121,10 @@ public class Connection {
 
 			if (allSent) {
 				// deregister interest in writing
-				key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+				key.interestOpsAnd(~SelectionKey.OP_WRITE);
+				
+				// check for frames queued since the send, which would otherwise wait for the next message
+				if (pc.sender.getQueuedBytes() > 0) key.interestOpsOr(SelectionKey.OP_WRITE);
 			} else {
 				// we want to continue writing
 			}
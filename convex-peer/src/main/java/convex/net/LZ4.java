@@ -0,0 +1,186 @@
+package convex.net;
+
+import convex.core.exceptions.BadFormatException;
+
+/**
+ * Pure Java compressor and decompressor for the LZ4 block format.
+ *
+ * The compressor is a simple greedy matcher with a single hash table, which is fast and
+ * finds most of the redundancy in message payloads (repeated keys, hashes and small
+ * structures). Output is a standard LZ4 block, so any LZ4 block decoder can read it.
+ *
+ * The decompressor checks all bounds, so is safe to use on untrusted input.
+ */
+public class LZ4 {
+
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_BITS = 12;
+	private static final int LAST_LITERALS = 5;
+	private static final int MF_LIMIT = 12;
+	private static final int MAX_OFFSET = 65535;
+
+	/**
+	 * Compresses bytes into an LZ4 block.
+	 *
+	 * @param src Source array
+	 * @param srcOff Offset of first byte to compress
+	 * @param srcLen Number of bytes to compress
+	 * @param dst Destination array
+	 * @param dstOff Offset in destination at which to write
+	 * @param maxLen Maximum number of bytes to write
+	 * @return Length of compressed block, or -1 if it would exceed maxLen
+	 */
+	public static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxLen) {
+		int srcEnd = srcOff + srcLen;
+		int dstEnd = Math.min(dst.length, dstOff + maxLen);
+		int matchLimit = srcEnd - LAST_LITERALS;
+		int mfLimit = srcEnd - MF_LIMIT;
+
+		// hash table of positions + 1, so that zero indicates empty
+		int[] table = new int[1 << HASH_BITS];
+		int anchor = srcOff;
+		int ip = srcOff;
+		int op = dstOff;
+
+		while (ip < mfLimit) {
+			int seq = readInt(src, ip);
+			int h = hash(seq);
+			int ref = table[h] - 1;
+			table[h] = ip + 1;
+			if ((ref < 0) || (ip - ref > MAX_OFFSET) || (readInt(src, ref) != seq)) {
+				ip++;
+				continue;
+			}
+
+			// extend match backwards over pending literals, then forwards
+			while ((ip > anchor) && (ref > srcOff) && (src[ip - 1] == src[ref - 1])) {
+				ip--;
+				ref--;
+			}
+			int len = MIN_MATCH;
+			while ((ip + len < matchLimit) && (src[ip + len] == src[ref + len])) {
+				len++;
+			}
+
+			op = writeSequence(src, anchor, ip - anchor, ip - ref, len, dst, op, dstEnd);
+			if (op < 0) return -1;
+			ip += len;
+			anchor = ip;
+		}
+
+		// final literals
+		op = writeSequence(src, anchor, srcEnd - anchor, 0, 0, dst, op, dstEnd);
+		if (op < 0) return -1;
+		return op - dstOff;
+	}
+
+	/**
+	 * Writes a sequence of literals followed by a match. A match length of zero writes
+	 * a final literal-only sequence.
+	 *
+	 * @return New output position, or -1 if the output limit would be exceeded
+	 */
+	private static int writeSequence(byte[] src, int litOff, int litLen, int offset, int matchLen, byte[] dst, int op, int dstEnd) {
+		int matchCode = (matchLen == 0) ? 0 : matchLen - MIN_MATCH;
+		long needed = 1 + (litLen / 255 + 1) + litLen + ((matchLen == 0) ? 0 : 2 + (matchCode / 255 + 1));
+		if (op + needed > dstEnd) return -1;
+
+		int token = (Math.min(litLen, 15) << 4) | Math.min(matchCode, 15);
+		dst[op++] = (byte) token;
+		if (litLen >= 15) op = writeLength(litLen - 15, dst, op);
+		System.arraycopy(src, litOff, dst, op, litLen);
+		op += litLen;
+
+		if (matchLen == 0) return op;
+		dst[op++] = (byte) offset;
+		dst[op++] = (byte) (offset >>> 8);
+		if (matchCode >= 15) op = writeLength(matchCode - 15, dst, op);
+		return op;
+	}
+
+	private static int writeLength(int rest, byte[] dst, int op) {
+		while (rest >= 255) {
+			dst[op++] = (byte) 255;
+			rest -= 255;
+		}
+		dst[op++] = (byte) rest;
+		return op;
+	}
+
+	/**
+	 * Decompresses an LZ4 block.
+	 *
+	 * @param src Source array
+	 * @param srcOff Offset of compressed block
+	 * @param srcLen Length of compressed block
+	 * @param dst Destination array
+	 * @param dstOff Offset in destination at which to write
+	 * @param dstLen Maximum number of bytes to write
+	 * @return Number of bytes written
+	 * @throws BadFormatException If the block is invalid, or decompresses to more than dstLen bytes
+	 */
+	public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws BadFormatException {
+		int ip = srcOff;
+		int srcEnd = srcOff + srcLen;
+		int op = dstOff;
+		int dstEnd = dstOff + dstLen;
+		if ((srcEnd > src.length) || (dstEnd > dst.length)) throw new IllegalArgumentException("Invalid array bounds");
+
+		while (true) {
+			if (ip >= srcEnd) throw new BadFormatException("Truncated compressed block");
+			int token = src[ip++] & 0xFF;
+
+			int litLen = token >>> 4;
+			if (litLen == 15) {
+				int b;
+				do {
+					if (ip >= srcEnd) throw new BadFormatException("Truncated literal length");
+					b = src[ip++] & 0xFF;
+					litLen += b;
+					if (litLen > dstLen) throw new BadFormatException("Literal length too long");
+				} while (b == 255);
+			}
+			if ((litLen > srcEnd - ip) || (litLen > dstEnd - op)) throw new BadFormatException("Literals out of bounds");
+			System.arraycopy(src, ip, dst, op, litLen);
+			ip += litLen;
+			op += litLen;
+
+			// last sequence has literals only
+			if (ip == srcEnd) break;
+
+			if (ip + 2 > srcEnd) throw new BadFormatException("Truncated match offset");
+			int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+			ip += 2;
+			if ((offset == 0) || (op - offset < dstOff)) throw new BadFormatException("Invalid match offset: " + offset);
+
+			int matchLen = token & 15;
+			if (matchLen == 15) {
+				int b;
+				do {
+					if (ip >= srcEnd) throw new BadFormatException("Truncated match length");
+					b = src[ip++] & 0xFF;
+					matchLen += b;
+					if (matchLen > dstLen) throw new BadFormatException("Match length too long");
+				} while (b == 255);
+			}
+			matchLen += MIN_MATCH;
+			if (matchLen > dstEnd - op) throw new BadFormatException("Match out of bounds");
+
+			// byte by byte, since matches may overlap the output
+			int ref = op - offset;
+			for (int i = 0; i < matchLen; i++) {
+				dst[op + i] = dst[ref + i];
+			}
+			op += matchLen;
+		}
+		return op - dstOff;
+	}
+
+	private static int readInt(byte[] b, int i) {
+		return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | ((b[i + 3] & 0xFF) << 24);
+	}
+
+	private static int hash(int seq) {
+		return (seq * -1640531535) >>> (32 - HASH_BITS);
+	}
+}
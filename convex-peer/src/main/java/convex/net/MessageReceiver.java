@@ -1,9 +1,11 @@
 package convex.net;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -11,8 +13,11 @@ import org.slf4j.LoggerFactory;
 
 import convex.core.Constants;
 import convex.core.data.ACell;
+import convex.core.data.Blob;
 import convex.core.data.Format;
+import convex.core.data.Vectors;
 import convex.core.exceptions.BadFormatException;
+import convex.core.util.Counters;
 
 /**
  * Class responsible for buffered accumulation of messages received by a Peer.
@@ -36,11 +41,15 @@ public class MessageReceiver {
 	public static final int RECEIVE_BUFFER_SIZE = Constants.RECEIVE_BUFFER_SIZE;
 
 	/**
-	 * Buffer for receiving partial messages. Maintained ready for writing.
-	 * 
-	 * Maybe use a direct buffer since we are copying from the socket channel? But probably doesn't make any difference.
+	 * Pool of direct receive buffers shared by all receivers. Idle connections hold no buffer.
 	 */
-	private ByteBuffer buffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+	private static final BufferPool POOL = BufferPool.create(RECEIVE_BUFFER_SIZE, Constants.RECEIVE_BUFFER_POOL_SIZE);
+
+	/**
+	 * Buffer for receiving partial messages, taken from the pool while a message is in 
+	 * progress. Maintained ready for writing. Null when no message is in progress.
+	 */
+	private ByteBuffer buffer = null;
 
 	private final Consumer<Message> action;
 	private final Connection peerConnection;
@@ -85,6 +94,22 @@ public class MessageReceiver {
 	 * @throws BadFormatException If a bad encoding is received
 	 */
 	public synchronized int receiveFromChannel(ReadableByteChannel chan) throws IOException, BadFormatException {
+		if (buffer==null) buffer=POOL.acquire();
+		boolean failed=true;
+		try {
+			int numRead=receiveIntoBuffer(chan);
+			failed=false;
+			return numRead;
+		} finally {
+			// return buffer to pool unless a partial message is pending
+			if (failed||(buffer.position()==0)) {
+				POOL.release(buffer);
+				buffer=null;
+			}
+		}
+	}
+
+	private int receiveIntoBuffer(ReadableByteChannel chan) throws IOException, BadFormatException {
 		int numRead=0;
 
 		// first read a message length
@@ -146,19 +171,31 @@ public class MessageReceiver {
 	 * @throws BadFormatException if the message is incorrectly formatted`
 	 */
 	private void receiveMessage(ByteBuffer bb, int expectedPosition) throws BadFormatException {
-		int firstPos = bb.position();
-		byte messageCode = bb.get();
-		MessageType type = MessageType.decode(messageCode);
-
-		// Read an object from message
-		ACell payload = Format.read(bb);
-
-		int pos = bb.position();
-		if (pos != expectedPosition) {
-			String m = "Unexpected message length, expected: " + (expectedPosition - firstPos) + " but got:"
-					+ (pos - firstPos);
-			log.info(m);
-			throw new BadFormatException(m);
+		int messageCode = bb.get() & 0xFF;
+		MessageType type = MessageType.decode(messageCode & MessageType.CODE_MASK);
+		if (((messageCode & MessageType.FLAG_ACCEPTS_COMPRESSED) != 0) && (peerConnection != null)) {
+			peerConnection.setRemoteCompression();
+		}
+
+		// Copy message content once out of the shared buffer. Cells are decoded from this copy,
+		// and keep slices of it as their encodings, so no further copies are needed.
+		int length = expectedPosition - bb.position();
+		if (length <= 0) throw new BadFormatException("Message with no content of type: " + type);
+		byte[] bs = new byte[length];
+		bb.get(bs);
+		Blob content = ((messageCode & MessageType.FLAG_COMPRESSED) != 0) ? decompress(bs) : Blob.wrap(bs);
+
+		// Read an object from message. Data bundles contain multiple cells.
+		ACell payload;
+		try {
+			if (type == MessageType.DATA_BUNDLE) {
+				payload = readBundle(content);
+			} else {
+				payload = Format.read(content);
+			}
+		} catch (BadFormatException e) {
+			log.info("Bad message content of type {}: {}", type, e.getMessage());
+			throw e;
 		}
 		Message message = Message.create(peerConnection, type, payload);
 		receivedMessageCount++;
@@ -175,4 +212,50 @@ public class MessageReceiver {
 		}
 	}
 
+	/**
+	 * Decompresses message content, consisting of a 2-byte uncompressed length followed by an LZ4 block
+	 *
+	 * @param bs Compressed message content
+	 * @return Blob containing uncompressed message content
+	 * @throws BadFormatException If compressed content is invalid
+	 */
+	private static Blob decompress(byte[] bs) throws BadFormatException {
+		if (bs.length < 3) throw new BadFormatException("Compressed message too short");
+		int length = ((bs[0] & 0xFF) << 8) | (bs[1] & 0xFF);
+		if ((length == 0) || (length > Format.LIMIT_ENCODING_LENGTH)) {
+			throw new BadFormatException("Invalid uncompressed message length: " + length);
+		}
+		byte[] data = new byte[length];
+		int n = LZ4.decompress(bs, 2, bs.length - 2, data, 0, length);
+		if (n != length) throw new BadFormatException("Uncompressed length mismatch, expected " + length + " but got " + n);
+		Counters.compressedReceive++;
+		return Blob.wrap(data);
+	}
+
+	/**
+	 * Reads a sequence of cell encodings making up the message content. Each cell
+	 * has the slice of the content containing its encoding attached.
+	 *
+	 * @return Vector of cells read
+	 * @throws BadFormatException if any encoding is invalid, or the bundle is empty
+	 */
+	private static ACell readBundle(Blob content) throws BadFormatException {
+		ArrayList<ACell> cells = new ArrayList<>();
+		ByteBuffer bb = content.getByteBuffer();
+		try {
+			while (bb.hasRemaining()) {
+				int start = bb.position();
+				ACell cell = Format.read(bb);
+				if (cell != null) {
+					cell.attachEncoding(content.slice(start, bb.position() - start));
+					cells.add(cell);
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			throw new BadFormatException("Incomplete cell encoding in data bundle", e);
+		}
+		if (cells.isEmpty()) throw new BadFormatException("Empty data bundle");
+		return Vectors.create(cells);
+	}
+
 }
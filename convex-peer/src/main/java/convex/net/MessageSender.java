@@ -3,6 +3,9 @@ package convex.net;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,20 +13,38 @@ import org.slf4j.LoggerFactory;
 import convex.core.Constants;
 
 /**
- * Message sender responsible for moving bytes from a ByteBuffer to a ByteChannel
- * 
- * Must call maybeSendBytes to attempt to flush buffer to channel.
+ * Message sender responsible for moving bytes from queued message frames to a ByteChannel
+ *
+ * Frames are queued as ByteBuffers without copying, typically a small header buffer followed
+ * by the cached encoding of the payload. Queued buffers are written with gathering writes
+ * if the channel supports them.
+ *
+ * Must call maybeSendBytes to attempt to flush queued frames to channel.
  */
 public class MessageSender {
+	/**
+	 * Maximum number of bytes queued for sending before messages are rejected
+	 */
 	public static final int SEND_BUFFER_SIZE = Constants.SEND_BUFFER_SIZE;
 
+	/**
+	 * Maximum number of buffers written in a single gathering write
+	 */
+	private static final int MAX_GATHER = 64;
+
 	private final ByteChannel channel;
 
 	/**
-	 * Buffer for send bytes. Retained in a state ready for reading, so we flip on
-	 * initialisation. Must be accessed holding lock on buffer.
+	 * Queue of buffers to send, each ready for reading. Must be accessed holding lock on queue.
 	 */
-	private final ByteBuffer buffer = ByteBuffer.allocate(SEND_BUFFER_SIZE).flip();
+	private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+
+	/**
+	 * Number of bytes remaining in queued buffers. Must be accessed holding lock on queue.
+	 */
+	private long queuedBytes = 0;
+
+	private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
 
 	protected static final Logger log = LoggerFactory.getLogger(MessageSender.class.getName());
 
@@ -32,44 +53,74 @@ public class MessageSender {
 	}
 
 	/**
-	 * Buffers a message for sending.
-	 * 
-	 * @param messageFrame Source ByteBuffer containing complete message bytes (including length)
+	 * Buffers a message for sending. All buffers are queued together, so that frames
+	 * from different threads are never interleaved.
+	 *
+	 * Buffers are not copied, so must not be modified after this call.
+	 *
+	 * @param buffers Source ByteBuffers containing complete message bytes (including length), in order
 	 * @return True if successfully buffered, false otherwise (insufficient send buffer
 	 *         size)
 	 */
-	public boolean bufferMessage(ByteBuffer messageFrame) {
-		synchronized (buffer) {
-			// compact buffer, ready for writing			
-			buffer.compact();
-			
+	public boolean bufferMessage(ByteBuffer... buffers) {
+		long length = 0;
+		for (ByteBuffer b : buffers) {
+			length += b.remaining();
+		}
+		synchronized (queue) {
 			// return false if insufficient space to send
-			if (buffer.remaining() < messageFrame.remaining()) {
-				// flip to maintain readiness for writing
-				buffer.flip();
-				return false;
+			if (queuedBytes + length > SEND_BUFFER_SIZE) return false;
+
+			for (ByteBuffer b : buffers) {
+				if (b.hasRemaining()) queue.add(b);
 			}
-			buffer.put(messageFrame);
-			// flip so ready for reading once again
-			buffer.flip();
+			queuedBytes += length;
 		}
 		return true;
 	}
 
+	/**
+	 * Gets the number of bytes waiting to be sent
+	 * @return Number of queued bytes
+	 */
+	public long getQueuedBytes() {
+		synchronized (queue) {
+			return queuedBytes;
+		}
+	}
+
 	/**
 	 * Try to send bytes on the outbound channel.
-	 * 
+	 *
 	 * @return True if all bytes have been sent, false otherwise.
 	 * @throws IOException If IO error occurs
 	 */
 	public boolean maybeSendBytes() throws IOException {
-		synchronized (buffer) {
-			if (!buffer.hasRemaining()) return true;
+		synchronized (queue) {
+			while (!queue.isEmpty()) {
+				// write to channel if possible. May write zero or more bytes
+				long written;
+				if (channel instanceof GatheringByteChannel) {
+					int n = 0;
+					for (ByteBuffer b : queue) {
+						gather[n++] = b;
+						if (n == MAX_GATHER) break;
+					}
+					written = ((GatheringByteChannel) channel).write(gather, 0, n);
+					Arrays.fill(gather, 0, n, null);
+				} else {
+					written = channel.write(queue.peek());
+				}
+				queuedBytes -= written;
 
-			// write to channel if possible. May write zero or more bytes
-			channel.write(buffer);
+				// discard buffers that have been fully written
+				while (!queue.isEmpty() && !queue.peek().hasRemaining()) {
+					queue.poll();
+				}
+				if (written == 0) break;
+			}
 
-			if (buffer.hasRemaining()) {
+			if (!queue.isEmpty()) {
 				log.debug("Send buffer full!");
 				return false;
 			} else {
@@ -99,7 +99,48 @@ public enum MessageType {
 	 *
 	 * Expected Result is a Vector: [signed-belief-hash states-hash initial-state-hash peer-key consensus-state-hash]
 	 */
-	STATUS(11);
+	STATUS(11),
+
+	/**
+	 * A request to provide a batch of missing data. Subject to the same conditions
+	 * as MISSING_DATA.
+	 *
+	 * Payload is: [budget hash1 hash2 ...]
+	 *
+	 * Where budget is the maximum number of bytes of additional cells below the
+	 * requested cells that the requester would like to receive. If zero, only the
+	 * requested cells are returned. Receivers may apply a lower budget.
+	 *
+	 * Receiver should respond with one or more DATA_BUNDLE messages containing
+	 * the requested cells available in their store.
+	 */
+	REQUEST_DATA(12),
+
+	/**
+	 * A message relaying multiple cells of data, typically in response to a
+	 * REQUEST_DATA message.
+	 *
+	 * On the wire, the message content is a sequence of one or more cell encodings
+	 * filling the message frame, rather than a single encoded payload. The
+	 * received Message has a Vector of the decoded cells as its payload.
+	 */
+	DATA_BUNDLE(13);
+
+	/**
+	 * Flag bit in the message code byte indicating that the message content is compressed
+	 * as a 2-byte uncompressed length followed by an LZ4 block
+	 */
+	public static final int FLAG_COMPRESSED = 0x80;
+
+	/**
+	 * Flag bit in the message code byte indicating that the sender accepts compressed messages
+	 */
+	public static final int FLAG_ACCEPTS_COMPRESSED = 0x40;
+
+	/**
+	 * Mask for the message type in the message code byte
+	 */
+	public static final int CODE_MASK = 0x3F;
 
 	private final byte messageCode;
 
@@ -131,6 +172,10 @@ public enum MessageType {
 			return GOODBYE;
 		case 11:
 			return STATUS;
+		case 12:
+			return REQUEST_DATA;
+		case 13:
+			return DATA_BUNDLE;
 		}
 		throw new BadFormatException("Invalid message code: " + i);
 	}
@@ -8,29 +8,25 @@ import java.net.ServerSocket;
 import java.net.StandardSocketOptions;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import convex.core.Constants;
 import convex.core.exceptions.BadFormatException;
-import convex.core.store.Stores;
 import convex.peer.Server;
 
 /**
  * NIO Server implementation that handles incoming messages on a given port.
  *
- * Allocates a single thread for the selector.
+ * Connections are handled by a group of selector threads, with each accepted connection assigned
+ * to a selector round-robin.
  *
- * Incoming messages are associated with a Connection (which is created if required), then placed
- * on the receive message queue. This will block if the receive queue is full (thereby applying
- * back-pressure to clients)
+ * Incoming messages are associated with a Connection (which is created if required), then passed
+ * to the Server's receive action. The Server applies back-pressure to clients by pausing reads on
+ * connections while its receive queue is full.
  *
  */
 public class NIOServer implements Closeable {
@@ -40,30 +36,37 @@ public class NIOServer implements Closeable {
 
 	private ServerSocketChannel ssc=null;
 
-	private BlockingQueue<Message> receiveQueue;
-
-	private Selector selector=null;
-
-	private boolean running=false;
+	private SelectorGroup selectors=null;
 
 	private final Server server;
 
-	private NIOServer(Server server, BlockingQueue<Message> receiveQueue) {
+	private NIOServer(Server server) {
 		this.server=server;
-		this.receiveQueue=receiveQueue;
 	}
 
 	/**
-	 * Creates a new unlaunched NIO server
+	 * Creates a new unlaunched NIO server. Received messages are passed to the Server's receive action.
 	 * @param server Peer Server instance for this NIOServer
-	 * @param receiveQueue Queue for received messages
 	 * @return New NIOServer instance
 	 */
-	public static NIOServer create(Server server, BlockingQueue<Message> receiveQueue) {
-		return new NIOServer(server,receiveQueue);
+	public static NIOServer create(Server server) {
+		return new NIOServer(server);
 	}
 
+	/**
+	 * Launches this server with the default number of selector threads
+	 * @param port Port to listen on, or null for any free port
+	 */
 	public void launch(Integer port) {
+		launch(port,Constants.SERVER_SELECTOR_THREADS);
+	}
+
+	/**
+	 * Launches this server, accepting connections on the given port.
+	 * @param port Port to listen on, or null for any free port
+	 * @param selectorThreads Number of selector threads handling connections
+	 */
+	public void launch(Integer port, int selectorThreads) {
 		if (port==null) port=0;
 
 		try {
@@ -78,100 +81,33 @@ public class NIOServer implements Closeable {
 			ssc.configureBlocking(false);
 			port=ssc.socket().getLocalPort();
 			
-			// Register for accept. Do this before selection loop starts and
-			// before we return from launch!
-			selector = Selector.open();
-			ssc.register(selector, SelectionKey.OP_ACCEPT);
-
-			// set running status now, so that loops don't terminate
-			running=true;
-
-			Thread selectorThread=new Thread(selectorLoop,"NIO Server selector loop on port: "+port);
-			selectorThread.setDaemon(true);
-			selectorThread.start();
-			log.info("NIO server started on port {}",port);
+			// Register for accept. Do this before selection loops start and
+			// before we return from launch! Accepted connections are spread over
+			// all selectors in the group.
+			selectors = SelectorGroup.create(selectorThreads, this::handleKey, server.getStore());
+			selectors.register(ssc, SelectionKey.OP_ACCEPT, null);
+
+			selectors.start("NIO Server selector loop on port: "+port);
+			log.info("NIO server started on port {} with {} selector threads",port,selectorThreads);
 		} catch (Exception e) {
 			throw new Error("Can't bind NIOServer to port: "+port,e);
 		}
 	}
 
-
 	/**
-	 * Runnable class for accepting socket connections and incoming data, one per peer
-	 * If this gets maxed out, rely on backpressure to throttle clients.
+	 * Handles a selected key, accepting socket connections and incoming data.
+	 * If selector threads get maxed out, rely on backpressure to throttle clients.
 	 */
-	private Runnable selectorLoop= new Runnable() {
-		@Override
-		public void run() {
-			// Use the store configured for the owning server.
-			Stores.setCurrent(server.getStore());
-			try {
-
-				while (running) {
-					selector.select(1000);
-
-					Set<SelectionKey> keys = selector.selectedKeys();
-					Iterator<SelectionKey> it = keys.iterator();
-					while(it.hasNext()) {
-						SelectionKey key=it.next();
-						it.remove();
-
-						try {
-							// Just do one op on each key
-			                if (key.isAcceptable()) {
-			                	accept(selector);
-			                } else if (key.isReadable()) {
-			                	selectRead(key);
-			                } else if (key.isWritable()) {
-			                	selectWrite(key);
-			                }
-						} catch (ClosedChannelException e) {
-							// channel was closed, just lose the key?
-							log.debug("Client closed channel");
-							key.cancel();
-						} catch (IOException e) {
-							log.warn("Unexpected IOException, canceling key: {}",e);
-							// e.printStackTrace();
-							key.cancel();
-						}
-					}
-					// keys.clear();
-				}
-			} catch (IOException e) {
-				log.error("Unexpected IOException, terminating selector loop: {}",e);
-				// print error and terminate
-				e.printStackTrace();
-			} finally {
-				try {
-					// close all client channels
-					for (SelectionKey key: selector.keys()) {
-						key.channel().close();
-					}
-					selector.close();
-					selector=null;
-				} catch (IOException e) {
-					log.error("IOException while closing NIO server");
-					e.printStackTrace();
-				} finally {
-					selector=null;
-				}
-
-
-				if (ssc!=null) {
-					try {
-						ssc.close();
-					} catch (IOException e) {
-						log.error("IOException while closing NIO socket channel");
-						e.printStackTrace();
-					} finally {
-						ssc=null;
-					}
-				}
-
-				log.info("Selector loop ended on port: "+getPort());
-			}
+	private void handleKey(SelectionKey key) throws IOException {
+		// Just do one op on each key
+		if (key.isAcceptable()) {
+			accept();
+		} else if (key.isReadable()) {
+			selectRead(key);
+		} else if (key.isWritable()) {
+			selectWrite(key);
 		}
-	};
+	}
 
 	/**
 	 * Gets the port that this server instance is listening on.
@@ -196,13 +132,17 @@ public class NIOServer implements Closeable {
 		if (pc!=null) return pc;
 		SocketChannel sc=(SocketChannel) key.channel();
 		assert(!sc.isBlocking());
-		pc=createPC(sc,receiveQueue);
+		pc=createPC(sc);
+		// replies must be written by the selector that owns this channel
+		pc.setSelector(key.selector());
     	key.attach(pc);
     	return pc;
 	}
 
-	private Connection createPC(SocketChannel sc, BlockingQueue<Message> queue) throws IOException {
-		return Connection.create(sc,server.getReceiveAction(),server.getStore(),null);
+	private Connection createPC(SocketChannel sc) throws IOException {
+		Connection pc=Connection.create(sc,server.getReceiveAction(),server.getStore(),null);
+		pc.setCompression(server.isCompressionEnabled());
+		return pc;
 	}
 
 	protected void selectRead(SelectionKey key) throws IOException {
@@ -233,14 +173,22 @@ public class NIOServer implements Closeable {
 
 	@Override
 	public void close() {
-		running=false;
-		if (selector!=null) {
-			selector.wakeup();
+		if (selectors!=null) {
+			selectors.close();
+		}
+		if (ssc!=null) {
+			try {
+				ssc.close();
+			} catch (IOException e) {
+				log.error("IOException while closing NIO socket channel");
+			} finally {
+				ssc=null;
+			}
+			log.info("NIO server closed");
 		}
-
 	}
 
-	private void accept(Selector selector) throws IOException, ClosedChannelException {
+	private void accept() throws IOException, ClosedChannelException {
 		SocketChannel socketChannel=ssc.accept();
 		if (socketChannel==null) return; // false alarm? Nobody there?
 		log.debug("New connection accepted: {}", socketChannel);
@@ -248,7 +196,7 @@ public class NIOServer implements Closeable {
 		
 		// TODO: Confirm we don't want  Nagle?
 		socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
-		socketChannel.register(selector, SelectionKey.OP_READ);
+		selectors.register(socketChannel, SelectionKey.OP_READ, null);
 	}
 
 	/**
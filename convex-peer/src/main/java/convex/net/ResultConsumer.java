@@ -10,6 +10,7 @@ import org.slf4j.LoggerFactory;
 
 import convex.core.Result;
 import convex.core.data.ACell;
+import convex.core.data.AVector;
 import convex.core.data.Hash;
 import convex.core.data.Ref;
 import convex.core.exceptions.MissingDataException;
@@ -44,6 +45,22 @@ public abstract class ResultConsumer implements Consumer<Message> {
 					}
 					break;
 				}
+				case DATA_BUNDLE: {
+					// Store all cells, then replay any messages waiting for them
+					AVector<ACell> cells = m.getPayload();
+					long n = cells.count();
+					ArrayList<Hash> hashes = new ArrayList<>();
+					for (long i = 0; i < n; i++) {
+						Ref<?> r = Ref.get(cells.get(i));
+						r.persistShallow();
+						hashes.add(r.getHash());
+					}
+					log.trace("Recieved DATA_BUNDLE with {} cells", n);
+					for (Hash h : hashes) {
+						unbuffer(h);
+					}
+					break;
+				}
 				case MISSING_DATA: {
 					// try to be helpful by returning sent data
 					Hash h = m.getPayload();
@@ -0,0 +1,198 @@
+package convex.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+
+/**
+ * A group of NIO selectors, each running its own event loop thread.
+ *
+ * Channels are assigned to selectors round-robin, so that the work of reading and writing many
+ * connections is spread over several threads. A channel stays with the same selector (and therefore
+ * the same thread) for its whole lifetime, so reads and writes for one connection are never handled
+ * concurrently.
+ */
+public class SelectorGroup implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(SelectorGroup.class.getName());
+
+	/**
+	 * Handler for selected keys. Called on the selector thread owning the key.
+	 */
+	@FunctionalInterface
+	public interface KeyHandler {
+		/**
+		 * Handles a selected key. Any IOException cancels the key.
+		 * @param key Selected key, known to be valid
+		 * @throws IOException If an IO error occurs on the key's channel
+		 */
+		void handle(SelectionKey key) throws IOException;
+	}
+
+	private final Selector[] selectors;
+	private final Thread[] threads;
+	private final KeyHandler handler;
+	private final AStore store;
+	private final AtomicInteger nextIndex = new AtomicInteger(0);
+
+	private volatile boolean running = false;
+
+	private SelectorGroup(int n, KeyHandler handler, AStore store) throws IOException {
+		this.selectors = new Selector[n];
+		this.threads = new Thread[n];
+		this.handler = handler;
+		this.store = store;
+		for (int i = 0; i < n; i++) {
+			selectors[i] = Selector.open();
+		}
+	}
+
+	/**
+	 * Creates a SelectorGroup. Selector threads are not started until {@link #start(String)} is called.
+	 *
+	 * @param threads Number of selectors, each with one thread
+	 * @param handler Handler for selected keys
+	 * @param store Store to set as current on selector threads, or null to leave unset
+	 * @return New SelectorGroup instance
+	 * @throws IOException If a selector cannot be opened
+	 */
+	public static SelectorGroup create(int threads, KeyHandler handler, AStore store) throws IOException {
+		if (threads < 1) throw new IllegalArgumentException("Selector group needs at least one thread");
+		return new SelectorGroup(threads, handler, store);
+	}
+
+	/**
+	 * Starts the selector threads. Threads are daemon threads.
+	 *
+	 * @param name Base name for selector threads
+	 */
+	public synchronized void start(String name) {
+		if (running) return;
+		running = true;
+		for (int i = 0; i < selectors.length; i++) {
+			final Selector selector = selectors[i];
+			Thread t = new Thread(() -> selectorLoop(selector), name + " " + (i + 1));
+			t.setDaemon(true);
+			threads[i] = t;
+			t.start();
+		}
+	}
+
+	/**
+	 * Gets the next selector in round-robin order
+	 *
+	 * @return Selector from this group
+	 */
+	public Selector next() {
+		int i = Math.floorMod(nextIndex.getAndIncrement(), selectors.length);
+		return selectors[i];
+	}
+
+	/**
+	 * Registers a channel with the next selector in round-robin order
+	 *
+	 * @param channel Channel to register. Must be non-blocking.
+	 * @param ops Interest ops
+	 * @param attachment Attachment for selection key, may be null
+	 * @return Selection key for the registered channel
+	 * @throws ClosedChannelException If the channel is closed
+	 */
+	public SelectionKey register(SelectableChannel channel, int ops, Object attachment) throws ClosedChannelException {
+		Selector selector = next();
+		SelectionKey key = channel.register(selector, ops, attachment);
+		selector.wakeup();
+		return key;
+	}
+
+	/**
+	 * Gets the number of selectors in this group
+	 *
+	 * @return Number of selectors
+	 */
+	public int getSelectorCount() {
+		return selectors.length;
+	}
+
+	private void selectorLoop(Selector selector) {
+		if (store != null) Stores.setCurrent(store);
+		log.debug("Selector loop started: {}", Thread.currentThread().getName());
+		try {
+			while (running) {
+				try {
+					selector.select(1000);
+				} catch (IOException e) {
+					log.error("Unexpected IOException, terminating selector loop: {}", e);
+					break;
+				}
+
+				Set<SelectionKey> keys = selector.selectedKeys();
+				Iterator<SelectionKey> it = keys.iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove(); // always remove key from selection set
+					if (!key.isValid()) continue;
+
+					try {
+						handler.handle(key);
+					} catch (ClosedChannelException e) {
+						log.debug("Channel closed, cancelling key");
+						key.cancel();
+					} catch (IOException e) {
+						log.debug("Unexpected IOException, cancelling key: {}", e);
+						key.cancel();
+					} catch (CancelledKeyException e) {
+						log.debug("Cancelled key");
+					} catch (Throwable t) {
+						log.error("Uncaught error in selector loop, cancelling key: {}", t);
+						key.cancel();
+					}
+				}
+			}
+		} finally {
+			// close all channels handled by this selector
+			try {
+				for (SelectionKey key : selector.keys()) {
+					key.channel().close();
+				}
+				selector.close();
+			} catch (IOException e) {
+				log.error("IOException while closing selector: {}", e);
+			}
+			log.debug("Selector loop ended: {}", Thread.currentThread().getName());
+		}
+	}
+
+	/**
+	 * Stops all selector threads. Channels registered with this group are closed.
+	 */
+	@Override
+	public synchronized void close() {
+		running = false;
+		for (int i = 0; i < selectors.length; i++) {
+			Selector selector = selectors[i];
+			if (threads[i] == null) {
+				// never started, so no loop to close the selector
+				try {
+					selector.close();
+				} catch (IOException e) {
+					log.error("IOException while closing selector: {}", e);
+				}
+			} else {
+				selector.wakeup();
+			}
+		}
+	}
+}
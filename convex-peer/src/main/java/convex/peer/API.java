@@ -52,6 +52,13 @@ public class API {
 	 * <li>:state (optional) - Genesis state. Defaults to a fresh genesis state for the Peer if neither :source nor :state is specified
 	 * <li>:restore (optional) - Boolean Flag to restore from existing store. Default to true
 	 * <li>:persist (optional) - Boolean flag to determine if peer state should be persisted in store at server close. Default true.
+	 * <li>:query-threads (optional) - Number of threads for handling queries and status requests. Defaults to half the available processors.
+	 * <li>:data-threads (optional) - Number of threads for handling missing data requests. Default 2.
+	 * <li>:verify-threads (optional) - Number of threads for verifying signatures on incoming messages. Defaults to the available processors.
+	 * <li>:compression (optional) - Boolean flag to compress large messages on connections with peers that also enable compression. Support is advertised in STATUS replies, and outgoing connections only use it once the remote Peer has advertised it. Default false.
+	 * <li>:pipeline-execution (optional) - Boolean flag to execute consensus Blocks on a separate thread, so Belief merges don't wait for execution. Default false.
+	 * <li>:parallel-execution (optional) - Parallel execution of transactions in consensus Blocks, if :pipeline-execution is enabled. Either :speculative (or true) for optimistic execution of all transactions, or :scheduled to run only independent transfers in parallel. Default sequential.
+	 * <li>:selector-threads (optional) - Number of NIO selector threads handling incoming connections. Defaults to half the available processors, up to 8.
 	 * </ul>
 	 *
 	 * @param peerConfig Config map for the new Peer
@@ -2,10 +2,13 @@ package convex.peer;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.UnresolvedAddressException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -121,7 +124,7 @@ public class ConnectionManager {
 
 		int targetPeerCount=getTargetPeerCount();
 		int currentPeerCount=connections.size();
-		double totalStake=s.computeStakes().get(null);
+		double totalStake=s.getStakeTable().getTotalStake();
 
 		AccountKey[] peers = connections.keySet().toArray(new AccountKey[currentPeerCount]);
 		for (AccountKey p: peers) {
@@ -508,6 +511,8 @@ public class ConnectionManager {
 	}
 
 	/**
+	 * Broadcasts a Message to all connected Peers. The message and any novelty in its
+	 * payload are encoded once, and the same frames sent to every Peer.
 	 *
 	 * @param msg Message to broadcast
 	 *
@@ -515,11 +520,49 @@ public class ConnectionManager {
 	 *
 	 */
 	public synchronized void broadcast(Message msg, boolean requireTrusted) {
+		// persist the payload once, collecting any novelty that peers will need
+		ACell payload = msg.getPayload();
+		ArrayList<ACell> novelty = new ArrayList<>();
+		ACell.createPersisted(payload, r -> {
+			ACell o = r.getValue();
+			if (o != payload) novelty.add(o);
+		});
+
+		ArrayList<ByteBuffer> frames = Connection.createDataBundleFrames(novelty);
+		frames.add(Connection.createFrame(msg.getType(), payload));
+		broadcastFrames(frames, requireTrusted);
+	}
+
+	/**
+	 * Broadcasts cells to all connected Peers as DATA_BUNDLE messages. Cells are
+	 * encoded once, and the same frames sent to every Peer.
+	 *
+	 * @param cells Cells to broadcast, typically novelty in the order persisted.
+	 * @param requireTrusted If true, only send to trusted Peers
+	 */
+	public synchronized void broadcastData(List<? extends ACell> cells, boolean requireTrusted) {
+		if (cells.isEmpty()) return;
+		broadcastFrames(Connection.createDataBundleFrames(cells), requireTrusted);
+	}
+
+	private void broadcastFrames(List<ByteBuffer> frames, boolean requireTrusted) {
+		// compressed frames, created on demand for Peers that accept them
+		ArrayList<ByteBuffer> compressedFrames = null;
 		synchronized(connections) {
 			for (Connection pc : connections.values()) {
 				try {
 					if ( (requireTrusted && pc.isTrusted()) || !requireTrusted) {
-						pc.sendMessage(msg);
+						List<ByteBuffer> toSend = frames;
+						if (pc.isCompressing()) {
+							if (compressedFrames == null) compressedFrames = compressFrames(frames);
+							toSend = compressedFrames;
+						}
+						for (ByteBuffer frame : toSend) {
+							if (!pc.sendFrame(frame)) {
+								log.debug("Broadcast frame dropped due to full buffer for {}", pc.getRemoteAddress());
+								break;
+							}
+						}
 					}
 				} catch (IOException e) {
 					log.error("Error in broadcast: ", e);
@@ -528,6 +571,19 @@ public class ConnectionManager {
 		}
 	}
 
+	/**
+	 * Compresses frames for sending to Peers that accept compression. Frames that don't
+	 * compress well are kept uncompressed.
+	 */
+	private static ArrayList<ByteBuffer> compressFrames(List<ByteBuffer> frames) {
+		ArrayList<ByteBuffer> result = new ArrayList<>(frames.size());
+		for (ByteBuffer frame : frames) {
+			ByteBuffer compressed = Connection.compressFrame(frame);
+			result.add((compressed == null) ? frame : compressed);
+		}
+		return result;
+	}
+
 	/**
 	 * Connects explicitly to a Peer at the given host address
 	 * @param hostAddress Address to connect to
@@ -543,6 +599,7 @@ public class ConnectionManager {
 			AVector<ACell> v=status.getValue();
 			AccountKey peerKey =RT.ensureAccountKey(v.get(3));
 			if (peerKey==null) return null;
+			boolean remoteCompression=(v.count()>5)&&Keywords.COMPRESSION.equals(v.get(5));
 
 			Connection existing=connections.get(peerKey);
 			if ((existing!=null)&&!existing.isClosed()) return existing;
@@ -551,6 +608,8 @@ public class ConnectionManager {
 			synchronized(connections) {
 				// reopen with connection to the peer and handle server messages
 				newConn = Connection.connect(hostAddress, server.peerReceiveAction, server.getStore(), null,Constants.SOCKET_PEER_BUFFER_SIZE,Constants.SOCKET_PEER_BUFFER_SIZE);
+				newConn.setCompression(server.isCompressionEnabled());
+				if (remoteCompression) newConn.setRemoteCompression();
 				connections.put(peerKey, newConn);
 			}
 			server.raiseServerChange("connection");
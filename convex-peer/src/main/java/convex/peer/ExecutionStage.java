@@ -0,0 +1,188 @@
+package convex.peer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.Block;
+import convex.core.BlockResult;
+import convex.core.Order;
+import convex.core.Peer;
+import convex.core.State;
+import convex.core.data.Keyword;
+import convex.core.data.Keywords;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+
+/**
+ * Pipeline stage that executes consensus Blocks on a dedicated thread, behind the Server's
+ * update thread.
+ *
+ * The update thread merges Beliefs with execution deferred, so consensus is not delayed by
+ * CVM execution, and passes each updated Peer to this stage. Blocks are executed strictly in
+ * consensus order, starting from the Peer's last executed State. BlockResults are published
+ * in the same order for the update thread to collect, add to its Peer and report to clients.
+ */
+public class ExecutionStage {
+
+	private static final Logger log = LoggerFactory.getLogger(ExecutionStage.class.getName());
+
+	/**
+	 * Pause before retrying after an unexpected failure to execute a Block
+	 */
+	private static final long RETRY_PAUSE = 100;
+
+	/**
+	 * Maximum number of attempts to execute a Block before the stage fails
+	 */
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final AStore store;
+	private final Keyword mode;
+	private final Thread thread;
+
+	/**
+	 * Results of executed Blocks, in consensus order
+	 */
+	private final ConcurrentLinkedQueue<BlockResult> results = new ConcurrentLinkedQueue<>();
+
+	// Fields below guarded by this
+	private Order order = null;
+	private long consensusPoint;
+	private boolean running = true;
+
+	/**
+	 * Cause of failure if the stage stopped because a Block could not be executed, or null
+	 */
+	private volatile Throwable failure = null;
+
+	// Fields below only used by the execution thread after start
+	private State state;
+	private long position;
+
+	private ExecutionStage(Peer peer, AStore store, Keyword mode, String name) {
+		this.store = store;
+		this.mode = mode;
+		this.state = peer.getConsensusState();
+		this.position = peer.getExecutedPoint();
+		this.consensusPoint = position;
+		this.thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Creates an execution stage and starts its thread
+	 * @param peer Peer from which to start execution, at its last executed State
+	 * @param store Store to use for the execution thread
+	 * @param mode Parallel execution mode, either :speculative, :scheduled or null for sequential
+	 * @param name Name for the execution thread
+	 * @return New ExecutionStage instance
+	 */
+	public static ExecutionStage create(Peer peer, AStore store, Keyword mode, String name) {
+		// a restored Peer may need to load data from its store
+		AStore tempStore = Stores.current();
+		try {
+			Stores.setCurrent(store);
+			ExecutionStage stage = new ExecutionStage(peer, store, mode, name);
+			stage.update(peer);
+			stage.thread.start();
+			return stage;
+		} finally {
+			Stores.setCurrent(tempStore);
+		}
+	}
+
+	/**
+	 * Updates this stage with the latest Peer. Any new consensus Blocks will be executed.
+	 * @param peer Latest Peer
+	 */
+	public void update(Peer peer) {
+		long cp = peer.getConsensusPoint();
+		synchronized (this) {
+			if (cp <= consensusPoint) return;
+			order = peer.getPeerOrder();
+			consensusPoint = cp;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Gets the next BlockResult, in consensus order
+	 * @return BlockResult, or null if none available
+	 */
+	public BlockResult poll() {
+		return results.poll();
+	}
+
+	/**
+	 * Gets the number of consensus Blocks awaiting execution or collection
+	 * @return Number of Blocks
+	 */
+	public synchronized long getBacklog() {
+		return consensusPoint - position + results.size();
+	}
+
+	/**
+	 * Gets the cause of failure if this stage stopped because a consensus Block could not be
+	 * executed. No further Blocks are executed after a failure.
+	 * @return Cause of failure, or null if the stage has not failed
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Stops the execution thread. Blocks not yet executed are left for the Peer.
+	 */
+	public void close() {
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+		thread.interrupt();
+	}
+
+	private void run() {
+		Stores.setCurrent(store);
+		int attempts = 0;
+		try {
+			while (true) {
+				Block block;
+				synchronized (this) {
+					while (running && (position >= consensusPoint)) {
+						wait();
+					}
+					if (!running) return;
+					block = order.getBlock(position);
+				}
+
+				try {
+					BlockResult br = apply(state, block);
+					state = br.getState();
+					synchronized (this) {
+						position++;
+						results.add(br);
+					}
+					attempts = 0;
+				} catch (Exception e) {
+					if (++attempts >= MAX_ATTEMPTS) {
+						log.error("Failed to execute Block {} after {} attempts, stopping execution", position, attempts, e);
+						failure = e;
+						return;
+					}
+					log.warn("Unexpected failure executing Block {}, will retry: {}", position, e);
+					Thread.sleep(RETRY_PAUSE);
+				}
+			}
+		} catch (InterruptedException e) {
+			log.debug("Execution stage interrupted");
+		}
+	}
+
+	private BlockResult apply(State s, Block block) {
+		if (Keywords.SCHEDULED.equals(mode)) return s.applyBlockScheduled(block);
+		if (Keywords.SPECULATIVE.equals(mode)) return s.applyBlockParallel(block);
+		return s.applyBlock(block);
+	}
+}
@@ -0,0 +1,182 @@
+package convex.peer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import convex.net.Message;
+import convex.net.MessageType;
+
+/**
+ * Bounded queue of received messages with separate lanes for different priorities.
+ *
+ * Messages are taken from the highest priority lane first, so peer protocol messages such as
+ * Beliefs and data are never stuck behind a backlog of client transactions or queries. Each
+ * lane has its own capacity, so a flood of low priority messages cannot take space needed
+ * for higher priority ones.
+ *
+ * High and low water marks allow the owner to apply back pressure to senders before a lane
+ * is full.
+ */
+public class PriorityMessageQueue {
+
+	/**
+	 * Lane for peer protocol messages: Beliefs, data and connection management
+	 */
+	public static final int HIGH = 0;
+
+	/**
+	 * Lane for client transactions
+	 */
+	public static final int NORMAL = 1;
+
+	/**
+	 * Lane for client queries and status requests
+	 */
+	public static final int LOW = 2;
+
+	private static final int NUM_LANES = 3;
+
+	private final List<ArrayDeque<Message>> lanes;
+	private final int capacity;
+	private final int highWater;
+	private final int lowWater;
+	private int size = 0;
+
+	private PriorityMessageQueue(int capacity) {
+		this.capacity = capacity;
+		this.highWater = Math.max(1, (capacity * 3) / 4);
+		this.lowWater = capacity / 4;
+		lanes = new ArrayList<>(NUM_LANES);
+		for (int i = 0; i < NUM_LANES; i++) {
+			lanes.add(new ArrayDeque<>());
+		}
+	}
+
+	/**
+	 * Creates a PriorityMessageQueue
+	 * @param capacity Maximum number of messages in each lane
+	 * @return New PriorityMessageQueue instance
+	 */
+	public static PriorityMessageQueue create(int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("Queue capacity must be positive");
+		return new PriorityMessageQueue(capacity);
+	}
+
+	/**
+	 * Gets the priority lane for a message type
+	 * @param type Message type
+	 * @return Lane index, HIGH, NORMAL or LOW
+	 */
+	public static int getPriority(MessageType type) {
+		switch (type) {
+		case TRANSACT:
+			return NORMAL;
+		case QUERY:
+		case STATUS:
+			return LOW;
+		default:
+			return HIGH;
+		}
+	}
+
+	/**
+	 * Adds a message to the queue if there is space in its lane
+	 * @param m Message to add
+	 * @return true if added, false if the lane is full
+	 */
+	public synchronized boolean offer(Message m) {
+		ArrayDeque<Message> lane = lanes.get(getPriority(m.getType()));
+		if (lane.size() >= capacity) return false;
+		lane.add(m);
+		size++;
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Adds a message that has already been accepted once, e.g. a partial message that can now
+	 * be processed. Ignores capacity, since the message was already counted against it.
+	 * @param m Message to add
+	 */
+	public synchronized void requeue(Message m) {
+		lanes.get(getPriority(m.getType())).add(m);
+		size++;
+		notifyAll();
+	}
+
+	/**
+	 * Takes the highest priority message, waiting if necessary
+	 * @param timeout Maximum time to wait
+	 * @param unit Time unit for timeout
+	 * @return Message, or null if none became available before the timeout
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public synchronized Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (size == 0) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) return null;
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		for (ArrayDeque<Message> lane : lanes) {
+			Message m = lane.poll();
+			if (m != null) {
+				size--;
+				return m;
+			}
+		}
+		throw new Error("Queue size inconsistent");
+	}
+
+	/**
+	 * Checks if the lane for a message type has passed its high water mark, in which case
+	 * senders of such messages should be slowed down
+	 * @param type Message type
+	 * @return true if above high water mark
+	 */
+	public synchronized boolean isAboveHighWater(MessageType type) {
+		return lanes.get(getPriority(type)).size() > highWater;
+	}
+
+	/**
+	 * Checks if all lanes are below their low water mark, so that paused senders can be resumed
+	 * @return true if all lanes below low water mark
+	 */
+	public synchronized boolean isBelowLowWater() {
+		for (ArrayDeque<Message> lane : lanes) {
+			if (lane.size() > lowWater) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets a snapshot of all queued messages, in priority order
+	 * @return List of messages
+	 */
+	public synchronized List<Message> toList() {
+		ArrayList<Message> result = new ArrayList<>(size);
+		for (ArrayDeque<Message> lane : lanes) {
+			result.addAll(lane);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the total number of queued messages
+	 * @return Number of messages
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of queued messages in a lane
+	 * @param priority Lane index
+	 * @return Number of messages
+	 */
+	public synchronized int size(int priority) {
+		return lanes.get(priority).size();
+	}
+}
@@ -3,15 +3,23 @@ package convex.peer;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -55,21 +63,26 @@ import convex.core.store.AStore;
 import convex.core.store.Stores;
 import convex.core.transactions.ATransaction;
 import convex.core.transactions.Invoke;
+import convex.core.util.Counters;
 import convex.core.util.Shutdown;
 import convex.core.util.Utils;
 import convex.net.Connection;
 import convex.net.Message;
 import convex.net.MessageType;
 import convex.net.NIOServer;
+import etch.EtchStore;
 
 
 /**
  * A self contained server that can be launched with a config.
  *
  * Server creates the following threads:
+ * - Pools of Query and Data worker threads that handle read-only requests
+ * - A pool of Verifier threads that check signatures on received messages in parallel
  * - A ReceiverThread that processes message from the Server's receive Queue
  * - An UpdateThread that handles Belief updates and transaction processing
  * - A ConnectionManager thread, via the ConnectionManager
+ * - Optionally, a CompactionThread that periodically compacts the Server's Etch store
  *
  * "Programming is a science dressed up as art, because most of us don't
  * understand the physics of software and it's rarely, if ever, taught. The
@@ -97,9 +110,16 @@ public class Server implements Closeable {
 	// private static final Level LEVEL_MESSAGE = Level.FINER;
 
 	/**
-	 * Queue for received messages to be processed by this Peer Server
+	 * Queue for received messages to be processed by this Peer Server. Peer protocol messages
+	 * take priority over client transactions and queries.
 	 */
-	private BlockingQueue<Message> receiveQueue = new ArrayBlockingQueue<Message>(RECEIVE_QUEUE_SIZE);
+	private final PriorityMessageQueue receiveQueue = PriorityMessageQueue.create(RECEIVE_QUEUE_SIZE);
+
+	/**
+	 * Connections with reading paused because the receive queue, verification stage or a request
+	 * executor passed its high water mark
+	 */
+	private final Set<Connection> pausedConnections = ConcurrentHashMap.newKeySet();
 
 	/**
 	 * Queue for received events (Beliefs, Transactions) to be processed
@@ -108,19 +128,185 @@ public class Server implements Closeable {
 
 	
 	/**
-	 * Message consumer that simply enqueues received messages received by this Server
+	 * Message consumer that enqueues received messages received by this Server. Never blocks:
+	 * if the queue is filling up, reading from the sending connection is paused until the 
+	 * receiver thread catches up.
+	 */
+	private Consumer<Message> receiveQueueAction = new Consumer<Message>() {
+		@Override
+		public void accept(Message msg) {
+			boolean queued=receiveQueue.offer(msg);
+			if (!queued) {
+				Counters.messageDropped++;
+				log.warn("Receive queue full, dropped message of type {}",msg.getType());
+			}
+			if (!queued||receiveQueue.isAboveHighWater(msg.getType())) {
+				pauseReading(msg.getPeerConnection());
+			}
+		}
+	};
+
+	/**
+	 * Pauses reading from a connection until the receive queue drains
+	 */
+	private void pauseReading(Connection pc) {
+		if (pc==null) return;
+		if (pausedConnections.add(pc)) {
+			Counters.readPaused++;
+			pc.setReadPaused(true);
+			log.debug("Paused reading from {}",pc.getRemoteAddress());
+		}
+	}
+
+	/**
+	 * Resumes reading from all paused connections once the receive queue, verification stage 
+	 * and request executors are below their low water marks
+	 */
+	private void maybeResumeReading() {
+		if (pausedConnections.isEmpty()) return;
+		if (!receiveQueue.isBelowLowWater()) return;
+		VerificationStage v=verifier;
+		if ((v!=null)&&!v.isBelowLowWater()) return;
+		if (!isBelowLowWater(queryExecutor)||!isBelowLowWater(dataExecutor)) return;
+		for (Connection pc: pausedConnections) {
+			pausedConnections.remove(pc);
+			pc.setReadPaused(false);
+		}
+	}
+	
+	/**
+	 * Verification stage for signatures in received messages, ahead of the receive queue. 
+	 * Null until the Server is launched.
+	 */
+	private volatile VerificationStage verifier = null;
+	
+	/**
+	 * Execution stage for consensus Blocks, behind the update thread. Null until the Server is launched.
+	 */
+	private volatile ExecutionStage executionStage = null;
+	
+	/**
+	 * Executor for read-only queries and status requests, which don't need to wait for
+	 * ordered message processing. Null until the Server is launched.
+	 */
+	private volatile ThreadPoolExecutor queryExecutor = null;
+	
+	/**
+	 * Executor for responding to missing data requests. Null until the Server is launched.
+	 */
+	private volatile ThreadPoolExecutor dataExecutor = null;
+	
+	/**
+	 * Message consumer for messages received by this Server. Read-only requests are dispatched 
+	 * directly to executors. Other messages pass through signature verification, if running, 
+	 * then are enqueued in order for the receiver thread. Reading from the sending connection 
+	 * is paused if any of these is backed up.
 	 */
 	Consumer<Message> peerReceiveAction = new Consumer<Message>() {
 		@Override
 		public void accept(Message msg) {
-			try {
-				receiveQueue.put(msg);
-			} catch (InterruptedException e) {
-				log.warn("Interrupt on peer receive queue!");
+			switch (msg.getType()) {
+			case QUERY:
+			case STATUS:
+				if (dispatch(queryExecutor, msg)) return;
+				break;
+			case MISSING_DATA:
+			case REQUEST_DATA:
+				if (dispatch(dataExecutor, msg)) return;
+				break;
+			default:
+				break;
+			}
+			
+			VerificationStage v=verifier;
+			if (v!=null) {
+				v.accept(msg);
+				if (v.isAboveHighWater()) pauseReading(msg.getPeerConnection());
+			} else {
+				receiveQueueAction.accept(msg);
 			}
 		}
 	};
 
+	/**
+	 * Dispatches a message for processing on an executor. Never runs the message on the
+	 * calling thread: if the executor rejects it, the message is rejected with a LOAD error.
+	 * @return true if dispatched or rejected, false if the executor is not available
+	 */
+	private boolean dispatch(ThreadPoolExecutor executor, Message m) {
+		if (executor==null) return false;
+		try {
+			executor.execute(()->{
+				Stores.setCurrent(getStore());
+				processMessage(m);
+			});
+		} catch (RejectedExecutionException e) {
+			rejectMessage(m);
+		}
+		if (isAboveHighWater(executor)) pauseReading(m.getPeerConnection());
+		return true;
+	}
+	
+	/**
+	 * Checks if an executor's queue has passed its high water mark
+	 */
+	private static boolean isAboveHighWater(ThreadPoolExecutor executor) {
+		return executor.getQueue().size() > (RECEIVE_QUEUE_SIZE * 3) / 4;
+	}
+	
+	/**
+	 * Checks if an executor's queue is below its low water mark. True if the executor is not running.
+	 */
+	private static boolean isBelowLowWater(ThreadPoolExecutor executor) {
+		if (executor == null) return true;
+		return executor.getQueue().size() <= RECEIVE_QUEUE_SIZE / 4;
+	}
+	
+	/**
+	 * Rejects a message that can't be handled because the Server is overloaded. Requests 
+	 * with an ID get a LOAD error Result so the client can retry later. Data requests are 
+	 * handled on a best-efforts basis, so are simply dropped.
+	 */
+	private void rejectMessage(Message m) {
+		Counters.messageDropped++;
+		CVMLong id = m.getID();
+		if (id == null) {
+			log.debug("Dropped message of type {} due to load", m.getType());
+			return;
+		}
+		try {
+			m.getPeerConnection().sendResult(id, Strings.create("Peer overloaded"), ErrorCodes.LOAD);
+		} catch (IOException e) {
+			// Ignore, connection probably gone anyway
+		}
+	}
+	
+	/**
+	 * Creates an executor with daemon threads for message processing. Rejects tasks if the 
+	 * executor queue is full.
+	 */
+	private static ThreadPoolExecutor createExecutor(String name, int threads) {
+		AtomicInteger count=new AtomicInteger(0);
+		ThreadFactory factory=r->{
+			Thread t=new Thread(r, name+" "+count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(RECEIVE_QUEUE_SIZE), factory);
+	}
+	
+	/**
+	 * Gets a positive integer value from the config, or a default value if not specified
+	 */
+	private int getConfigThreads(Keyword key, int defaultValue) {
+		Object v=getConfig().get(key);
+		if (v==null) return defaultValue;
+		int n=Utils.toInt(v);
+		if (n<1) throw new IllegalArgumentException("Server config "+key+" must be positive but was: "+v);
+		return n;
+	}
+
 	/**
 	 * Connection manager instance.
 	 */
@@ -138,11 +324,13 @@ public class Server implements Closeable {
 	private NIOServer nio;
 	private Thread receiverThread = null;
 	private Thread updateThread = null;
+	private Thread compactionThread = null;
 
 	/**
 	 * The Peer instance current state for this server. Will be updated based on peer events.
+	 * Volatile since Peer snapshots are read by query threads.
 	 */
-	private Peer peer;
+	private volatile Peer peer;
 	
 	/**
 	 * The Peer Controller Address
@@ -195,7 +383,7 @@ public class Server implements Closeable {
 			
 			establishController();
 			
-			nio = NIOServer.create(this, receiveQueue);
+			nio = NIOServer.create(this);
 
 		} finally {
 			Stores.setCurrent(savedStore);
@@ -244,9 +432,9 @@ public class Server implements Closeable {
 				}
 				Hash beliefHash=RT.ensureHash(status.get(0));
 				Hash networkID=RT.ensureHash(status.get(2));
-				State genF=(State) convex.acquire(networkID).get(timeout,TimeUnit.MILLISECONDS);
+				State genF=(State) convex.sync(networkID,store).get(timeout,TimeUnit.MILLISECONDS);
 				log.info("Retreived Genesis State: "+networkID);
-				SignedData<Belief> belF=(SignedData<Belief>) convex.acquire(beliefHash).get(timeout,TimeUnit.MILLISECONDS);
+				SignedData<Belief> belF=(SignedData<Belief>) convex.sync(beliefHash,store).get(timeout,TimeUnit.MILLISECONDS);
 				log.info("Retreived Peer Signed Belief: "+networkID);
 				
 				Peer peer=Peer.create(keyPair, genF, belF.getValue());
@@ -343,7 +531,7 @@ public class Server implements Closeable {
 		Integer port = (p == null) ? null : Utils.toInt(p);
 
 		try {
-			nio.launch(port);
+			nio.launch(port, getConfigThreads(Keywords.SELECTOR_THREADS, Constants.SERVER_SELECTOR_THREADS));
 			port = nio.getPort(); // get the actual port (may be auto-allocated)
 
 			if (getConfig().containsKey(Keywords.URL)) {
@@ -355,6 +543,21 @@ public class Server implements Closeable {
 			// set running status now, so that loops don't terminate
 			isRunning = true;
 
+			// Start executors for read-only requests
+			int cores=Runtime.getRuntime().availableProcessors();
+			queryExecutor = createExecutor("Query Worker on port: " + port, getConfigThreads(Keywords.QUERY_THREADS, Math.max(1, cores/2)));
+			dataExecutor = createExecutor("Data Worker on port: " + port, getConfigThreads(Keywords.DATA_THREADS, 2));
+
+			// Start parallel signature verification for received messages
+			int verifyThreads=getConfigThreads(Keywords.VERIFY_THREADS, Math.max(1, cores));
+			verifier = VerificationStage.create(receiveQueueAction, store, verifyThreads, "Verifier on port: " + port);
+
+			// Execute consensus Blocks in a separate stage if configured, so Belief merges don't wait for the CVM
+			if (isPipelineExecution()) {
+				peer = peer.withDeferredExecution(true);
+				executionStage = ExecutionStage.create(peer, store, getParallelExecution(), "Execution on port: " + port);
+			}
+
 			// Start connection manager loop
 			manager.start();
 
@@ -366,7 +569,14 @@ public class Server implements Closeable {
 			updateThread = new Thread(updateLoop, "Update Loop on port: " + port);
 			updateThread.setDaemon(true);
 			updateThread.start();
-
+			
+			// Start background compaction of Etch store, if configured
+			Object compactInterval=getConfig().get(Keywords.COMPACT_INTERVAL);
+			if ((compactInterval!=null)&&(Utils.toInt(compactInterval)>0)&&(store instanceof EtchStore)) {
+				compactionThread = new Thread(compactionLoop, "Compaction Loop on port: " + port);
+				compactionThread.setDaemon(true);
+				compactionThread.start();
+			}
 
 			// Close server on shutdown, should be before Etch stores in priority
 			Shutdown.addHook(Shutdown.SERVER, new Runnable() {
@@ -435,7 +645,7 @@ public class Server implements Closeable {
 	 *
 	 * If the message is partial, will be queued pending delivery of missing data.
 	 * 
-	 * Runs on receiver thread
+	 * Runs on receiver thread, or on a worker thread for read-only requests
 	 *
 	 * @param m
 	 */
@@ -461,6 +671,12 @@ public class Server implements Closeable {
 			case MISSING_DATA:
 				processMissingData(m);
 				break;
+			case REQUEST_DATA:
+				processRequestData(m);
+				break;
+			case DATA_BUNDLE:
+				processDataBundle(m);
+				break;
 			case QUERY:
 				processQuery(m);
 				break;
@@ -480,13 +696,8 @@ public class Server implements Closeable {
 		} catch (MissingDataException e) {
 			Hash missingHash = e.getMissingHash();
 			log.trace("Missing data: {} in message of type {}" , missingHash,type);
-			try {
-				registerPartialMessage(missingHash, m);
-				m.getPeerConnection().sendMissingData(missingHash);
-				log.trace("Requested missing data {} for partial message",missingHash);
-			} catch (IOException ex) {
-				log.warn( "Exception while requesting missing data: {}" + ex);
-			}
+			registerPartialMessage(missingHash, m);
+			requestMissingData(m.getPeerConnection(), missingHash);
 		} catch (BadFormatException | ClassCastException | NullPointerException e) {
 			log.warn("Error processing client message: {}", e);
 		}
@@ -508,7 +719,8 @@ public class Server implements Closeable {
 		if (r != null) {
 			try {
 				ACell data = r.getValue();
-				boolean sent = m.getPeerConnection().sendData(data);
+				Connection pc = m.getPeerConnection();
+				boolean sent = sendWithRetry(pc, () -> pc.sendData(data));
 				// log.trace( "Sent missing data for hash: {} with type {}",Utils.getClassName(data));
 				if (!sent) {
 					log.debug("Can't send missing data for hash {} due to full buffer",h);
@@ -521,6 +733,164 @@ public class Server implements Closeable {
 		}
 	}
 
+	/**
+	 * Requests missing data for a partial message without blocking the calling thread,
+	 * which may be the receiver thread shared by all Peers. Tries once, and if the send
+	 * buffer is full hands retries to the data worker pool.
+	 */
+	private void requestMissingData(Connection pc, Hash missingHash) {
+		try {
+			if (pc.sendMissingData(missingHash)) {
+				log.trace("Requested missing data {} for partial message",missingHash);
+				return;
+			}
+			ThreadPoolExecutor executor=dataExecutor;
+			if (executor==null) {
+				Counters.sendDropped++;
+				log.debug("Can't request missing data {} due to full buffer",missingHash);
+				return;
+			}
+			executor.execute(()->{
+				try {
+					if (!sendWithRetry(pc, ()->pc.sendMissingData(missingHash))) {
+						log.debug("Can't request missing data {} due to full buffer",missingHash);
+					}
+				} catch (IOException e) {
+					log.warn("Exception while requesting missing data: {}", e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			Counters.sendDropped++;
+			log.debug("Can't request missing data {} due to load",missingHash);
+		} catch (IOException e) {
+			log.warn("Exception while requesting missing data: {}", e);
+		}
+	}
+
+	/**
+	 * Maximum number of attempts to buffer a message before giving up
+	 */
+	private static final int MAX_SEND_ATTEMPTS = 100;
+
+	/**
+	 * Action that tries to buffer a message on a Connection
+	 */
+	@FunctionalInterface
+	private interface SendAction {
+		boolean send() throws IOException;
+	}
+
+	/**
+	 * Attempts to send a message, flushing the connection and retrying while the send buffer is full.
+	 * Counts the message as dropped if it still cannot be buffered. May block for a while, so
+	 * should only be called on worker pool threads, never the receiver thread.
+	 *
+	 * @return true if sent, false if dropped
+	 */
+	private boolean sendWithRetry(Connection pc, SendAction action) throws IOException {
+		try {
+			for (int attempt = 0; attempt < MAX_SEND_ATTEMPTS; attempt++) {
+				if (action.send()) return true;
+				pc.flushBytes();
+				Thread.sleep(1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Counters.sendDropped++;
+		return false;
+	}
+
+	/**
+	 * Respond to a batched request for missing data, on a best-efforts basis. Returns
+	 * requested cells we hold, followed by cells below them in breadth first order
+	 * until the byte budget is exhausted.
+	 *
+	 * @param m
+	 * @throws BadFormatException
+	 */
+	private void processRequestData(Message m) throws BadFormatException {
+		// payload should be a vector [budget hash1 hash2 ...]
+		AVector<ACell> v = m.getPayload();
+		int n = (int) v.count() - 1;
+		if ((n < 1) || (n > Constants.MAX_DATA_REQUEST_HASHES)) {
+			throw new BadFormatException("Invalid number of hashes in data request: " + n);
+		}
+		CVMLong budgetValue = RT.ensureLong(v.get(0));
+		if (budgetValue == null) throw new BadFormatException("Budget required for data request");
+		long budget = Math.min(budgetValue.longValue(), Constants.MAX_DATA_REQUEST_BUDGET);
+
+		ArrayList<ACell> cells = new ArrayList<>();
+		ArrayDeque<ACell> queue = new ArrayDeque<>();
+		HashSet<Hash> seen = new HashSet<>();
+		for (int i = 1; i <= n; i++) {
+			Hash h = RT.ensureHash(v.get(i));
+			if (h == null) throw new BadFormatException("Hash required for data request");
+			if (!seen.add(h)) continue;
+			Ref<ACell> r = store.refForHash(h);
+			if (r == null) {
+				log.debug("Unable to provide missing data for {} from store: {}", h, Stores.current());
+				continue;
+			}
+			ACell cell = r.getValue();
+			cells.add(cell);
+			queue.add(cell);
+		}
+		if (cells.isEmpty()) return;
+
+		// add cells below requested cells. Embedded children are traversed but not sent.
+		long remaining = budget;
+		while ((remaining > 0) && !queue.isEmpty()) {
+			ACell cell = queue.poll();
+			int rc = cell.getRefCount();
+			for (int i = 0; i < rc; i++) {
+				Ref<ACell> child = cell.getRef(i);
+				if (child.isEmbedded()) {
+					ACell value = child.getValue();
+					if (value != null) queue.add(value);
+					continue;
+				}
+				Hash h = child.getHash();
+				if (!seen.add(h)) continue;
+				Ref<ACell> r = store.refForHash(h);
+				if (r == null) continue;
+				ACell value = r.getValue();
+				long length = value.getEncodingLength();
+				if (length > remaining) {
+					remaining = 0;
+					break;
+				}
+				remaining -= length;
+				cells.add(value);
+				queue.add(value);
+			}
+		}
+
+		sendDataBundle(m.getPeerConnection(), cells);
+	}
+
+	/**
+	 * Sends cells as data bundles, flushing the connection and retrying if the send buffer is full
+	 */
+	private void sendDataBundle(Connection pc, List<ACell> cells) {
+		int total = cells.size();
+		int sent = 0;
+		try {
+			for (int attempt = 0; attempt < MAX_SEND_ATTEMPTS; attempt++) {
+				sent += pc.sendDataBundle(cells.subList(sent, total));
+				if (sent >= total) return;
+				pc.flushBytes();
+				Thread.sleep(1);
+			}
+			Counters.sendDropped++;
+			log.debug("Can't send {} of {} cells in data bundle due to full buffer", total - sent, total);
+		} catch (IOException e) {
+			log.warn("Unable to deliver data bundle due to exception: {}", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	private void processTransact(Message m) {
 		// query is a vector [id , signed-object]
@@ -582,12 +952,10 @@ public class Server implements Closeable {
 
 			if (m != null) {
 				log.trace( "Attempting to re-queue partial message due to received hash: ",hash);
-				if (receiveQueue.offer(m)) {
-					partialMessages.remove(hash);
-					return true;
-				} else {
-					log.warn( "Queue full for message with received hash: {}", hash);
-				}
+				// message was already accepted once, so re-queue regardless of capacity
+				receiveQueue.requeue(m);
+				partialMessages.remove(hash);
+				return true;
 			}
 		}
 		return false;
@@ -646,9 +1014,9 @@ public class Server implements Closeable {
 
 		broadcastBelief(belief);
 
-		// Report transaction results
+		// Report transaction results, unless left for the execution stage
 		long newConsensusPoint = peer.getConsensusPoint();
-		if (newConsensusPoint > oldConsensusPoint) {
+		if ((newConsensusPoint > oldConsensusPoint) && !peer.isExecutionDeferred()) {
 			log.debug("Consensus point update from {} to {}" ,oldConsensusPoint , newConsensusPoint);
 			for (long i = oldConsensusPoint; i < newConsensusPoint; i++) {
 				Block block = peer.getPeerOrder().getBlock(i);
@@ -659,6 +1027,32 @@ public class Server implements Closeable {
 
 		return true;
 	}
+
+	/**
+	 * Passes the latest consensus to the execution stage, and collects results of executed
+	 * consensus Blocks. Updates the Peer with new States and reports transaction results.
+	 *
+	 * @return true if the Peer's consensus State changed, false otherwise
+	 */
+	protected boolean maybeUpdateExecution() {
+		ExecutionStage stage = executionStage;
+		if (stage == null) return false;
+		Throwable failure = stage.getFailure();
+		if (failure != null) {
+			throw new Error("Execution of consensus Block " + peer.getExecutedPoint() + " failed", failure);
+		}
+		stage.update(peer);
+
+		boolean updated = false;
+		BlockResult br;
+		while ((br = stage.poll()) != null) {
+			long i = peer.getExecutedPoint();
+			peer = peer.appendBlockResult(br);
+			reportTransactions(peer.getPeerOrder().getBlock(i), br);
+			updated = true;
+		}
+		return updated;
+	}
 	
 	/**
 	 * Time of last belief broadcast
@@ -668,17 +1062,19 @@ public class Server implements Closeable {
 	private void broadcastBelief(Belief belief) {
 		// At this point we know something updated our belief, so we want to rebroadcast
 		// belief to network
+		ArrayList<ACell> novelty = new ArrayList<>();
 		Consumer<Ref<ACell>> noveltyHandler = r -> {
 			ACell o = r.getValue();
 			if (o == belief) return; // skip sending data for belief cell itself, will be BELIEF payload
-			Message msg = Message.createData(o);
-            // broadcast to all peers trusted or not
-			manager.broadcast(msg, false);
+			novelty.add(o);
 		};
 		
 		// persist the state of the Peer, announcing the new Belief
 		peer=peer.persistState(noveltyHandler);
 
+		// broadcast novelty to all peers trusted or not, encoded once for all peers
+		manager.broadcastData(novelty, false);
+
 		// Broadcast latest Belief to connected Peers
 		SignedData<Belief> sb = peer.getSignedBelief();
 		Message msg = Message.createBelief(sb);
@@ -858,6 +1254,10 @@ public class Server implements Closeable {
 			Hash consensusHash=peer.getConsensusState().getHash();
 
 			AVector<ACell> reply=Vectors.of(beliefHash,stateHash,initialStateHash,peerKey,consensusHash);
+			
+			// Optional trailing field advertising compression. Existing clients read
+			// STATUS fields by index, so they ignore it.
+			if (isCompressionEnabled()) reply=reply.conj(Keywords.COMPRESSION);
 
 			pc.sendResult(m.getID(), reply);
 		} catch (Throwable t) {
@@ -887,6 +1287,8 @@ public class Server implements Closeable {
 			log.debug( "Processing query: {} with address: {}" , form, address);
 			// log.log(LEVEL_MESSAGE, "Processing query: " + form + " with address: " +
 			// address);
+			// Use a snapshot of the current Peer, which is immutable
+			Peer peer=getPeer();
 			Context<ACell> resultContext = peer.executeQuery(form, address);
 			boolean resultReturned;
 
@@ -925,6 +1327,19 @@ public class Server implements Closeable {
 		maybeProcessPartial(r.getHash());
 	}
 
+	private void processDataBundle(Message m) {
+		AVector<ACell> cells = m.getPayload();
+		long n = cells.count();
+		for (long i = 0; i < n; i++) {
+			Ref<?> r = Ref.get(cells.get(i));
+			r = r.persistShallow();
+
+			// any of the cells may satisfy a missing data object
+			maybeProcessPartial(r.getHash());
+		}
+		log.trace("Processed DATA_BUNDLE with {} cells", n);
+	}
+
 	/**
 	 * Process an incoming message that represents a Belief
 	 *
@@ -979,6 +1394,7 @@ public class Server implements Closeable {
 					if (m != null) {
 						processMessage(m);
 					}
+					maybeResumeReading();
 				}
 
 				log.debug("Reciever thread terminated normally for peer {}", this);
@@ -992,6 +1408,74 @@ public class Server implements Closeable {
 		}
 	};
 
+	/*
+	 * Runnable loop for periodic compaction of the Server's Etch store
+	 */
+	private final Runnable compactionLoop = new Runnable() {
+		@Override
+		public void run() {
+			Stores.setCurrent(getStore()); // ensure the loop uses this Server's store
+			long interval=Utils.toInt(getConfig().get(Keywords.COMPACT_INTERVAL));
+			try {
+				while (isRunning) {
+					Thread.sleep(interval);
+					if (!isRunning) break;
+					
+					// Persist current Peer data first so that it is retained as the root
+					persistPeerData();
+					((EtchStore)store).compact(getInFlightRoots());
+				}
+			} catch (InterruptedException e) {
+				log.debug("Terminating Server compaction due to interrupt");
+			} catch (Throwable e) {
+				log.error("Unexpected exception in server compaction loop: {}", e);
+				log.error("Terminating Server compaction");
+			}
+		}
+	};
+
+	/**
+	 * Gets hashes of data received or created by this Server that is not yet reachable from the 
+	 * persisted Peer data, so that compaction retains it. This includes queued transactions and 
+	 * events, Beliefs not yet merged, and messages waiting for missing data or processing.
+	 */
+	private Hash[] getInFlightRoots() {
+		ArrayList<Hash> roots = new ArrayList<>();
+		synchronized (newTransactions) {
+			for (SignedData<ATransaction> sd : newTransactions) addRoot(roots, sd);
+		}
+		synchronized (newBeliefs) {
+			for (SignedData<Belief> sb : newBeliefs.values()) addRoot(roots, sb);
+		}
+		for (SignedData<?> sd : eventQueue) addRoot(roots, sd);
+		synchronized (partialMessages) {
+			for (Message m : partialMessages.values()) addRoot(roots, m.getPayload());
+		}
+		for (Message m : receiveQueue.toList()) addRoot(roots, m.getPayload());
+		return roots.toArray(new Hash[roots.size()]);
+	}
+
+	/**
+	 * Adds the hash of a cell to a list of compaction roots. Embedded cells are not stored
+	 * by themselves, so their non-embedded children are added instead.
+	 */
+	private static void addRoot(ArrayList<Hash> roots, ACell cell) {
+		if (cell == null) return;
+		if (!cell.isEmbedded()) {
+			roots.add(cell.getHash());
+			return;
+		}
+		int n = cell.getRefCount();
+		for (int i = 0; i < n; i++) {
+			Ref<ACell> r = cell.getRef(i);
+			if (r.isEmbedded()) {
+				addRoot(roots, r.getValue());
+			} else {
+				roots.add(r.getHash());
+			}
+		}
+	}
+
 	/*
 	 * Runnable loop for managing Server state updates
 	 */
@@ -1009,6 +1493,11 @@ public class Server implements Closeable {
 						raiseServerChange("consensus");
 					}
 					
+					// Collect results of Block execution
+					if (maybeUpdateExecution()) {
+						raiseServerChange("state");
+					}
+					
 					// Maybe rebroadcast Belief if not done recently
 					if ((lastBroadcastBelief+Constants.REBROADCAST_DELAY)<timestamp) {
 						// rebroadcast if there is still stuff outstanding for consensus
@@ -1037,7 +1526,15 @@ public class Server implements Closeable {
 		ArrayList<SignedData<?>> allEvents=new ArrayList<>();
 		allEvents.add(firstEvent);
 		eventQueue.drainTo(allEvents);
+		
+		// events are normally already verified by the verification stage, so this only
+		// verifies any that bypassed it, e.g. events queued directly by this Server
+		SignedData.checkSignatures(allEvents);
 		for (SignedData<?> signedEvent: allEvents) {
+			if (!signedEvent.checkSignature()) {
+				log.warn("Bad signature on event: {}",signedEvent.getHash());
+				continue;
+			}
 			ACell event=signedEvent.getValue();
 			if (event instanceof ATransaction) {
 				SignedData<ATransaction> receivedTrans=(SignedData<ATransaction>)signedEvent;
@@ -1050,7 +1547,9 @@ public class Server implements Closeable {
 				if ((current == null) || (current.getValue().getTimestamp() <= receivedBelief.getValue()
 						.getTimestamp())) {
 					// Add to map of new Beliefs received for each Peer
-					newBeliefs.put(addr, receivedBelief);
+					synchronized (newBeliefs) {
+						newBeliefs.put(addr, receivedBelief);
+					}
 
 					// Notify the update thread that there is something new to handle
 					log.debug("Valid belief received by peer at {}: {}"
@@ -1153,6 +1652,21 @@ public class Server implements Closeable {
 				// Ignore
 			}
 		}
+		if (compactionThread != null) {
+			compactionThread.interrupt();
+		}
+		if (verifier != null) {
+			verifier.close();
+		}
+		if (executionStage != null) {
+			executionStage.close();
+		}
+		if (queryExecutor != null) {
+			queryExecutor.shutdownNow();
+		}
+		if (dataExecutor != null) {
+			dataExecutor.shutdownNow();
+		}
 		manager.close();
 		nio.close();
 		// Note we don't do store.close(); because we don't own the store.
@@ -1221,6 +1735,42 @@ public class Server implements Closeable {
 		return peerReceiveAction;
 	}
 
+	/**
+	 * Checks if compression is enabled for this Server's connections, as set by the :compression config option
+	 * @return true if compression enabled
+	 */
+	public boolean isCompressionEnabled() {
+		return Utils.bool(getConfig().get(Keywords.COMPRESSION));
+	}
+
+	/**
+	 * Checks if consensus Blocks are executed in a separate stage, as set by the :pipeline-execution config option
+	 * @return true if execution is pipelined
+	 */
+	public boolean isPipelineExecution() {
+		return Utils.bool(getConfig().get(Keywords.PIPELINE_EXECUTION));
+	}
+
+	/**
+	 * Gets the parallel execution mode for consensus Blocks, as set by the :parallel-execution config option.
+	 * Only used if execution is pipelined.
+	 * @return :speculative or :scheduled, or null for sequential execution
+	 */
+	public Keyword getParallelExecution() {
+		Object v = getConfig().get(Keywords.PARALLEL_EXECUTION);
+		if (Keywords.SCHEDULED.equals(v)) return Keywords.SCHEDULED;
+		if (Keywords.SPECULATIVE.equals(v) || Utils.bool(v)) return Keywords.SPECULATIVE;
+		return null;
+	}
+
+	/**
+	 * Gets the execution stage for consensus Blocks
+	 * @return ExecutionStage, or null if the Server is not launched or execution is not pipelined
+	 */
+	public ExecutionStage getExecutionStage() {
+		return executionStage;
+	}
+
 	/**
 	 * Sets the desired host name for this Server
 	 * @param string Desired host name String, e.g. "my-domain.com:12345"
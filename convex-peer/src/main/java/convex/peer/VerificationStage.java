@@ -0,0 +1,239 @@
+package convex.peer;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import convex.core.Belief;
+import convex.core.Order;
+import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.AccountKey;
+import convex.core.data.BlobMap;
+import convex.core.data.MapEntry;
+import convex.core.data.SignedData;
+import convex.core.store.AStore;
+import convex.core.store.Stores;
+import convex.net.Message;
+import convex.net.MessageType;
+
+/**
+ * Pipeline stage that verifies signatures in incoming messages on a pool of worker threads,
+ * ahead of the Server's receiver thread.
+ *
+ * Transactions and Beliefs (including the Orders within each Belief) have their signatures
+ * checked in parallel. Verified SignedData instances are marked as such, so later signature
+ * checks on the receiver and update threads are cheap. Messages are always passed on in the
+ * order they were accepted, regardless of the order in which verification completes.
+ *
+ * Verification here is an optimisation only: failures or missing data are ignored, and the
+ * message is passed on for normal handling, which still checks signatures.
+ *
+ * The number of pending messages is bounded by the caller, which should pause reading from
+ * senders while this stage is above its high water mark.
+ */
+public class VerificationStage implements Consumer<Message> {
+
+	private static final Logger log = LoggerFactory.getLogger(VerificationStage.class.getName());
+
+	/**
+	 * Number of messages awaiting delivery above which senders should be paused
+	 */
+	private static final int HIGH_WATER = 10000;
+
+	/**
+	 * Number of messages awaiting delivery below which paused senders can be resumed
+	 */
+	private static final int LOW_WATER = HIGH_WATER/2;
+
+	private final Consumer<Message> output;
+	private final AStore store;
+	private final ExecutorService executor;
+
+	/**
+	 * Messages awaiting delivery, in order of arrival
+	 */
+	private final ArrayDeque<Entry> pending=new ArrayDeque<>();
+
+	/**
+	 * Lock held while delivering messages, so that only one thread delivers at a time
+	 */
+	private final Object deliveryLock=new Object();
+
+	private static final class Entry {
+		final Message message;
+		volatile boolean ready=false;
+
+		Entry(Message message) {
+			this.message=message;
+		}
+	}
+
+	private VerificationStage(Consumer<Message> output, AStore store, int threads, String name) {
+		this.output=output;
+		this.store=store;
+		AtomicInteger count=new AtomicInteger(0);
+		ThreadFactory factory=r->{
+			Thread t=new Thread(r, name+" "+count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		this.executor=Executors.newFixedThreadPool(threads, factory);
+	}
+
+	/**
+	 * Creates a verification stage
+	 * @param output Consumer for messages after verification, called in order of arrival
+	 * @param store Store to use for verification threads
+	 * @param threads Number of verification threads
+	 * @param name Name prefix for verification threads
+	 * @return New VerificationStage instance
+	 */
+	public static VerificationStage create(Consumer<Message> output, AStore store, int threads, String name) {
+		if (threads<1) throw new IllegalArgumentException("At least one verification thread required");
+		return new VerificationStage(output,store,threads,name);
+	}
+
+	/**
+	 * Accepts a message for verification and subsequent delivery
+	 */
+	@Override
+	public void accept(Message m) {
+		Entry e=new Entry(m);
+		synchronized (pending) {
+			pending.add(e);
+		}
+
+		if (needsVerification(m.getType())) {
+			try {
+				executor.execute(()->{
+					try {
+						verifyWithStore(m);
+					} finally {
+						// always release the entry, so later messages are not held up
+						e.ready=true;
+						deliver();
+					}
+				});
+				return;
+			} catch (RejectedExecutionException ex) {
+				// shutting down, so just deliver
+			}
+		}
+		e.ready=true;
+		deliver();
+	}
+
+	/**
+	 * Delivers all messages at the head of the pending queue that are ready.
+	 */
+	private void deliver() {
+		synchronized (deliveryLock) {
+			while (true) {
+				Entry e;
+				synchronized (pending) {
+					e=pending.peek();
+					if ((e==null)||(!e.ready)) return;
+					pending.poll();
+				}
+				output.accept(e.message);
+			}
+		}
+	}
+
+	private void verifyWithStore(Message m) {
+		AStore tempStore=Stores.current();
+		try {
+			Stores.setCurrent(store);
+			verify(m);
+		} finally {
+			Stores.setCurrent(tempStore);
+		}
+	}
+
+	private static boolean needsVerification(MessageType type) {
+		return (type==MessageType.TRANSACT)||(type==MessageType.BELIEF);
+	}
+
+	/**
+	 * Verifies signatures in a message. Results are cached in the SignedData instances.
+	 * @param m Message to verify
+	 */
+	static void verify(Message m) {
+		try {
+			switch (m.getType()) {
+			case TRANSACT: {
+				AVector<ACell> v=m.getPayload();
+				ACell sd=v.get(1);
+				if (sd instanceof SignedData) ((SignedData<?>)sd).checkSignature();
+				break;
+			}
+			case BELIEF: {
+				ACell o=m.getPayload();
+				if (!(o instanceof SignedData)) break;
+				SignedData<?> sb=(SignedData<?>)o;
+				if (!sb.checkSignature()) break;
+				ACell b=sb.getValue();
+				if (!(b instanceof Belief)) break;
+
+				BlobMap<AccountKey,SignedData<Order>> orders=((Belief)b).getOrders();
+				long n=orders.count();
+				for (long i=0; i<n; i++) {
+					MapEntry<AccountKey,SignedData<Order>> oe=orders.entryAt(i);
+					SignedData<Order> so=oe.getValue();
+					if (so!=null) so.checkSignature();
+				}
+				break;
+			}
+			default:
+				break;
+			}
+		} catch (Exception e) {
+			// ignore, e.g. missing data. Message will be handled normally later.
+			log.trace("Unable to verify message of type {}: {}",m.getType(),e);
+		}
+	}
+
+	/**
+	 * Gets the number of messages awaiting verification or delivery
+	 * @return Number of pending messages
+	 */
+	public int getPendingCount() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Checks if the number of pending messages has passed the high water mark, in which case
+	 * senders should be slowed down
+	 * @return true if above high water mark
+	 */
+	public boolean isAboveHighWater() {
+		return getPendingCount() > HIGH_WATER;
+	}
+
+	/**
+	 * Checks if the number of pending messages is below the low water mark, so that paused
+	 * senders can be resumed
+	 * @return true if below low water mark
+	 */
+	public boolean isBelowLowWater() {
+		return getPendingCount() < LOW_WATER;
+	}
+
+	/**
+	 * Shuts down the verification threads. Messages already accepted are still verified and
+	 * delivered. Messages accepted after this are delivered without verification.
+	 */
+	public void close() {
+		executor.shutdown();
+	}
+}
@@ -6,10 +6,13 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.Test;
 
@@ -20,6 +23,7 @@ import convex.core.crypto.Ed25519Signature;
 import convex.core.data.Address;
 import convex.core.data.Ref;
 import convex.core.data.SignedData;
+import convex.core.lang.RT;
 import convex.core.lang.Reader;
 import convex.core.lang.ops.Constant;
 import convex.core.transactions.ATransaction;
@@ -95,4 +99,64 @@ public class ConvexTest {
 		}
 	}
 
+	@Test
+	public void testPipelinedQueries() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+		synchronized (ServerTest.SERVER) {
+			Convex convex = Convex.connect(ServerTest.SERVER.getHostAddress(), ADDRESS, KEYPAIR);
+			int n = 1000;
+			AtomicLong sum = new AtomicLong();
+			CompletableFuture<?>[] fs = new CompletableFuture[n];
+			for (int i = 0; i < n; i++) {
+				fs[i] = convex.query(Constant.of(i)).thenAccept(r -> sum.addAndGet(RT.ensureLong(r.getValue()).longValue()));
+			}
+			CompletableFuture.allOf(fs).get(10000, TimeUnit.MILLISECONDS);
+			assertEquals((n * (n - 1)) / 2, sum.get());
+			assertEquals(0, convex.getPendingCount());
+		}
+	}
+
+	@Test
+	public void testTransactionBatcher() throws IOException, TimeoutException, InterruptedException, ExecutionException {
+		synchronized (ServerTest.SERVER) {
+			Convex convex = Convex.connect(ServerTest.SERVER.getHostAddress(), ADDRESS, KEYPAIR);
+			TransactionBatcher batcher = TransactionBatcher.create(convex, 16);
+			try {
+				int n = 100;
+				CompletableFuture<?>[] fs = new CompletableFuture[n];
+				for (int i = 0; i < n; i++) {
+					fs[i] = batcher.submit(Invoke.create(ADDRESS, 0, Constant.of(i)));
+				}
+				for (int i = 0; i < n; i++) {
+					Result r = (Result) fs[i].get(6000, TimeUnit.MILLISECONDS);
+					assertNull(r.getErrorCode(), "Error:" + r.toString());
+					assertEquals(RT.cvm(i), r.getValue());
+				}
+
+				// use the account elsewhere, so the batcher's sequence number is stale
+				Result r = convex.transactSync(Invoke.create(ADDRESS, 0, Constant.of(1)), 6000);
+				assertNull(r.getErrorCode(), "Error:" + r.toString());
+
+				// batcher should recover from SEQUENCE error
+				r = batcher.submit(Invoke.create(ADDRESS, 0, Constant.of(17))).get(6000, TimeUnit.MILLISECONDS);
+				assertNull(r.getErrorCode(), "Error:" + r.toString());
+				assertEquals(RT.cvm(17), r.getValue());
+				assertEquals(0, batcher.getInFlightCount());
+			} finally {
+				batcher.close();
+			}
+		}
+	}
+
+	@Test
+	public void testTimeoutWheel() throws InterruptedException {
+		TimeoutWheel wheel = TimeoutWheel.create(5, 8, "Test timeout wheel");
+		CountDownLatch latch = new CountDownLatch(2);
+		long start = System.currentTimeMillis();
+		wheel.schedule(20, latch::countDown);
+		// longer than one rotation of the wheel
+		wheel.schedule(100, latch::countDown);
+		assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+		assertTrue(System.currentTimeMillis() - start >= 100);
+	}
+
 }
@@ -1,15 +1,25 @@
 package convex.net;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import org.junit.Test;
 
+import convex.core.Constants;
+import convex.core.data.ACell;
+import convex.core.data.Format;
+import convex.core.data.Strings;
+import convex.core.data.Vectors;
 import convex.core.data.prim.CVMLong;
 import convex.core.exceptions.BadFormatException;
 import convex.core.store.Stores;
+import convex.core.util.Counters;
 import convex.core.util.Utils;
 
 public class ConnectionTest {
@@ -83,4 +93,58 @@ public class ConnectionTest {
 		receiveThread.join();
 	}
 
+	@Test
+	public void testCompression() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), null);
+		MemoryByteChannel chan = MemoryByteChannel.create(100000);
+		Connection conn = Connection.create(chan, null, Stores.current(), null);
+
+		// a compressible value, with repeated embedded elements
+		ACell[] elements = new ACell[16];
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = Strings.create("Repeated string value with some padding text " + (i % 3));
+		}
+		ACell value = Vectors.of((Object[]) elements);
+		long rawLength = Format.encodedBlob(value).count();
+		assertTrue(rawLength > Constants.COMPRESSION_THRESHOLD);
+
+		// no compression until both ends accept it
+		conn.setCompression(true);
+		assertFalse(conn.isCompressing());
+
+		// plain type byte until the remote end has advertised support
+		assertTrue(conn.sendData(CVMLong.create(1)));
+		assertTrue(conn.flushBytes());
+		ByteBuffer raw = ByteBuffer.allocate(100);
+		chan.read(raw);
+		assertEquals(MessageType.DATA.getMessageCode(), raw.get(1));
+
+		conn.setRemoteCompression();
+		assertTrue(conn.isCompressing());
+
+		long compressedCount = Counters.compressedSend;
+		assertTrue(conn.sendData(value));
+		assertTrue(conn.flushBytes());
+		assertEquals(compressedCount + 1, Counters.compressedSend);
+
+		int n = mr.receiveFromChannel(chan);
+		assertTrue(n < rawLength);
+		assertEquals(1, received.size());
+		assertEquals(value, received.get(0).getPayload());
+
+		// shared frames can be compressed once for all connections
+		ByteBuffer frame = Connection.createFrame(MessageType.DATA, value);
+		ByteBuffer compressed = Connection.compressFrame(frame);
+		assertTrue(compressed.remaining() < frame.remaining());
+		assertTrue(conn.sendFrame(compressed));
+		assertTrue(conn.flushBytes());
+		mr.receiveFromChannel(chan);
+		assertEquals(2, received.size());
+		assertEquals(value, received.get(1).getPayload());
+
+		// small or incompressible frames are left alone
+		assertNull(Connection.compressFrame(Connection.createFrame(MessageType.DATA, CVMLong.create(1))));
+	}
+
 }
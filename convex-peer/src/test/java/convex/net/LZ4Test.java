@@ -0,0 +1,70 @@
+package convex.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.exceptions.BadFormatException;
+
+public class LZ4Test {
+
+	private static byte[] roundTrip(byte[] data) throws BadFormatException {
+		byte[] compressed = new byte[data.length + data.length / 255 + 16];
+		int n = LZ4.compress(data, 0, data.length, compressed, 0, compressed.length);
+		assertTrue(n > 0);
+		byte[] result = new byte[data.length];
+		assertEquals(data.length, LZ4.decompress(compressed, 0, n, result, 0, result.length));
+		assertArrayEquals(data, result);
+		return Arrays.copyOf(compressed, n);
+	}
+
+	@Test
+	public void testRoundTrip() throws BadFormatException {
+		Random r = new Random(1234);
+		for (int len : new int[] { 0, 1, 4, 12, 13, 100, 1000, 8191 }) {
+			byte[] random = new byte[len];
+			r.nextBytes(random);
+			roundTrip(random);
+
+			byte[] repetitive = new byte[len];
+			for (int i = 0; i < len; i++) {
+				repetitive[i] = (byte) ((i % 37) < 20 ? i % 7 : r.nextInt());
+			}
+			roundTrip(repetitive);
+		}
+	}
+
+	@Test
+	public void testCompression() throws BadFormatException {
+		byte[] zeros = new byte[5000];
+		byte[] compressed = roundTrip(zeros);
+		assertTrue(compressed.length < 100);
+
+		// won't fit within limit
+		byte[] random = new byte[1000];
+		new Random(5678).nextBytes(random);
+		assertEquals(-1, LZ4.compress(random, 0, random.length, new byte[1000], 0, 900));
+	}
+
+	@Test
+	public void testBadInput() {
+		byte[] out = new byte[100];
+		// truncated literals
+		assertThrows(BadFormatException.class, () -> LZ4.decompress(new byte[] { (byte) 0x50, 1, 2 }, 0, 3, out, 0, 100));
+		// zero offset
+		assertThrows(BadFormatException.class, () -> LZ4.decompress(new byte[] { (byte) 0x10, 1, 0, 0, 0 }, 0, 5, out, 0, 100));
+		// offset before start of output
+		assertThrows(BadFormatException.class, () -> LZ4.decompress(new byte[] { (byte) 0x10, 1, 5, 0, 0 }, 0, 5, out, 0, 100));
+		// output too long
+		byte[] zeros = new byte[1000];
+		byte[] compressed = new byte[100];
+		int n = LZ4.compress(zeros, 0, zeros.length, compressed, 0, 100);
+		assertThrows(BadFormatException.class, () -> LZ4.decompress(compressed, 0, n, out, 0, 100));
+	}
+}
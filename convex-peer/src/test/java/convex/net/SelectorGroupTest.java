@@ -0,0 +1,66 @@
+package convex.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+public class SelectorGroupTest {
+
+	@Test
+	public void testRoundRobin() throws IOException, InterruptedException {
+		int NUM = 6;
+		Set<String> threadNames = ConcurrentHashMap.newKeySet();
+		Set<Object> done = ConcurrentHashMap.newKeySet();
+
+		SelectorGroup group = SelectorGroup.create(3, key -> {
+			Pipe.SourceChannel source = (Pipe.SourceChannel) key.channel();
+			ByteBuffer bb = ByteBuffer.allocate(16);
+			if (source.read(bb) > 0) {
+				threadNames.add(Thread.currentThread().getName());
+				done.add(key.attachment());
+			}
+		}, null);
+		assertEquals(3, group.getSelectorCount());
+
+		try {
+			group.start("Test selector");
+			ArrayList<Pipe> pipes = new ArrayList<>();
+			HashSet<Object> selectors = new HashSet<>();
+			for (int i = 0; i < NUM; i++) {
+				Pipe pipe = Pipe.open();
+				pipe.source().configureBlocking(false);
+				SelectionKey key = group.register(pipe.source(), SelectionKey.OP_READ, i);
+				selectors.add(key.selector());
+				pipes.add(pipe);
+			}
+			// channels spread over all selectors
+			assertEquals(3, selectors.size());
+
+			for (Pipe pipe : pipes) {
+				pipe.sink().write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+			}
+
+			long start = System.currentTimeMillis();
+			while ((done.size() < NUM) && (System.currentTimeMillis() - start < 5000)) {
+				Thread.sleep(10);
+			}
+			assertEquals(NUM, done.size());
+			assertEquals(3, threadNames.size());
+			for (String name : threadNames) {
+				assertTrue(name.startsWith("Test selector"));
+			}
+		} finally {
+			group.close();
+		}
+	}
+}
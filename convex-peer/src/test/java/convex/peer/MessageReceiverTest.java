@@ -4,11 +4,17 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Random;
 
 import org.junit.Test;
 
 import convex.core.data.ACell;
+import convex.core.data.AVector;
+import convex.core.data.Blob;
+import convex.core.data.Vectors;
 import convex.core.exceptions.BadFormatException;
 import convex.core.lang.RT;
 import convex.core.store.Stores;
@@ -52,4 +58,99 @@ public class MessageReceiverTest {
 		Message m1 = received.get(0);
 		assertEquals(MessageType.DATA, m1.getType());
 	}
+
+	@Test
+	public void testDataBundle() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), null);
+		MemoryByteChannel chan = MemoryByteChannel.create(100000);
+		Connection pc = Connection.create(chan, null, Stores.current(), null);
+
+		// enough cells to need more than one frame
+		Random r = new Random(123);
+		ArrayList<ACell> cells = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			cells.add(Blob.createRandom(r, 500));
+		}
+		assertEquals(50, pc.sendDataBundle(cells));
+		assertTrue(pc.flushBytes());
+
+		ArrayList<ACell> results = new ArrayList<>();
+		while (results.size() < cells.size()) {
+			int n = received.size();
+			mr.receiveFromChannel(chan);
+			if (received.size() == n) break;
+			Message m = received.get(n);
+			assertEquals(MessageType.DATA_BUNDLE, m.getType());
+			AVector<ACell> v = m.getPayload();
+			for (ACell c : v) results.add(c);
+		}
+		assertTrue(received.size() > 1);
+		assertEquals(cells, results);
+	}
+
+	@Test
+	public void testSharedFrames() throws IOException, BadFormatException {
+		ACell value = RT.cvm("Broadcast value");
+		ArrayList<ACell> cells = new ArrayList<>();
+		cells.add(Blob.createRandom(new Random(456), 300));
+		ArrayList<ByteBuffer> frames = Connection.createDataBundleFrames(cells);
+		frames.add(Connection.createFrame(MessageType.DATA, value));
+
+		// the same frames can be sent on multiple connections
+		for (int i = 0; i < 3; i++) {
+			final ArrayList<Message> received = new ArrayList<>();
+			MessageReceiver mr = new MessageReceiver(a -> received.add(a), null);
+			MemoryByteChannel chan = MemoryByteChannel.create(10000);
+			Connection pc = Connection.create(chan, null, Stores.current(), null);
+			for (ByteBuffer frame : frames) {
+				assertTrue(pc.sendFrame(frame));
+			}
+			assertTrue(pc.flushBytes());
+
+			mr.receiveFromChannel(chan);
+			mr.receiveFromChannel(chan);
+			assertEquals(2, received.size());
+			assertEquals(MessageType.DATA_BUNDLE, received.get(0).getType());
+			assertEquals(Vectors.create(cells), received.get(0).getPayload());
+			assertEquals(value, received.get(1).getPayload());
+		}
+	}
+
+	@Test
+	public void testPartialReceive() throws IOException, BadFormatException {
+		final ArrayList<Message> received = new ArrayList<>();
+		MessageReceiver mr = new MessageReceiver(a -> received.add(a), null);
+		ACell value = Blob.createRandom(new Random(789), 1000);
+		ByteBuffer frame = Connection.createFrame(MessageType.DATA, value);
+
+		// channel delivering at most one byte per read, so the message arrives in pieces
+		ReadableByteChannel chan = new ReadableByteChannel() {
+			@Override
+			public int read(ByteBuffer dst) {
+				if (!frame.hasRemaining()) return 0;
+				if (!dst.hasRemaining()) return 0;
+				dst.put(frame.get());
+				return 1;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		while (frame.hasRemaining()) {
+			assertEquals(0, received.size());
+			mr.receiveFromChannel(chan);
+		}
+		assertEquals(1, received.size());
+		ACell payload = received.get(0).getPayload();
+		assertEquals(value, payload);
+		assertEquals(value.getEncoding(), payload.getEncoding());
+	}
 }
@@ -0,0 +1,64 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.data.prim.CVMLong;
+import convex.net.Message;
+import convex.net.MessageType;
+
+public class PriorityMessageQueueTest {
+
+	private static Message msg(MessageType type, long v) {
+		return Message.create(null, type, CVMLong.create(v));
+	}
+
+	@Test
+	public void testPriorityOrder() throws InterruptedException {
+		PriorityMessageQueue q = PriorityMessageQueue.create(10);
+		Message query = msg(MessageType.QUERY, 1);
+		Message trans = msg(MessageType.TRANSACT, 2);
+		Message belief = msg(MessageType.BELIEF, 3);
+		assertTrue(q.offer(query));
+		assertTrue(q.offer(trans));
+		assertTrue(q.offer(belief));
+		assertEquals(3, q.size());
+
+		assertSame(belief, q.poll(0, TimeUnit.MILLISECONDS));
+		assertSame(trans, q.poll(0, TimeUnit.MILLISECONDS));
+		assertSame(query, q.poll(0, TimeUnit.MILLISECONDS));
+		assertNull(q.poll(1, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testCapacity() throws InterruptedException {
+		PriorityMessageQueue q = PriorityMessageQueue.create(8);
+		for (int i = 0; i < 8; i++) {
+			assertTrue(q.offer(msg(MessageType.QUERY, i)));
+		}
+		assertFalse(q.offer(msg(MessageType.QUERY, 8)));
+		assertTrue(q.isAboveHighWater(MessageType.QUERY));
+		assertFalse(q.isAboveHighWater(MessageType.BELIEF));
+		assertFalse(q.isBelowLowWater());
+
+		// full low priority lane doesn't block higher priority messages
+		assertTrue(q.offer(msg(MessageType.DATA, 9)));
+		assertEquals(1, q.size(PriorityMessageQueue.HIGH));
+
+		// requeue ignores capacity
+		q.requeue(msg(MessageType.QUERY, 10));
+		assertEquals(9, q.size(PriorityMessageQueue.LOW));
+
+		while (q.size() > 2) {
+			q.poll(0, TimeUnit.MILLISECONDS);
+		}
+		assertTrue(q.isBelowLowWater());
+	}
+}
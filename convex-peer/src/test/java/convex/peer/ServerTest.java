@@ -10,7 +10,9 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -25,14 +27,18 @@ import org.slf4j.LoggerFactory;
 import org.junit.jupiter.api.Test;
 
 import convex.api.Convex;
+import convex.api.StateSync;
 import convex.core.Belief;
+import convex.core.Constants;
 import convex.core.ErrorCodes;
 import convex.core.Result;
 import convex.core.State;
 import convex.core.crypto.AKeyPair;
+import convex.core.data.ACell;
 import convex.core.data.AVector;
 import convex.core.data.AccountKey;
 import convex.core.data.Address;
+import convex.core.data.Blob;
 import convex.core.data.Hash;
 import convex.core.data.Ref;
 import convex.core.data.SignedData;
@@ -52,6 +58,7 @@ import convex.core.util.Utils;
 import convex.net.Connection;
 import convex.net.Message;
 import convex.net.ResultConsumer;
+import etch.EtchStore;
 
 /**
  * Tests for a fresh standalone server instance
@@ -178,6 +185,20 @@ public class ServerTest {
 		assertTrue(f.get().getValue() instanceof CVMLong);
 	}
 
+	@Test
+	public void testConcurrentQueries() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+		// queries are handled on worker threads, so results may complete in any order
+		Convex convex=Convex.connect(SERVER.getHostAddress(),VILLAIN,VILLAIN_KEYPAIR);
+		ArrayList<Future<Result>> futures=new ArrayList<>();
+		for (int i=0; i<100; i++) {
+			futures.add(convex.query(Reader.read("(+ "+i+" 1)")));
+		}
+		for (int i=0; i<100; i++) {
+			Result r=futures.get(i).get(10000,TimeUnit.MILLISECONDS);
+			assertEquals(RT.cvm(i+1),r.getValue());
+		}
+	}
+
 	@Test
 	public void testMissingData() throws IOException, InterruptedException, TimeoutException {
 
@@ -197,6 +218,90 @@ public class ServerTest {
 		assertNotNull(ref);
 	}
 
+	@Test
+	public void testRequestData() throws IOException, InterruptedException, TimeoutException {
+		InetSocketAddress hostAddress=SERVER.getHostAddress();
+
+		// Persist a structure of many cells in the server store
+		Random r=new Random(1234);
+		ArrayList<ACell> blobs=new ArrayList<>();
+		for (int i=0; i<100; i++) {
+			blobs.add(Blob.createRandom(r, 200));
+		}
+		AVector<ACell> v=Vectors.create(blobs);
+		AStore temp=Stores.current();
+		try {
+			Stores.setCurrent(SERVER.getStore());
+			v.getRef().persist();
+		} finally {
+			Stores.setCurrent(temp);
+		}
+
+		// Connect with a fresh store, so that all received data is new
+		EtchStore store=EtchStore.createTemp();
+		Connection pc = Connection.connect(hostAddress, handler, store);
+		Hash h=v.getHash();
+		assertTrue(pc.sendRequestData(List.of(h), Constants.MAX_DATA_REQUEST_BUDGET));
+
+		// all cells below the root should arrive in response to the single request
+		HashSet<Hash> missing=new HashSet<>();
+		for (int i=0; i<100; i++) {
+			Thread.sleep(20);
+			Ref<AVector<ACell>> ref=store.refForHash(h);
+			if (ref==null) continue;
+			missing.clear();
+			ref.findMissing(missing);
+			if (missing.isEmpty()) break;
+		}
+		assertNotNull(store.refForHash(h));
+		assertTrue(missing.isEmpty());
+	}
+
+	@Test
+	public void testStateSyncResume() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+		InetSocketAddress hostAddress=SERVER.getHostAddress();
+
+		// Persist a structure of many cells in the server store
+		Random r=new Random(5678);
+		ArrayList<ACell> blobs=new ArrayList<>();
+		for (int i=0; i<1000; i++) {
+			blobs.add(Blob.createRandom(r, 200));
+		}
+		AVector<ACell> v=Vectors.create(blobs);
+		AStore temp=Stores.current();
+		EtchStore store=EtchStore.createTemp();
+		try {
+			Stores.setCurrent(SERVER.getStore());
+			v.getRef().persist();
+
+			// Client already has the root and the first subtree from an earlier sync
+			Stores.setCurrent(store);
+			v.getRef(0).persist();
+			v.getRef().persistShallow();
+		} finally {
+			Stores.setCurrent(temp);
+		}
+		Hash h=v.getHash();
+		assertEquals(Ref.STORED,store.refForHash(h).getStatus());
+
+		StateSync sync=StateSync.create(h, store);
+		Connection pc = Connection.connect(hostAddress, sync, store);
+		AVector<ACell> result=sync.<AVector<ACell>>start(pc).get(10000,TimeUnit.MILLISECONDS);
+		assertEquals(v,result);
+		assertEquals(Ref.PERSISTED,store.refForHash(h).getStatus());
+		// subtrees are persisted as they complete
+		for (int i=0; i<v.getRefCount(); i++) {
+			Ref<ACell> child=v.getRef(i);
+			if (child.isEmbedded()) continue;
+			assertEquals(Ref.PERSISTED,store.refForHash(child.getHash()).getStatus());
+		}
+
+		// only cells not already stored should be fetched
+		long total=Ref.accumulateRefSet(v.getRef()).size();
+		assertTrue(sync.getCellCount()>0);
+		assertTrue(sync.getCellCount()<total);
+	}
+
 	@Test
 	public void testAcquireBelief() throws IOException, InterruptedException, ExecutionException, TimeoutException, BadSignatureException {
 		synchronized(ServerTest.SERVER) {
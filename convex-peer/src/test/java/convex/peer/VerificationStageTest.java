@@ -0,0 +1,110 @@
+package convex.peer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import convex.core.crypto.AKeyPair;
+import convex.core.crypto.ASignature;
+import convex.core.data.Address;
+import convex.core.data.Blob;
+import convex.core.data.SignedData;
+import convex.core.data.Vectors;
+import convex.core.data.prim.CVMLong;
+import convex.core.store.Stores;
+import convex.core.transactions.ATransaction;
+import convex.core.transactions.Invoke;
+import convex.net.Message;
+import convex.net.MessageType;
+
+public class VerificationStageTest {
+	AKeyPair KP=AKeyPair.createSeeded(5678);
+
+	@Test
+	public void testOrderAndVerification() throws InterruptedException {
+		BlockingQueue<Message> out=new ArrayBlockingQueue<>(1000);
+		VerificationStage stage=VerificationStage.create(m->out.add(m), Stores.current(), 4, "Test Verifier");
+		try {
+			ArrayList<Message> sent=new ArrayList<>();
+			ArrayList<SignedData<ATransaction>> txs=new ArrayList<>();
+			for (int i=0; i<100; i++) {
+				SignedData<ATransaction> sd=KP.signData(Invoke.create(Address.create(11), i, "(+ 1 2)"));
+				txs.add(sd);
+				Message m=Message.create(null, MessageType.TRANSACT, Vectors.of(i,sd));
+				sent.add(m);
+				stage.accept(m);
+
+				// interleave messages that don't need verification
+				Message d=Message.createData(CVMLong.create(i));
+				sent.add(d);
+				stage.accept(d);
+			}
+
+			// messages must be delivered in arrival order
+			for (Message m: sent) {
+				assertSame(m,out.poll(5, TimeUnit.SECONDS));
+			}
+			assertEquals(0,stage.getPendingCount());
+
+			// signatures should be verified and marked before delivery
+			for (SignedData<ATransaction> sd: txs) {
+				assertTrue(sd.isSignatureChecked());
+				assertTrue(sd.checkSignature());
+			}
+		} finally {
+			stage.close();
+		}
+	}
+
+	@Test
+	public void testClose() throws InterruptedException {
+		BlockingQueue<Message> out=new ArrayBlockingQueue<>(1000);
+		VerificationStage stage=VerificationStage.create(m->out.add(m), Stores.current(), 1, "Test Verifier");
+		ArrayList<Message> sent=new ArrayList<>();
+		for (int i=0; i<200; i++) {
+			SignedData<ATransaction> sd=KP.signData(Invoke.create(Address.create(11), i, "(+ 1 2)"));
+			Message m=Message.create(null, MessageType.TRANSACT, Vectors.of(i,sd));
+			sent.add(m);
+			stage.accept(m);
+		}
+		
+		// queued verifications still complete after close, and later messages are not held up
+		stage.close();
+		Message d=Message.createData(CVMLong.create(1));
+		sent.add(d);
+		stage.accept(d);
+		for (Message m: sent) {
+			assertSame(m,out.poll(5, TimeUnit.SECONDS));
+		}
+		assertEquals(0,stage.getPendingCount());
+		assertTrue(stage.isBelowLowWater());
+		assertFalse(stage.isAboveHighWater());
+	}
+
+	@Test
+	public void testBadSignature() throws InterruptedException {
+		BlockingQueue<Message> out=new ArrayBlockingQueue<>(10);
+		VerificationStage stage=VerificationStage.create(m->out.add(m), Stores.current(), 1, "Test Verifier");
+		try {
+			ATransaction tx=Invoke.create(Address.create(11), 1, "(+ 1 2)");
+			SignedData<ATransaction> sd=SignedData.create(KP, ASignature.fromBlob(Blob.createRandom(new java.util.Random(), 64)), tx.getRef());
+			Message m=Message.create(null, MessageType.TRANSACT, Vectors.of(1,sd));
+			stage.accept(m);
+
+			// bad signatures are still delivered, for the receiver to reject
+			assertSame(m,out.poll(5, TimeUnit.SECONDS));
+			assertTrue(sd.isSignatureChecked());
+			assertFalse(sd.checkSignature());
+		} finally {
+			stage.close();
+		}
+	}
+}